@@ -0,0 +1,73 @@
+package pl.magzik.picture_comparer_fx.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import pl.magzik.picture_comparer_fx.service.comparison.ImageDecoder;
+import pl.magzik.picture_comparer_fx.service.comparison.MemoryBudget;
+import pl.magzik.picture_comparer_fx.service.comparison.PerceptualHasher;
+import pl.magzik.picture_comparer_fx.service.comparison.PixelComparator;
+
+import javax.imageio.ImageIO;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the per-image comparison algorithms, the perceptual hash and the pixel-by-pixel comparison,
+ * on a single generated image and its byte-identical copy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Djava.awt.headless=true", "-Dpcfx.home=target/jmh-home" })
+public class AlgorithmBenchmark {
+
+    @Param({ "512", "2048", "6000" })
+    private int resolution;
+
+    @Param({ "png", "jpg" })
+    private String format;
+
+    private Path directory;
+
+    private File image;
+
+    private File copy;
+
+    private PerceptualHasher hasher;
+
+    private PixelComparator comparator;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("pcfx-bench");
+        image = directory.resolve("image." + format).toFile();
+        copy = directory.resolve("copy." + format).toFile();
+
+        ImageIO.write(ImageSets.randomImage(new Random(42), resolution), format, image);
+        Files.copy(image.toPath(), copy.toPath());
+
+        ImageDecoder decoder = new ImageDecoder();
+        hasher = new PerceptualHasher(decoder);
+        comparator = new PixelComparator(decoder, new MemoryBudget(Runtime.getRuntime().maxMemory() / 2));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        ImageSets.delete(directory);
+    }
+
+    @Benchmark
+    public long perceptualHash() throws IOException {
+        return hasher.hash(image);
+    }
+
+    @Benchmark
+    public boolean pixelByPixel() throws IOException {
+        return comparator.equal(image, copy);
+    }
+}
@@ -0,0 +1,70 @@
+package pl.magzik.picture_comparer_fx.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import pl.magzik.picture_comparer_fx.service.comparison.ChecksumAlgorithm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Checksum;
+
+/**
+ * Benchmarks the throughput of every {@link ChecksumAlgorithm} over a random file.
+ * <p>
+ * The file is read from the page cache, so the results show the cost of copying and checksumming, not of the disk.
+ * Divide the file size by the average time to get the throughput in bytes per time unit.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Dpcfx.home=target/jmh-home")
+public class ChecksumBenchmark {
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    @Param({ "1048576", "67108864", "536870912" })
+    private long size;
+
+    @Param({ "crc32", "crc32c" })
+    private String algorithm;
+
+    private Path file;
+
+    private ChecksumAlgorithm checksumAlgorithm;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("pcfx-bench", ".bin");
+        checksumAlgorithm = ChecksumAlgorithm.fromName(algorithm);
+
+        byte[] chunk = new byte[CHUNK_SIZE];
+        Random random = new Random(42);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (long written = 0; written < size; written += chunk.length) {
+                random.nextBytes(chunk);
+                out.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public long checksum() throws IOException {
+        Checksum checksum = checksumAlgorithm.newChecksum();
+        try (FileChannel channel = FileChannel.open(file)) {
+            checksumAlgorithm.update(checksum, channel, 0, channel.size());
+        }
+        return checksum.getValue();
+    }
+}
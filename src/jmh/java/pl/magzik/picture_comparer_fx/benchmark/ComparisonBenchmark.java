@@ -0,0 +1,118 @@
+package pl.magzik.picture_comparer_fx.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import pl.magzik.picture_comparer_fx.base.async.ExecutorServiceManager;
+import pl.magzik.picture_comparer_fx.service.comparison.FingerprintStore;
+import pl.magzik.picture_comparer_fx.service.comparison.ScanResult;
+import pl.magzik.picture_comparer_fx.service.files.FileOperationEngine;
+import pl.magzik.picture_comparer_fx.service.helpers.ImageComparisonHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the operations of {@link ImageComparisonHelper} over generated image sets.
+ * <p>
+ * The cold benchmarks clear the {@link FingerprintStore} before every invocation, so every file is read again,
+ * while the warm ones measure repeated comparisons of unchanged files. Note that the page cache stays warm in both cases.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Djava.awt.headless=true", "-Dpcfx.home=target/jmh-home" })
+public class ComparisonBenchmark {
+
+    @Param({ "200", "1000" })
+    private int count;
+
+    @Param({ "512", "2048" })
+    private int resolution;
+
+    @Param({ "0.1", "0.5" })
+    private double duplicateRatio;
+
+    @Param({ "true" })
+    private boolean perceptualHash;
+
+    @Param({ "true" })
+    private boolean pixelByPixel;
+
+    @Param({ "0" })
+    private int hashDistance;
+
+    @Param({ "crc32", "crc32c" })
+    private String checksumAlgorithm;
+
+    @Param({ "512" })
+    private int pixelMemoryBudget;
+
+    private Path directory;
+
+    private ImageComparisonHelper helper;
+
+    private List<File> files;
+
+    private Map<File, Set<File>> groups;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = ImageSets.generate(count, resolution, duplicateRatio, 42);
+        helper = new ImageComparisonHelper(
+            new FileOperationEngine(ExecutorServiceManager.getInstance().getIoExecutor()),
+            ImageComparisonHelper.buildFileWalker(false),
+            ImageComparisonHelper.buildPipeline(perceptualHash, pixelByPixel, hashDistance, checksumAlgorithm, pixelMemoryBudget),
+            ExecutorServiceManager.getInstance().getCpuExecutor()
+        );
+        files = helper.validate(List.of(directory.toFile()));
+        groups = helper.compare(files);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        ImageSets.delete(directory);
+    }
+
+    /**
+     * Clears the fingerprint cache before every invocation of a cold benchmark.
+     */
+    @State(Scope.Thread)
+    public static class ColdCache {
+        @Setup(Level.Invocation)
+        public void clear() {
+            FingerprintStore.getInstance().clear();
+        }
+    }
+
+    @Benchmark
+    public List<File> validate() throws IOException {
+        return helper.validate(List.of(directory.toFile()));
+    }
+
+    @Benchmark
+    public Map<File, Set<File>> compareCold(ColdCache cache) throws IOException {
+        return helper.compare(files);
+    }
+
+    @Benchmark
+    public Map<File, Set<File>> compareWarm() throws IOException {
+        return helper.compare(files);
+    }
+
+    @Benchmark
+    public ScanResult scanCold(ColdCache cache) throws IOException {
+        return helper.scan(directory.toFile());
+    }
+
+    @Benchmark
+    public List<File> flatten() {
+        return helper.flatten(groups);
+    }
+}
@@ -0,0 +1,111 @@
+package pl.magzik.picture_comparer_fx.benchmark;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Generates reproducible sets of images for the benchmarks.
+ * <p>
+ * Every unique image is a random composition of filled ellipses, so unique images differ both in content and in
+ * perceptual hash. Duplicates are byte-identical copies of randomly chosen unique images.
+ * The same seed always produces the same set.
+ * </p>
+ */
+public final class ImageSets {
+
+    private static final int SHAPES_PER_IMAGE = 48;
+
+    private ImageSets() {}
+
+    /**
+     * Generates a set of PNG images in a new temporary directory.
+     *
+     * @param count the total number of images, duplicates included
+     * @param resolution the width and height of every image, in pixels
+     * @param duplicateRatio the fraction of images that are copies of other images, between {@code 0} and {@code 1}
+     * @param seed the seed of the generator
+     * @return the directory containing the generated images
+     * @throws IOException if an image cannot be written
+     */
+    public static @NotNull Path generate(int count, int resolution, double duplicateRatio, long seed) throws IOException {
+        Path directory = Files.createTempDirectory("pcfx-bench");
+        Random random = new Random(seed);
+
+        int duplicates = (int) Math.round(count * duplicateRatio);
+        int originals = Math.max(1, count - duplicates);
+
+        List<Path> images = new ArrayList<>(originals);
+        for (int i = 0; i < originals; i++) {
+            Path image = directory.resolve("image_%06d.png".formatted(i));
+            ImageIO.write(randomImage(random, resolution), "png", image.toFile());
+            images.add(image);
+        }
+        for (int i = 0; i < count - originals; i++) {
+            Path original = images.get(random.nextInt(originals));
+            Files.copy(original, directory.resolve("copy_%06d.png".formatted(i)));
+        }
+
+        return directory;
+    }
+
+    /**
+     * Generates a single random image.
+     *
+     * @param random the random generator
+     * @param resolution the width and height of the image, in pixels
+     * @return the generated image
+     */
+    public static @NotNull BufferedImage randomImage(@NotNull Random random, int resolution) {
+        BufferedImage image = new BufferedImage(resolution, resolution, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setColor(new Color(random.nextInt()));
+            graphics.fillRect(0, 0, resolution, resolution);
+            for (int i = 0; i < SHAPES_PER_IMAGE; i++) {
+                int size = resolution / 8 + random.nextInt(resolution / 2);
+                graphics.setColor(new Color(random.nextInt()));
+                graphics.fillOval(random.nextInt(resolution) - size / 2, random.nextInt(resolution) - size / 2, size, size);
+            }
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Lists the files of a generated set, in name order.
+     *
+     * @param directory the directory of the set
+     * @return the image files
+     * @throws IOException if the directory cannot be listed
+     */
+    public static @NotNull List<File> list(@NotNull Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().map(Path::toFile).toList();
+        }
+    }
+
+    /**
+     * Deletes a generated set.
+     *
+     * @param directory the directory of the set
+     * @throws IOException if a file cannot be deleted
+     */
+    public static void delete(@NotNull Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(path);
+        }
+    }
+}
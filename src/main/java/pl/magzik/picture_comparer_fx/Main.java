@@ -1,6 +1,9 @@
 package pl.magzik.picture_comparer_fx;
 
 import pl.magzik.picture_comparer_fx.base.PathResolver;
+import pl.magzik.picture_comparer_fx.cli.BatchMode;
+
+import java.util.Arrays;
 
 /**
  * Main launcher class for the PictureComparerFX application.
@@ -8,12 +11,21 @@ import pl.magzik.picture_comparer_fx.base.PathResolver;
  *     This class serves as a wrapper for launching the application.
  *     Its primary purpose is to circumvent issues related to module usage (at least for now).
  * </p>
+ * <p>
+ *     If the first argument is {@value BatchMode#FLAG}, the headless {@link BatchMode} runs instead of the GUI,
+ *     with logs redirected to the standard error, and the process exits with its exit code.
+ * </p>
  * */
 public class Main {
     public static void main(String[] args) {
         PathResolver pathResolver = PathResolver.getInstance();
         System.setProperty("logPath", pathResolver.getLogDirectory().toString());
 
+        if (args.length > 0 && args[0].equals(BatchMode.FLAG)) {
+            System.setProperty("logTarget", "System.err");
+            System.exit(BatchMode.run(Arrays.copyOfRange(args, 1, args.length)));
+        }
+
         PictureComparerFX.main(args);
     }
 }
@@ -10,6 +10,8 @@ import javafx.stage.Stage;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import pl.magzik.picture_comparer_fx.base.metrics.MetricsRegistry;
+import pl.magzik.picture_comparer_fx.base.metrics.Timer;
 import pl.magzik.picture_comparer_fx.controller.base.Controller;
 import pl.magzik.picture_comparer_fx.model.SettingsModel;
 import pl.magzik.picture_comparer_fx.model.base.Model;
@@ -18,6 +20,8 @@ import pl.magzik.picture_comparer_fx.service.SettingsService;
 
 import java.io.IOException;
 import java.net.URL;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Locale;
 import java.util.ResourceBundle;
 
@@ -29,11 +33,16 @@ import java.util.ResourceBundle;
  *     the application window and its behavior.
  * </p>
  * <p>
- *     The application starts by loading the settings and the gallery, followed by setting up the
+ *     The application starts by loading the settings, followed by setting up the
  *     user interface with the appropriate locale, theme, and style. The main view is loaded from an
  *     FXML file, and the stage (window) is configured with an icon and a title. The app listens for
  *     close requests to properly shut down.
  * </p>
+ * <p>
+ *     The gallery is loaded only once the stage is shown, in the background, so the window appears
+ *     right away regardless of the size of the gallery. The time from the start of the process
+ *     to the first frame is logged, and recorded by the {@value #FIRST_FRAME_TIMER} timer.
+ * </p>
  */
 public class PictureComparerFX extends Application {
 
@@ -41,8 +50,12 @@ public class PictureComparerFX extends Application {
 
     private static final String MAIN_VIEW_FXML_PATH = "/fxml/main-view.fxml";
 
+    private static final String FIRST_FRAME_TIMER = "startup.first-frame";
+
     private final Model model;
 
+    private final Instant startTime;
+
     /**
      * Main entry point for launching the PictureComparerFX application.
      *
@@ -57,6 +70,7 @@ public class PictureComparerFX extends Application {
      * Sets up the model and prepares the controller for the main view.
      */
     public PictureComparerFX() {
+        this.startTime = ProcessHandle.current().info().startInstant().orElseGet(Instant::now);
         log.info("Initializing application...");
         this.model = new Model();
         Controller.setModel(model);
@@ -75,7 +89,6 @@ public class PictureComparerFX extends Application {
 
         SettingsModel settingsModel = loadSettings();
         ResourceBundle bundle = loadResourceBundle(settingsModel);
-        loadGallery();
 
         FXMLLoader loader = loadFXML(bundle);
         Parent root = loader.load();
@@ -84,6 +97,8 @@ public class PictureComparerFX extends Application {
         setupScene(stage, root, settingsModel);
         setupStage(stage);
 
+        loadGallery();
+
         log.info("Application started successfully.");
     }
 
@@ -115,15 +130,31 @@ public class PictureComparerFX extends Application {
     }
 
     /**
-     * Loads the gallery files using the gallery service.
-     *
-     * @throws IOException if an error occurs while loading the gallery files
+     * Starts loading the gallery files in the background, using the gallery service.
+     * The gallery fills up as the files are read, and failures are logged.
      */
-    private void loadGallery() throws IOException {
+    private void loadGallery() {
         GalleryService galleryService = new GalleryService(model.getGalleryModel());
-        galleryService.loadFiles();
+        galleryService.loadFiles()
+            .whenComplete((v, t) -> {
+                if (t == null) log.debug("Gallery loaded.");
+                else log.error("Couldn't load gallery, because: {}", t.getMessage(), t);
+            });
+    }
 
-        log.debug("Gallery loaded.");
+    /**
+     * Logs and records the time from the start of the process to the first frame, once the stage is first shown.
+     *
+     * @param stage the primary stage of the application
+     */
+    private void measureFirstFrame(@NotNull Stage stage) {
+        stage.setOnShown(event -> Platform.runLater(() -> {
+            Duration elapsed = Duration.between(startTime, Instant.now());
+            Timer timer = MetricsRegistry.getInstance().timer(FIRST_FRAME_TIMER);
+            timer.record(elapsed.toNanos());
+
+            log.info("First frame shown after: {} ms", elapsed.toMillis());
+        }));
     }
 
     /**
@@ -177,6 +208,7 @@ public class PictureComparerFX extends Application {
 
         stage.getIcons().add(icon);
         stage.setTitle("Picture Comparer FX");
+        measureFirstFrame(stage);
         stage.show();
         stage.setOnCloseRequest(event -> {
             Platform.exit();
@@ -17,6 +17,8 @@ import java.nio.file.Paths;
  *     <li>Data directory</li>
  * </ul>
  * It automatically determines the correct directory paths based on the user's operating system (Windows, macOS, or Linux).
+ * The application directory can also be set explicitly with the {@value #HOME_PROPERTY} system property,
+ * which keeps benchmarks and batch runs away from the user's own settings and data.
  * </p>
  * <p>
  * The directories are created if they do not already exist, and are stored for later use by the application.
@@ -24,6 +26,11 @@ import java.nio.file.Paths;
  */
 public class PathResolver {
 
+    /**
+     * The system property overriding the application directory.
+     */
+    public static final String HOME_PROPERTY = "pcfx.home";
+
     private static class InstanceHolder {
         private static final PathResolver INSTANCE = new PathResolver();
     }
@@ -51,16 +58,23 @@ public class PathResolver {
 
     /**
      * Private constructor that initializes the application directories.
-     * It detects the user's home directory and operating system, then creates the necessary directories.
+     * It uses the {@value #HOME_PROPERTY} system property if it's set, otherwise it detects the user's home directory
+     * and operating system, then creates the necessary directories.
      *
      * @throws IllegalStateException if the user home directory is not available
      */
     private PathResolver() {
-        String userHome = System.getProperty("user.home");
-        if (userHome == null) throw new IllegalStateException("User home directory is not available.");
-
-        String operatingSystem = System.getProperty("os.name").toLowerCase();
-        Path applicationPath = getApplicationPath(userHome, operatingSystem);
+        Path applicationPath;
+        String home = System.getProperty(HOME_PROPERTY);
+        if (home != null && !home.isBlank()) {
+            applicationPath = Paths.get(home).toAbsolutePath();
+        } else {
+            String userHome = System.getProperty("user.home");
+            if (userHome == null) throw new IllegalStateException("User home directory is not available.");
+
+            String operatingSystem = System.getProperty("os.name").toLowerCase();
+            applicationPath = getApplicationPath(userHome, operatingSystem);
+        }
 
         this.configDirectory = createDirectories(applicationPath, CONFIG_FOLDER);
         this.logDirectory = createDirectories(applicationPath, LOG_FOLDER);
@@ -8,26 +8,53 @@ import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 
 /**
- * Interface for supporting asynchronous task execution using an {@link ExecutorService}.
+ * Interface for supporting asynchronous task execution using the application's {@link ExecutorService}s.
  * <p>
- * This interface allows for executing tasks asynchronously using an {@link ExecutorService}.
+ * This interface allows for executing tasks asynchronously on one of two pools managed by the
+ * {@link ExecutorServiceManager} singleton instance:
+ * <ul>
+ *     <li>the I/O pool, used by default, meant for blocking work such as walking directories,
+ *     moving and deleting files, and for coordinating other tasks,</li>
+ *     <li>the CPU pool, meant for CPU-bound work such as hashing and decoding images.</li>
+ * </ul>
  * It provides default methods to execute tasks that return a result or void, which can be chained for sequential execution.
- * The tasks are executed in the order they are submitted, with each task starting after the previous one completes.
  * </p>
  * <p>
- * The {@link ExecutorService} used to execute tasks is retrieved from the {@link ExecutorServiceManager} singleton instance.
+ * Tasks running on the CPU pool must never block waiting for other tasks,
+ * so a coordinating task should always run on the I/O pool and hand CPU-bound work over to the {@link #cpuExecutor()}.
  * </p>
  */
 public interface AsyncTaskSupport {
 
     /**
-     * The {@link ExecutorService} used to execute tasks asynchronously.
-     * It is provided by the {@link ExecutorServiceManager} singleton instance.
+     * Returns the {@link ExecutorService} meant for CPU-bound tasks.
+     *
+     * @return the CPU pool provided by the {@link ExecutorServiceManager}
      */
-    ExecutorService executor = ExecutorServiceManager.getInstance().getExecutorService();
+    default @NotNull ExecutorService cpuExecutor() {
+        return ExecutorServiceManager.getInstance().getCpuExecutor();
+    }
 
     /**
-     * Executes a task asynchronously that returns a result.
+     * Returns the {@link ExecutorService} meant for blocking, I/O-bound tasks.
+     *
+     * @return the I/O pool provided by the {@link ExecutorServiceManager}
+     */
+    default @NotNull ExecutorService ioExecutor() {
+        return ExecutorServiceManager.getInstance().getIoExecutor();
+    }
+
+    /**
+     * Returns the {@link VirtualIoStage} meant for fan-outs of many small blocking calls, such as reading file attributes.
+     *
+     * @return the stage provided by the {@link ExecutorServiceManager}
+     */
+    default @NotNull VirtualIoStage virtualIoStage() {
+        return ExecutorServiceManager.getInstance().getVirtualIoStage();
+    }
+
+    /**
+     * Executes a task asynchronously on the I/O pool that returns a result.
      * <p>
      * This method runs the provided task in the background and returns a {@link CompletableFuture} representing
      * the result of the computation. If the task fails, the exception is wrapped in a {@link CompletionException}.
@@ -44,11 +71,29 @@ public interface AsyncTaskSupport {
             } catch (Exception e) {
                 throw new CompletionException(e);
             }
-        }, executor);
+        }, ioExecutor());
+    }
+
+    /**
+     * Executes a long-running task asynchronously on the I/O pool that returns a result, and can be cancelled.
+     * <p>
+     * Cancelling the returned future with {@code mayInterruptIfRunning} set interrupts the thread running the task,
+     * so the task stops at its next interruption check, and the thread is free for the next task.
+     * If the task fails, the returned future completes exceptionally with its exception.
+     * </p>
+     *
+     * @param task the task to be executed asynchronously, which returns a result of type {@code T}
+     * @param <T> the type of the result produced by the task
+     * @return a {@link CancellableTask} representing the result of the task execution
+     */
+    default <T> @NotNull CompletableFuture<T> supplyCancellableTask(@NotNull Callable<@NotNull T> task) {
+        CancellableTask<T> future = new CancellableTask<>(task);
+        ioExecutor().execute(future);
+        return future;
     }
 
     /**
-     * Executes a task asynchronously that does not return any result.
+     * Executes a task asynchronously on the I/O pool that does not return any result.
      * <p>
      * This method runs the provided task in the background and returns a {@link CompletableFuture} representing
      * the completion of the task. If the task fails, the exception is wrapped in a {@link CompletionException}.
@@ -64,6 +109,6 @@ public interface AsyncTaskSupport {
             } catch (Exception e) {
                 throw new CompletionException(e);
             }
-        });
+        }, ioExecutor());
     }
 }
@@ -0,0 +1,81 @@
+package pl.magzik.picture_comparer_fx.base.async;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A {@link CompletableFuture} completed by running a task, which can be cancelled while the task is running.
+ * <p>
+ * Cancelling a plain {@link CompletableFuture} only completes the future, while the task producing its result
+ * keeps running in the background. Cancelling this future with {@code mayInterruptIfRunning} set also interrupts
+ * the thread running the task, so a task checking for interruption, or blocked in an interruptible call, stops promptly.
+ * A task cancelled before it started is never run at all.
+ * </p>
+ * <p>
+ * Stages depending on this future are plain {@link CompletableFuture}s, and cancelling them never reaches the task,
+ * so this future itself has to be kept in order to cancel it.
+ * </p>
+ *
+ * @param <T> the type of the result of the task
+ * @see AsyncTaskSupport#supplyCancellableTask(Callable)
+ */
+public class CancellableTask<T> extends CompletableFuture<T> implements Runnable {
+
+    private final Callable<T> task;
+
+    private final Object lock = new Object();
+
+    private Thread runner;
+
+    /**
+     * Constructs a {@link CancellableTask} completed by the given task once it's {@link #run() run}.
+     *
+     * @param task the task producing the result
+     */
+    public CancellableTask(@NotNull Callable<T> task) {
+        this.task = task;
+    }
+
+    /**
+     * Runs the task in the current thread and completes this future with its outcome,
+     * unless the future has already been completed or cancelled.
+     */
+    @Override
+    public void run() {
+        synchronized (lock) {
+            if (isDone()) return;
+            runner = Thread.currentThread();
+        }
+
+        try {
+            complete(task.call());
+        } catch (Exception e) {
+            completeExceptionally(e);
+        } finally {
+            synchronized (lock) {
+                runner = null;
+            }
+            // An interruption meant for the task must not leak into the next task run by the same thread.
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * Cancels this future, interrupting the thread running the task if requested.
+     *
+     * @param mayInterruptIfRunning whether the thread running the task should be interrupted
+     * @return {@code true} if this future has been cancelled, {@code false} if it was already completed
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled && mayInterruptIfRunning) {
+            synchronized (lock) {
+                if (runner != null) runner.interrupt();
+            }
+        }
+        return cancelled;
+    }
+}
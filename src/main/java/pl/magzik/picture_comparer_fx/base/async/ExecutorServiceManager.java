@@ -1,18 +1,41 @@
 package pl.magzik.picture_comparer_fx.base.async;
 
+import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Manages a single instance of an {@link ExecutorService} using the Singleton pattern, ensuring
- * that there is only one instance of the executor throughout the application.
+ * Manages the application's {@link ExecutorService}s using the Singleton pattern, ensuring
+ * that there is only one set of executors throughout the application.
  * <p>
- * This class provides a centralized management of an {@code ExecutorService}, which is used to execute
- * tasks concurrently. It also ensures that the executor is properly shut down when the JVM is exiting
+ * Two separately sized pools are provided:
+ * <ul>
+ *     <li>the CPU pool, for CPU-bound work such as hashing and decoding images,
+ *     sized to the number of available processors by default,</li>
+ *     <li>the I/O pool, for blocking, latency-bound work such as walking directories, moving and deleting files,
+ *     sized to a multiple of the number of available processors by default.</li>
+ * </ul>
+ * The pool sizes can be overridden with the {@value #CPU_THREADS_PROPERTY} and {@value #IO_THREADS_PROPERTY}
+ * system properties. Tasks running on the CPU pool must never block waiting on the I/O pool.
+ * </p>
+ * <p>
+ * A {@link ForkJoinPool} is provided for walking directory trees in parallel, splitting the work per subdirectory.
+ * It's sized to the number of available processors by default, which can be overridden
+ * with the {@value #WALK_THREADS_PROPERTY} system property.
+ * </p>
+ * <p>
+ * Besides the pools, a {@link VirtualIoStage} starting a virtual thread per call is provided for fan-outs
+ * of many small blocking calls, such as reading the attributes of thousands of files.
+ * The number of its calls in flight can be overridden with the {@value #VIRTUAL_IO_CONCURRENCY_PROPERTY} system property.
+ * </p>
+ * <p>
+ * This class also ensures that the executors are properly shut down when the JVM is exiting
  * by registering a shutdown hook.
  * </p>
  * <p>
@@ -24,18 +47,68 @@ public class ExecutorServiceManager {
 
     private static final Logger log = LoggerFactory.getLogger(ExecutorServiceManager.class);
 
-    private final ExecutorService executorService;
+    /**
+     * The system property overriding the number of threads in the CPU pool.
+     */
+    public static final String CPU_THREADS_PROPERTY = "pcfx.threads.cpu";
+
+    /**
+     * The system property overriding the number of threads in the I/O pool.
+     */
+    public static final String IO_THREADS_PROPERTY = "pcfx.threads.io";
+
+    /**
+     * The system property overriding the parallelism of the directory walking pool.
+     */
+    public static final String WALK_THREADS_PROPERTY = "pcfx.threads.walk";
+
+    /**
+     * The system property overriding the maximal number of calls in flight in the {@link VirtualIoStage}.
+     */
+    public static final String VIRTUAL_IO_CONCURRENCY_PROPERTY = "pcfx.io.concurrency";
+
+    private static final int IO_THREADS_PER_PROCESSOR = 4;
+
+    private static final int DEFAULT_VIRTUAL_IO_CONCURRENCY = 1024;
+
     private static final long SHUTDOWN_TIMEOUT_SECONDS = 5;
 
+    private final ExecutorService cpuExecutor;
+
+    private final ExecutorService ioExecutor;
+
+    private final ForkJoinPool walkPool;
+
+    private final ExecutorService virtualExecutor;
+
+    private final VirtualIoStage virtualIoStage;
+
     /**
      * Private constructor to prevent external instantiation.
      * <p>
-     * Initializes the {@code ExecutorService} and registers a shutdown hook
-     * to ensure it is properly terminated when the JVM shuts down.
+     * Initializes every {@code ExecutorService} and registers a shutdown hook
+     * to ensure they are properly terminated when the JVM shuts down.
      * </p>
      */
     private ExecutorServiceManager() {
-        this.executorService = Executors.newSingleThreadExecutor();
+        int processors = Runtime.getRuntime().availableProcessors();
+        int cpuThreads = readThreadCount(CPU_THREADS_PROPERTY, processors);
+        int ioThreads = readThreadCount(IO_THREADS_PROPERTY, processors * IO_THREADS_PER_PROCESSOR);
+        int walkThreads = readThreadCount(WALK_THREADS_PROPERTY, processors);
+        int ioConcurrency = readThreadCount(VIRTUAL_IO_CONCURRENCY_PROPERTY, DEFAULT_VIRTUAL_IO_CONCURRENCY);
+
+        this.cpuExecutor = Executors.newFixedThreadPool(cpuThreads, Thread.ofPlatform().name("pcfx-cpu-", 0).daemon(true).factory());
+        this.ioExecutor = Executors.newFixedThreadPool(ioThreads, Thread.ofPlatform().name("pcfx-io-", 0).daemon(true).factory());
+        this.walkPool = new ForkJoinPool(walkThreads, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("pcfx-walk-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        this.virtualExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("pcfx-vio-", 0).factory());
+        this.virtualIoStage = new VirtualIoStage(virtualExecutor, ioConcurrency);
+        log.info("Executors initialized. CPU threads: {}, I/O threads: {}, walk threads: {}, virtual I/O concurrency: {}",
+            cpuThreads, ioThreads, walkThreads, ioConcurrency);
+
         addExecutorShutdownHook();
     }
 
@@ -65,33 +138,86 @@ public class ExecutorServiceManager {
     }
 
     /**
-     * Returns the managed {@code ExecutorService}.
-     * <p>
-     * The {@code ExecutorService} is used to execute tasks concurrently. The instance returned
-     * by this method is the same throughout the lifecycle of the application, as it is managed
-     * by the singleton {@code ExecutorServiceManager}.
-     * </p>
+     * Returns the {@code ExecutorService} meant for CPU-bound tasks, such as hashing and decoding images.
+     *
+     * @return the CPU pool {@code ExecutorService}.
+     */
+    public ExecutorService getCpuExecutor() {
+        return cpuExecutor;
+    }
+
+    /**
+     * Returns the {@code ExecutorService} meant for blocking I/O-bound tasks, such as walking directories,
+     * moving and deleting files.
+     *
+     * @return the I/O pool {@code ExecutorService}.
+     */
+    public ExecutorService getIoExecutor() {
+        return ioExecutor;
+    }
+
+    /**
+     * Returns the {@link ForkJoinPool} meant for walking directory trees in parallel.
      *
-     * @return the managed {@code ExecutorService}.
+     * @return the directory walking {@code ForkJoinPool}.
      */
-    public ExecutorService getExecutorService() {
-        return executorService;
+    public ForkJoinPool getWalkPool() {
+        return walkPool;
     }
 
     /**
-     * Registers a shutdown hook to properly shut down the {@code ExecutorService} when the JVM is shutting down.
+     * Returns the {@code ExecutorService} starting a virtual thread per task, meant for short blocking calls,
+     * such as listing directories and reading file attributes.
+     *
+     * @return the virtual thread {@code ExecutorService}.
+     */
+    public ExecutorService getVirtualExecutor() {
+        return virtualExecutor;
+    }
+
+    /**
+     * Returns the {@link VirtualIoStage} running fan-outs of blocking calls on virtual threads.
+     *
+     * @return the shared {@link VirtualIoStage}.
+     */
+    public VirtualIoStage getVirtualIoStage() {
+        return virtualIoStage;
+    }
+
+    /**
+     * Reads a thread count from the given system property, falling back to the default value
+     * if the property is missing or invalid.
+     *
+     * @param property the name of the system property
+     * @param defaultValue the value used if the property is missing or invalid
+     * @return the thread count, always at least {@code 1}
+     */
+    private int readThreadCount(@NotNull String property, int defaultValue) {
+        String value = System.getProperty(property);
+        if (value == null) return Math.max(1, defaultValue);
+
+        try {
+            int threads = Integer.parseInt(value.trim());
+            if (threads > 0) return threads;
+        } catch (NumberFormatException ignored) {}
+
+        log.warn("Invalid value of {}: '{}'. Using default: {}", property, value, defaultValue);
+        return Math.max(1, defaultValue);
+    }
+
+    /**
+     * Registers a shutdown hook to properly shut down every {@code ExecutorService} when the JVM is shutting down.
      * <p>
-     * This method adds a shutdown hook that gracefully shuts down the {@code executorService} by first attempting
+     * This method adds a shutdown hook that gracefully shuts down the executors by first attempting
      * to stop accepting new tasks and completing existing ones.
-     * If the executorService does not terminate within
-     * 10 seconds,
+     * If an executor does not terminate within {@value #SHUTDOWN_TIMEOUT_SECONDS} seconds,
      * the shutdown process is forced by canceling active tasks and preventing waiting tasks from starting.
      * <p>
      * The method also handles {@link InterruptedException} by immediately forcing the shutdown and restoring
      * the interrupted status of the current thread.
      * </p>
      * <p>
-     * The shutdown hook ensures that the executorService is properly terminated before the JVM exits, preventing
+     * The shutdown hook ensures that the executors are properly terminated before the JVM exits, preventing
      * potential resource leaks or unfinished tasks.
      * </p>
      *
@@ -101,22 +227,42 @@ public class ExecutorServiceManager {
      */
     private void addExecutorShutdownHook() {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            log.info("Terminating ExecutorService...");
-            executorService.shutdown();
+            log.info("Terminating ExecutorServices...");
+            cpuExecutor.shutdown();
+            ioExecutor.shutdown();
+            walkPool.shutdown();
+            virtualExecutor.shutdown();
             try {
-                if (!executorService.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
-                    log.warn("ExecutorService did not terminate gracefully within the timeout.");
-                    executorService.shutdownNow();
-                    if (!executorService.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
-                        log.error("ExecutorService did not terminate even after shutdownNot.");
-                    }
-                }
-                log.info("ExecutorService has been terminated.");
+                awaitTermination(cpuExecutor, "CPU");
+                awaitTermination(ioExecutor, "I/O");
+                awaitTermination(walkPool, "Walk");
+                awaitTermination(virtualExecutor, "Virtual I/O");
+                log.info("ExecutorServices have been terminated.");
             } catch (InterruptedException e) {
                 log.error("Shutdown was interrupted, forcing shutdown.");
-                executorService.shutdownNow();
+                cpuExecutor.shutdownNow();
+                ioExecutor.shutdownNow();
+                walkPool.shutdownNow();
+                virtualExecutor.shutdownNow();
                 Thread.currentThread().interrupt();
             }
         }));
     }
+
+    /**
+     * Waits for an already shut down executor to terminate, forcing the shutdown after the timeout.
+     *
+     * @param executor the executor to wait for
+     * @param name the name of the executor, used for logging
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    private void awaitTermination(@NotNull ExecutorService executor, @NotNull String name) throws InterruptedException {
+        if (executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) return;
+
+        log.warn("{} ExecutorService did not terminate gracefully within the timeout.", name);
+        executor.shutdownNow();
+        if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            log.error("{} ExecutorService did not terminate even after shutdownNow.", name);
+        }
+    }
 }
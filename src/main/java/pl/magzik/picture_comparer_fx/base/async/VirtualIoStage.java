@@ -0,0 +1,153 @@
+package pl.magzik.picture_comparer_fx.base.async;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Runs many small, blocking I/O calls at once, each on its own virtual thread.
+ * <p>
+ * Calls like {@code stat} or {@code readdir} spend almost all of their time waiting for the file system,
+ * especially on network mounts, where every call is a round-trip. Made one at a time, their latencies add up.
+ * A virtual thread blocked in such a call releases its carrier thread, so thousands of calls can be in flight
+ * at the cost of a few platform threads.
+ * </p>
+ * <p>
+ * The number of calls in flight is bounded by the concurrency of the stage, so a huge input never starts
+ * a matching number of threads, nor floods the file system with requests.
+ * </p>
+ */
+public class VirtualIoStage {
+
+    private final ExecutorService executor;
+
+    private final int concurrency;
+
+    /**
+     * Constructs a {@link VirtualIoStage} running its calls on the given executor.
+     *
+     * @param executor the executor starting a virtual thread per task
+     * @param concurrency the maximal number of calls in flight
+     * @throws IllegalArgumentException if the concurrency is not positive
+     */
+    public VirtualIoStage(@NotNull ExecutorService executor, int concurrency) {
+        if (concurrency < 1) throw new IllegalArgumentException("Concurrency must be positive: " + concurrency);
+        this.executor = executor;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Returns the maximal number of calls this stage keeps in flight.
+     *
+     * @return the concurrency of the stage
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * A blocking I/O call applied to every input of the stage.
+     *
+     * @param <T> the type of the input
+     * @param <R> the type of the result
+     */
+    @FunctionalInterface
+    public interface IoFunction<T, R> {
+        @Nullable R apply(@NotNull T input) throws IOException;
+    }
+
+    /**
+     * Applies the function to every input concurrently, and returns the results in the order of the inputs.
+     * <p>
+     * The calling thread blocks until every call has finished. If any call fails, the calls not started yet are skipped,
+     * and the first failure is thrown once the running ones have finished.
+     * If the calling thread is interrupted, the running calls are interrupted too.
+     * </p>
+     *
+     * @param inputs the inputs
+     * @param function the blocking call applied to every input
+     * @param <T> the type of the inputs
+     * @param <R> the type of the results
+     * @return the results, in the order of the inputs, possibly containing {@code null}s returned by the function
+     * @throws IOException the first failure of the function
+     * @throws InterruptedIOException if the calling thread has been interrupted
+     */
+    public <T, R> @NotNull List<R> map(@NotNull List<T> inputs, @NotNull IoFunction<T, R> function) throws IOException {
+        if (inputs.isEmpty()) return List.of();
+
+        Semaphore permits = new Semaphore(concurrency);
+        List<Future<?>> calls = new ArrayList<>(inputs.size());
+        Object[] results = new Object[inputs.size()];
+        Failure failure = new Failure();
+
+        try {
+            for (int i = 0; i < inputs.size() && !failure.isSet(); i++) {
+                permits.acquire();
+
+                int index = i;
+                T input = inputs.get(i);
+                FutureTask<Void> call = new FutureTask<>(() -> {
+                    results[index] = function.apply(input);
+                    return null;
+                }) {
+                    @Override
+                    protected void done() {
+                        try {
+                            if (!isCancelled()) get();
+                        } catch (ExecutionException e) {
+                            failure.set(e.getCause());
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            // Released only once the failure is recorded, so the waiting caller never misses it.
+                            permits.release();
+                        }
+                    }
+                };
+                calls.add(call);
+                executor.execute(call);
+            }
+
+            // Once every permit is back, every call has finished.
+            permits.acquire(concurrency);
+        } catch (InterruptedException e) {
+            calls.forEach(call -> call.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for I/O calls.");
+        }
+
+        if (failure.isSet()) failure.rethrow();
+
+        @SuppressWarnings("unchecked")
+        List<R> list = (List<R>) Arrays.asList(results);
+        return list;
+    }
+
+    /**
+     * The first failure of the calls of a single {@link #map(List, IoFunction)}.
+     */
+    private static final class Failure {
+        private volatile Throwable cause;
+
+        private boolean isSet() {
+            return cause != null;
+        }
+
+        private synchronized void set(@NotNull Throwable cause) {
+            if (this.cause == null) this.cause = cause;
+        }
+
+        private void rethrow() throws IOException {
+            if (cause instanceof IOException e) throw e;
+            if (cause instanceof RuntimeException e) throw e;
+            if (cause instanceof Error e) throw e;
+            throw new IOException(cause);
+        }
+    }
+}
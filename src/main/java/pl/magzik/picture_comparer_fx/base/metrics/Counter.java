@@ -0,0 +1,43 @@
+package pl.magzik.picture_comparer_fx.base.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A metric counting events, such as processed files, over the lifetime of the application.
+ * <p>
+ * This class is thread-safe, and cheap enough to be updated from the hot paths of the comparison pipeline.
+ * </p>
+ *
+ * @see MetricsRegistry#counter(String)
+ */
+public class Counter {
+
+    private final LongAdder count = new LongAdder();
+
+    Counter() {}
+
+    /**
+     * Counts a single event.
+     */
+    public void increment() {
+        count.increment();
+    }
+
+    /**
+     * Counts the given number of events.
+     *
+     * @param events the number of events
+     */
+    public void add(long events) {
+        count.add(events);
+    }
+
+    /**
+     * Returns the number of events counted so far.
+     *
+     * @return the current count
+     */
+    public long count() {
+        return count.sum();
+    }
+}
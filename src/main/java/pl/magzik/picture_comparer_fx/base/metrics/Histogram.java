@@ -0,0 +1,71 @@
+package pl.magzik.picture_comparer_fx.base.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A metric recording the distribution of non-negative values, such as file sizes or durations.
+ * <p>
+ * Values are counted in {@value #BUCKETS} buckets of exponentially growing width: bucket {@code 0} holds zeroes,
+ * and bucket {@code i} holds values between {@code 2^(i-1)} and {@code 2^i - 1}. Recording a value costs
+ * two uncontended additions, and the memory used doesn't depend on the number of values, at the price
+ * of percentiles being known only up to a factor of two. The count and the sum of the values are exact.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ *
+ * @see MetricsRegistry#histogram(String, String)
+ */
+public class Histogram {
+
+    static final int BUCKETS = Long.SIZE;
+
+    private final String unit;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+    private final LongAdder sum = new LongAdder();
+
+    Histogram(@NotNull String unit) {
+        this.unit = unit;
+        for (int i = 0; i < BUCKETS; i++) buckets[i] = new LongAdder();
+    }
+
+    /**
+     * Records a single value. Negative values are recorded as zero.
+     *
+     * @param value the value to record
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        buckets[bucket(value)].increment();
+        sum.add(value);
+    }
+
+    /**
+     * Returns the current state of this histogram.
+     *
+     * @return the {@link HistogramSnapshot}
+     */
+    public @NotNull HistogramSnapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+        return new HistogramSnapshot(unit, count, sum.sum(), counts);
+    }
+
+    /**
+     * Returns the index of the bucket holding the given value.
+     *
+     * @param value the non-negative value
+     * @return the number of significant bits of the value
+     */
+    static int bucket(long value) {
+        return Long.SIZE - Long.numberOfLeadingZeros(value);
+    }
+}
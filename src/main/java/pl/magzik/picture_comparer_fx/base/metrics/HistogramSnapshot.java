@@ -0,0 +1,51 @@
+package pl.magzik.picture_comparer_fx.base.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The state of a {@link Histogram} or a {@link Timer} at a point in time.
+ *
+ * @param unit the unit of the recorded values
+ * @param count the number of recorded values
+ * @param sum the sum of the recorded values
+ * @param buckets the number of values recorded in every bucket, see {@link Histogram}
+ */
+public record HistogramSnapshot(@NotNull String unit, long count, long sum, long @NotNull [] buckets) {
+
+    /**
+     * Returns the mean of the recorded values.
+     *
+     * @return the mean, or {@code 0} if no value was recorded
+     */
+    public double mean() {
+        return count > 0 ? (double) sum / count : 0;
+    }
+
+    /**
+     * Returns an upper bound of the given percentile of the recorded values, exact up to a factor of two.
+     *
+     * @param quantile the quantile between {@code 0} and {@code 1}, {@code 1} for the maximum
+     * @return the upper bound of the bucket holding the percentile, or {@code 0} if no value was recorded
+     */
+    public long percentile(double quantile) {
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= Math.max(1, rank)) return i == 0 ? 0 : i == Long.SIZE - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the values recorded since the given snapshot was taken.
+     *
+     * @param baseline the snapshot of the same metric taken earlier
+     * @return the difference between this snapshot and the baseline
+     */
+    public @NotNull HistogramSnapshot minus(@NotNull HistogramSnapshot baseline) {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < buckets.length; i++) counts[i] = buckets[i] - baseline.buckets[i];
+        return new HistogramSnapshot(unit, count - baseline.count, sum - baseline.sum, counts);
+    }
+}
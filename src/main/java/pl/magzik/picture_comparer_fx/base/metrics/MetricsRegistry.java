@@ -0,0 +1,251 @@
+package pl.magzik.picture_comparer_fx.base.metrics;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.magzik.picture_comparer_fx.base.PathResolver;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * An in-process registry of {@link Counter}s, {@link Histogram}s and {@link Timer}s, named after what they measure.
+ * <p>
+ * Metrics are registered once, usually in a static field of the measured class, and live as long as the application.
+ * Updating a metric never blocks, so the stages of the comparison pipeline are measured on their hot paths.
+ * </p>
+ * <p>
+ * Work done on behalf of the user, such as a scan or moving duplicates, is run as a {@link #job(String, Job) job}.
+ * Once a job ends, the activity of every metric during the job is written as a JSON file to the
+ * {@value #DIRECTORY_NAME} folder of the {@link PathResolver#getLogDirectory() log directory}, so the cost of every
+ * stage can be compared across runs and releases. Only the latest {@value #MAX_SNAPSHOT_FILES} files are kept.
+ * The activity of jobs running at the same time is attributed to each of them.
+ * </p>
+ * <p>
+ * The registry is a lazily initialized, thread-safe singleton.
+ * </p>
+ */
+public class MetricsRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(MetricsRegistry.class);
+
+    private static final String DIRECTORY_NAME = "metrics";
+
+    private static final int MAX_SNAPSHOT_FILES = 100;
+
+    private static final Pattern NAME_PATTERN = Pattern.compile("[a-z0-9]+([.-][a-z0-9]+)*");
+
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS").withZone(ZoneOffset.UTC);
+
+    private static class InstanceHolder {
+        private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+    }
+
+    /**
+     * Returns the singleton instance of the {@link MetricsRegistry} class.
+     *
+     * @return the singleton {@link MetricsRegistry} instance
+     */
+    public static MetricsRegistry getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    private MetricsRegistry() {}
+
+    /**
+     * Returns the counter of the given name, registering it on first use.
+     *
+     * @param name the name of the counter, lowercase words separated by dots or dashes
+     * @return the {@link Counter}
+     * @throws IllegalArgumentException if the name is invalid
+     */
+    public @NotNull Counter counter(@NotNull String name) {
+        return counters.computeIfAbsent(validate(name), k -> new Counter());
+    }
+
+    /**
+     * Returns the histogram of the given name, registering it on first use.
+     *
+     * @param name the name of the histogram, lowercase words separated by dots or dashes
+     * @param unit the unit of the recorded values, used only if the histogram is registered by this call
+     * @return the {@link Histogram}
+     * @throws IllegalArgumentException if the name is invalid
+     */
+    public @NotNull Histogram histogram(@NotNull String name, @NotNull String unit) {
+        return histograms.computeIfAbsent(validate(name), k -> new Histogram(unit));
+    }
+
+    /**
+     * Returns the timer of the given name, registering it on first use.
+     *
+     * @param name the name of the timer, lowercase words separated by dots or dashes
+     * @return the {@link Timer}
+     * @throws IllegalArgumentException if the name is invalid
+     */
+    public @NotNull Timer timer(@NotNull String name) {
+        return timers.computeIfAbsent(validate(name), k -> new Timer());
+    }
+
+    /**
+     * Returns the current state of every registered metric.
+     *
+     * @return the {@link MetricsSnapshot}
+     */
+    public @NotNull MetricsSnapshot snapshot() {
+        return new MetricsSnapshot(
+            snapshot(counters, Counter::count),
+            snapshot(histograms, Histogram::snapshot),
+            snapshot(timers, Timer::snapshot)
+        );
+    }
+
+    /**
+     * Runs the given task as a job of the given name, and writes the activity of every metric during the job
+     * to the log directory once it ends, whether it succeeded or not.
+     * <p>
+     * The duration of the job is recorded by the {@code job.<name>} timer.
+     * If the job has been cancelled by interrupting its thread, nothing is written.
+     * </p>
+     *
+     * @param name the name of the job, lowercase words separated by dots or dashes
+     * @param task the task to run
+     * @param <T> the type of the result of the task
+     * @param <E> the type of the exception thrown by the task
+     * @return the result of the task
+     * @throws E if the task fails
+     */
+    public <T, E extends Exception> T job(@NotNull String name, @NotNull Job<T, E> task) throws E {
+        Timer timer = timer("job." + name);
+        MetricsSnapshot before = snapshot();
+        Instant startedAt = Instant.now();
+        long start = System.nanoTime();
+
+        boolean completed = false;
+        try {
+            T result = task.run();
+            completed = true;
+            return result;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            timer.record(elapsed);
+            if (Thread.currentThread().isInterrupted()) {
+                log.debug("Job {} cancelled, skipping its metrics.", name);
+            } else {
+                write(name, completed, startedAt, elapsed, snapshot().minus(before));
+            }
+        }
+    }
+
+    /**
+     * Writes the activity of a job to a new file in the metrics directory, and deletes the oldest files over the limit.
+     * A failure is only logged, as the metrics must never fail the job.
+     *
+     * @param name the name of the job
+     * @param completed whether the job completed successfully
+     * @param startedAt the time the job started at
+     * @param elapsedNanos the duration of the job, in nanoseconds
+     * @param activity the activity of every metric during the job
+     */
+    private void write(@NotNull String name, boolean completed, @NotNull Instant startedAt, long elapsedNanos, @NotNull MetricsSnapshot activity) {
+        StringBuilder json = new StringBuilder("{\n")
+            .append("  \"job\": \"").append(name).append("\",\n")
+            .append("  \"status\": \"").append(completed ? "completed" : "failed").append("\",\n")
+            .append("  \"startedAt\": \"").append(startedAt).append("\",\n")
+            .append("  \"elapsedNanos\": ").append(elapsedNanos).append(",\n")
+            .append("  \"version\": \"").append(version()).append("\",\n")
+            .append("  \"javaVersion\": \"").append(Runtime.version()).append("\",\n")
+            .append("  \"processors\": ").append(Runtime.getRuntime().availableProcessors()).append(",\n");
+        activity.appendJson(json, "  ");
+        json.append("\n}\n");
+
+        Path directory = PathResolver.getInstance().getLogDirectory().resolve(DIRECTORY_NAME);
+        try {
+            Files.createDirectories(directory);
+            Path file = directory.resolve(name + "-" + FILE_TIMESTAMP.format(startedAt) + ".json");
+            Files.writeString(file, json);
+            log.info("Metrics of job {} written to: {}", name, file);
+
+            prune(directory);
+        } catch (IOException e) {
+            log.warn("Couldn't write metrics of job {}: {}", name, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Deletes the oldest metrics files over the limit.
+     *
+     * @param directory the metrics directory
+     * @throws IOException if the directory cannot be listed
+     */
+    private void prune(@NotNull Path directory) throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream
+                .filter(path -> path.getFileName().toString().endsWith(".json"))
+                .sorted(Comparator.comparing(this::lastModified).reversed())
+                .toList();
+        }
+
+        for (Path file : files.subList(Math.min(files.size(), MAX_SNAPSHOT_FILES), files.size())) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private long lastModified(@NotNull Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the version of the application, as recorded in the manifest of its jar.
+     *
+     * @return the version, or {@code "dev"} if the application doesn't run from a jar
+     */
+    private static @NotNull String version() {
+        String version = MetricsRegistry.class.getPackage().getImplementationVersion();
+        return version != null ? version : "dev";
+    }
+
+    private static @NotNull String validate(@NotNull String name) {
+        if (!NAME_PATTERN.matcher(name).matches()) throw new IllegalArgumentException("Invalid metric name: " + name);
+        return name;
+    }
+
+    private static <M, V> @NotNull Map<String, V> snapshot(@NotNull Map<String, M> metrics, @NotNull Function<M, V> value) {
+        Map<String, V> result = new TreeMap<>();
+        metrics.forEach((name, metric) -> result.put(name, value.apply(metric)));
+        return result;
+    }
+
+    /**
+     * A task run as a job.
+     *
+     * @param <T> the type of the result of the task
+     * @param <E> the type of the exception thrown by the task
+     */
+    @FunctionalInterface
+    public interface Job<T, E extends Exception> {
+        T run() throws E;
+    }
+}
@@ -0,0 +1,95 @@
+package pl.magzik.picture_comparer_fx.base.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The state of every metric of a {@link MetricsRegistry} at a point in time.
+ * <p>
+ * Metrics only ever grow, so the activity between two points in time is the difference between two snapshots,
+ * see {@link #minus(MetricsSnapshot)}. Metrics are sorted by name.
+ * </p>
+ *
+ * @param counters the counts of every {@link Counter}
+ * @param histograms the distributions of every {@link Histogram}
+ * @param timers the distributions of every {@link Timer}
+ */
+public record MetricsSnapshot(
+    @NotNull Map<String, Long> counters,
+    @NotNull Map<String, HistogramSnapshot> histograms,
+    @NotNull Map<String, HistogramSnapshot> timers
+) {
+
+    /**
+     * Returns the activity since the given snapshot was taken. Metrics registered since then count from zero.
+     *
+     * @param baseline the snapshot taken earlier
+     * @return the difference between this snapshot and the baseline
+     */
+    public @NotNull MetricsSnapshot minus(@NotNull MetricsSnapshot baseline) {
+        Map<String, Long> counters = new TreeMap<>();
+        this.counters.forEach((name, count) -> counters.put(name, count - baseline.counters.getOrDefault(name, 0L)));
+
+        return new MetricsSnapshot(counters, minus(histograms, baseline.histograms), minus(timers, baseline.timers));
+    }
+
+    /**
+     * Appends this snapshot as JSON object members to the given builder, without the enclosing braces.
+     * Every histogram and timer is summarized by its count, sum, mean and percentiles.
+     *
+     * @param json the builder to append to
+     * @param indent the indentation of the members
+     */
+    void appendJson(@NotNull StringBuilder json, @NotNull String indent) {
+        json.append(indent).append("\"counters\": {");
+        String separator = "\n";
+        for (Map.Entry<String, Long> entry : counters.entrySet()) {
+            json.append(separator).append(indent).append("  \"").append(entry.getKey()).append("\": ").append(entry.getValue());
+            separator = ",\n";
+        }
+        json.append(counters.isEmpty() ? "" : "\n" + indent).append("},\n");
+
+        appendJson(json, indent, "histograms", histograms);
+        json.append(",\n");
+        appendJson(json, indent, "timers", timers);
+    }
+
+    private static void appendJson(
+        @NotNull StringBuilder json,
+        @NotNull String indent,
+        @NotNull String name,
+        @NotNull Map<String, HistogramSnapshot> metrics
+    ) {
+        json.append(indent).append('"').append(name).append("\": {");
+        String separator = "\n";
+        for (Map.Entry<String, HistogramSnapshot> entry : metrics.entrySet()) {
+            HistogramSnapshot h = entry.getValue();
+            json.append(separator).append(indent).append("  \"").append(entry.getKey()).append("\": {")
+                .append("\"unit\": \"").append(h.unit()).append('"')
+                .append(", \"count\": ").append(h.count())
+                .append(", \"sum\": ").append(h.sum())
+                .append(", \"mean\": ").append(Math.round(h.mean()))
+                .append(", \"p50\": ").append(h.percentile(0.5))
+                .append(", \"p90\": ").append(h.percentile(0.9))
+                .append(", \"p99\": ").append(h.percentile(0.99))
+                .append(", \"max\": ").append(h.percentile(1))
+                .append('}');
+            separator = ",\n";
+        }
+        json.append(metrics.isEmpty() ? "" : "\n" + indent).append('}');
+    }
+
+    private static @NotNull Map<String, HistogramSnapshot> minus(
+        @NotNull Map<String, HistogramSnapshot> current,
+        @NotNull Map<String, HistogramSnapshot> baseline
+    ) {
+        Map<String, HistogramSnapshot> result = new TreeMap<>();
+        current.forEach((name, snapshot) -> {
+            HistogramSnapshot previous = baseline.get(name);
+            result.put(name, previous != null ? snapshot.minus(previous) : snapshot);
+        });
+        return result;
+    }
+}
@@ -0,0 +1,73 @@
+package pl.magzik.picture_comparer_fx.base.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A metric recording the distribution of durations of an operation, in nanoseconds.
+ * <p>
+ * An operation is timed by wrapping it in a try-with-resources block:
+ * <pre>{@code
+ * try (Timer.Context ignored = TIMER.start()) {
+ *     // the timed operation
+ * }
+ * }</pre>
+ * Failed operations are timed as well.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ *
+ * @see MetricsRegistry#timer(String)
+ */
+public class Timer {
+
+    private final Histogram durations = new Histogram("ns");
+
+    Timer() {}
+
+    /**
+     * Starts timing an operation.
+     *
+     * @return the {@link Context} recording the duration once closed
+     */
+    public @NotNull Context start() {
+        return new Context(System.nanoTime());
+    }
+
+    /**
+     * Records the duration of an operation timed elsewhere.
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    public void record(long nanos) {
+        durations.record(nanos);
+    }
+
+    /**
+     * Returns the current distribution of the recorded durations.
+     *
+     * @return the {@link HistogramSnapshot} of the durations
+     */
+    public @NotNull HistogramSnapshot snapshot() {
+        return durations.snapshot();
+    }
+
+    /**
+     * A single timed operation, recorded once closed.
+     */
+    public final class Context implements AutoCloseable {
+        private final long start;
+
+        private Context(long start) {
+            this.start = start;
+        }
+
+        /**
+         * Records the time elapsed since the operation started.
+         */
+        @Override
+        public void close() {
+            record(System.nanoTime() - start);
+        }
+    }
+}
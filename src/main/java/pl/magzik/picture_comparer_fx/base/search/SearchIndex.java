@@ -0,0 +1,231 @@
+package pl.magzik.picture_comparer_fx.base.search;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * An in-memory, case-insensitive substring search index, built on the trigrams of the indexed texts.
+ * <p>
+ * Every indexed entry gets an id in the order it was added, and every trigram (three consecutive characters)
+ * of its text maps to the ids of the entries containing it, so the id lists are always sorted.
+ * A query of at least three characters intersects the id lists of its trigrams, starting from the shortest one,
+ * and only the remaining candidates are checked against the query, so a query is answered in time proportional
+ * to the number of candidates, not to the number of entries. Shorter queries scan every indexed text.
+ * </p>
+ * <p>
+ * The index is maintained incrementally. Adding an entry appends its id to the lists of its trigrams.
+ * Removing an entry only marks its id as removed, and the index is rebuilt once more than half of its ids are removed,
+ * so both operations take amortized constant time per trigram.
+ * </p>
+ * <p>
+ * The text of an entry must not change while the entry is indexed. This class is not thread-safe.
+ * </p>
+ *
+ * @param <T> the type of the indexed entries
+ */
+public class SearchIndex<T> {
+
+    private static final int MIN_COMPACTION_SIZE = 1024;
+
+    private static final int[] NO_IDS = new int[0];
+
+    private final Function<T, String> text;
+
+    private final Map<T, Integer> ids;
+
+    private final Map<Long, Postings> postings;
+
+    private Object[] entries;
+
+    private String[] texts;
+
+    private int next;
+
+    /**
+     * Constructs an empty {@link SearchIndex}, indexing the text extracted from every entry by the given function.
+     *
+     * @param text the function extracting the searchable text of an entry
+     */
+    public SearchIndex(@NotNull Function<T, String> text) {
+        this.text = text;
+        this.ids = new HashMap<>();
+        this.postings = new HashMap<>();
+        this.entries = new Object[16];
+        this.texts = new String[16];
+        this.next = 0;
+    }
+
+    /**
+     * Returns the number of indexed entries.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * Adds the given entry to the index. Entries already indexed are skipped.
+     *
+     * @param entry the entry to add
+     */
+    public void add(@NotNull T entry) {
+        if (ids.containsKey(entry)) return;
+
+        if (next == entries.length) {
+            entries = Arrays.copyOf(entries, next * 2);
+            texts = Arrays.copyOf(texts, next * 2);
+        }
+
+        int id = next++;
+        String normalized = normalize(text.apply(entry));
+        entries[id] = entry;
+        texts[id] = normalized;
+        ids.put(entry, id);
+
+        for (int i = 0; i + 3 <= normalized.length(); i++) {
+            postings.computeIfAbsent(trigram(normalized, i), k -> new Postings()).add(id);
+        }
+    }
+
+    /**
+     * Removes the given entry from the index, if present.
+     *
+     * @param entry the entry to remove
+     */
+    public void remove(@NotNull T entry) {
+        Integer id = ids.remove(entry);
+        if (id == null) return;
+
+        entries[id] = null;
+        texts[id] = null;
+
+        int removed = next - ids.size();
+        if (removed > MIN_COMPACTION_SIZE && removed > ids.size()) compact();
+    }
+
+    /**
+     * Removes every entry from the index.
+     */
+    public void clear() {
+        ids.clear();
+        postings.clear();
+        entries = new Object[16];
+        texts = new String[16];
+        next = 0;
+    }
+
+    /**
+     * Returns the entries whose text contains the given query, ignoring case.
+     *
+     * @param query the query
+     * @return the matching entries, in the order they were added, or every entry if the query is empty
+     */
+    public @NotNull List<T> search(@NotNull String query) {
+        String normalized = normalize(query);
+        List<T> result = new ArrayList<>();
+
+        if (normalized.length() < 3) {
+            for (int id = 0; id < next; id++) {
+                if (texts[id] != null && texts[id].contains(normalized)) result.add(entry(id));
+            }
+            return result;
+        }
+
+        for (int id : candidates(normalized)) {
+            if (texts[id] != null && texts[id].contains(normalized)) result.add(entry(id));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the ids of the entries containing every trigram of the given query.
+     *
+     * @param query the normalized query, at least three characters long
+     * @return the sorted ids of the candidates, possibly including removed ids
+     */
+    private int @NotNull [] candidates(@NotNull String query) {
+        List<Postings> lists = new ArrayList<>();
+        for (int i = 0; i + 3 <= query.length(); i++) {
+            Postings list = postings.get(trigram(query, i));
+            if (list == null) return NO_IDS;
+            lists.add(list);
+        }
+        lists.sort(Comparator.comparingInt(list -> list.size));
+
+        int[] candidates = Arrays.copyOf(lists.getFirst().ids, lists.getFirst().size);
+        int size = candidates.length;
+        for (int l = 1; l < lists.size() && size > 0; l++) {
+            size = intersect(candidates, size, lists.get(l));
+        }
+        return Arrays.copyOf(candidates, size);
+    }
+
+    /**
+     * Keeps only the candidates present in the given list, in place.
+     *
+     * @param candidates the sorted candidates
+     * @param size the number of candidates
+     * @param list the sorted list to intersect with
+     * @return the number of remaining candidates
+     */
+    private int intersect(int @NotNull [] candidates, int size, @NotNull Postings list) {
+        int kept = 0;
+        for (int i = 0, j = 0; i < size && j < list.size; ) {
+            int a = candidates[i], b = list.ids[j];
+            if (a < b) i++;
+            else if (a > b) j++;
+            else {
+                candidates[kept++] = a;
+                i++;
+                j++;
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Rebuilds the index from its remaining entries, dropping the removed ids.
+     */
+    private void compact() {
+        Object[] remaining = Arrays.copyOf(entries, next);
+        clear();
+        for (Object entry : remaining) {
+            if (entry != null) add(cast(entry));
+        }
+    }
+
+    private @NotNull T entry(int id) {
+        return cast(entries[id]);
+    }
+
+    @SuppressWarnings("unchecked")
+    private @NotNull T cast(@NotNull Object entry) {
+        return (T) entry;
+    }
+
+    private static @NotNull String normalize(@NotNull String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    private static long trigram(@NotNull String text, int index) {
+        return (long) text.charAt(index) << 32 | (long) text.charAt(index + 1) << 16 | text.charAt(index + 2);
+    }
+
+    /**
+     * A growable, sorted list of the ids of the entries containing a single trigram.
+     */
+    private static final class Postings {
+        private int[] ids = new int[4];
+        private int size = 0;
+
+        private void add(int id) {
+            // A text containing the same trigram more than once is only listed once.
+            if (size > 0 && ids[size - 1] == id) return;
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package pl.magzik.picture_comparer_fx.cli;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.magzik.picture_comparer_fx.model.ComparerModel;
+import pl.magzik.picture_comparer_fx.model.SettingsModel;
+import pl.magzik.picture_comparer_fx.service.ComparerService;
+import pl.magzik.picture_comparer_fx.service.SettingsService;
+import pl.magzik.picture_comparer_fx.service.comparison.ScanResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+
+/**
+ * The headless batch mode of the application, meant for scheduled runs, e.g., from cron.
+ * <p>
+ * Scans every given root with the same {@link ComparerService} the GUI uses, and writes the groups of duplicates
+ * to the standard output as JSON Lines (see {@link JsonLinesWriter}), while logs go to the standard error.
+ * The JavaFX toolkit is never initialized, so the batch mode works without a display.
+ * </p>
+ * <p>
+ * The saved settings are used as defaults, and can be overridden by command line options (see {@link BatchOptions}).
+ * Overrides are never saved.
+ * </p>
+ */
+public final class BatchMode {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchMode.class);
+
+    /**
+     * The command line flag selecting the batch mode. It must be the first argument.
+     */
+    public static final String FLAG = "--batch";
+
+    /**
+     * The exit code of a run that found no duplicates.
+     */
+    public static final int EXIT_NO_DUPLICATES = 0;
+
+    /**
+     * The exit code of a run that found duplicates.
+     */
+    public static final int EXIT_DUPLICATES = 1;
+
+    /**
+     * The exit code of a run in which at least one root couldn't be scanned.
+     */
+    public static final int EXIT_FAILURE = 2;
+
+    /**
+     * The exit code of an invalid usage, as defined by {@code sysexits.h}.
+     */
+    public static final int EXIT_USAGE = 64;
+
+    private BatchMode() {}
+
+    /**
+     * Runs the batch mode with the given arguments.
+     *
+     * @param args the arguments following {@link #FLAG}
+     * @return the exit code of the run
+     */
+    public static int run(@NotNull String @NotNull [] args) {
+        BatchOptions options;
+        try {
+            options = BatchOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(BatchOptions.USAGE);
+            return EXIT_USAGE;
+        }
+
+        if (options.help()) {
+            System.out.print(BatchOptions.USAGE);
+            return EXIT_NO_DUPLICATES;
+        }
+
+        ComparerService service = new ComparerService(new ComparerModel(loadSettings(options)));
+        return scan(service, options, new JsonLinesWriter(System.out));
+    }
+
+    /**
+     * Loads the saved settings and applies the command line overrides on top of them.
+     * <p>
+     * If the settings couldn't be loaded, the defaults are used instead.
+     * </p>
+     *
+     * @param options the parsed command line options
+     * @return the resulting {@link SettingsModel}
+     */
+    private static @NotNull SettingsModel loadSettings(@NotNull BatchOptions options) {
+        SettingsModel settings = new SettingsModel();
+        try {
+            new SettingsService(settings).loadSettings();
+        } catch (IOException e) {
+            log.warn("Couldn't load settings, using defaults: {}", e.getMessage(), e);
+        }
+
+        if (options.recursive() != null) settings.setRecursiveMode(options.recursive());
+        if (options.perceptualHash() != null) settings.setPerceptualHash(options.perceptualHash());
+        if (options.pixelByPixel() != null) settings.setPixelByPixel(options.pixelByPixel());
+        if (options.hashDistance() != null) settings.setHashDistance(options.hashDistance());
+        if (options.checksumAlgorithm() != null) settings.setChecksumAlgorithm(options.checksumAlgorithm());
+        if (options.pixelMemoryBudget() != null) settings.setPixelMemoryBudget(options.pixelMemoryBudget());
+
+        return settings;
+    }
+
+    /**
+     * Scans the roots one by one, writing the groups of every root as soon as its scan completes.
+     *
+     * @param service the {@link ComparerService} used to scan
+     * @param options the parsed command line options
+     * @param writer the {@link JsonLinesWriter} receiving the results
+     * @return the exit code of the run
+     */
+    private static int scan(@NotNull ComparerService service, @NotNull BatchOptions options, @NotNull JsonLinesWriter writer) {
+        long start = System.nanoTime();
+        int failedRoots = 0, files = 0, groups = 0, duplicates = 0;
+
+        for (File root : options.roots()) {
+            log.info("Scanning {}...", root);
+            try {
+                ScanResult result = service.scanFiles(root).join();
+                for (Map.Entry<File, Set<File>> group : result.groups().entrySet())
+                    writer.group(root, group.getKey(), group.getValue());
+
+                files += result.files().size();
+                groups += result.groups().size();
+                duplicates += result.duplicates().size();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                log.error("Couldn't scan {}: {}", root, cause.getMessage(), cause);
+                writer.error(root, String.valueOf(cause.getMessage()));
+                failedRoots++;
+            }
+        }
+
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        writer.summary(options.roots().size(), failedRoots, files, groups, duplicates, elapsedMillis);
+        log.info("Batch finished in {} ms: {} files, {} groups, {} duplicates.", elapsedMillis, files, groups, duplicates);
+
+        if (failedRoots > 0) return EXIT_FAILURE;
+        return duplicates > 0 ? EXIT_DUPLICATES : EXIT_NO_DUPLICATES;
+    }
+}
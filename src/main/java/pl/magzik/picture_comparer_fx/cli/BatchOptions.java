@@ -0,0 +1,154 @@
+package pl.magzik.picture_comparer_fx.cli;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import pl.magzik.picture_comparer_fx.model.SettingsModel;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The command line options of the batch mode.
+ * <p>
+ * Every comparison option is optional: if it's not given, the value from the saved settings is used.
+ * </p>
+ *
+ * @param roots the directories or files to scan
+ * @param recursive whether to scan the roots recursively, or {@code null} to use the saved setting
+ * @param perceptualHash whether to use the perceptual hash, or {@code null} to use the saved setting
+ * @param pixelByPixel whether to use the pixel-by-pixel comparison, or {@code null} to use the saved setting
+ * @param hashDistance the near-duplicate hash distance, or {@code null} to use the saved setting
+ * @param checksumAlgorithm the checksum algorithm name, or {@code null} to use the saved setting
+ * @param pixelMemoryBudget the pixel comparison memory budget in MiB, or {@code null} to use the saved setting
+ * @param help whether only the usage should be printed
+ */
+public record BatchOptions(
+    @NotNull List<File> roots,
+    @Nullable Boolean recursive,
+    @Nullable Boolean perceptualHash,
+    @Nullable Boolean pixelByPixel,
+    @Nullable Integer hashDistance,
+    @Nullable String checksumAlgorithm,
+    @Nullable Integer pixelMemoryBudget,
+    boolean help
+) {
+
+    /**
+     * The usage of the batch mode, printed on {@code --help} and after usage errors.
+     */
+    public static final String USAGE = """
+        Usage: PictureComparerFX --batch [options] <root>...
+
+        Scans every root for duplicate images and writes the results to the standard output as JSON Lines.
+        Options not given fall back to the saved settings.
+
+        Options:
+          -r, --recursive             scan the roots recursively
+              --no-recursive          scan only the top level of the roots
+              --perceptual-hash       refine duplicates with the perceptual hash
+              --no-perceptual-hash    don't use the perceptual hash
+              --pixel-by-pixel        refine duplicates with the pixel-by-pixel comparison
+              --no-pixel-by-pixel     don't use the pixel-by-pixel comparison
+              --hash-distance <n>     group near-duplicates within <n> bits of perceptual hash (0 = exact)
+              --checksum <name>       checksum algorithm: crc32 or crc32c
+              --memory-budget <MiB>   memory budget of the pixel-by-pixel comparison
+          -h, --help                  print this message
+
+        Exit codes:
+          0   no duplicates found
+          1   duplicates found
+          2   at least one root couldn't be scanned
+          64  invalid usage
+        """;
+
+    /**
+     * Parses the given command line arguments.
+     *
+     * @param args the arguments following the batch mode flag
+     * @return the parsed {@link BatchOptions}
+     * @throws IllegalArgumentException if the arguments are invalid
+     */
+    public static @NotNull BatchOptions parse(@NotNull String @NotNull [] args) {
+        List<File> roots = new ArrayList<>();
+        Boolean recursive = null, perceptualHash = null, pixelByPixel = null;
+        Integer hashDistance = null, pixelMemoryBudget = null;
+        String checksumAlgorithm = null;
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            String value = null;
+            if (arg.startsWith("--") && arg.contains("=")) {
+                value = arg.substring(arg.indexOf('=') + 1);
+                arg = arg.substring(0, arg.indexOf('='));
+            }
+
+            switch (arg) {
+                case "-h", "--help" -> {
+                    return new BatchOptions(List.of(), null, null, null, null, null, null, true);
+                }
+                case "-r", "--recursive" -> recursive = true;
+                case "--no-recursive" -> recursive = false;
+                case "--perceptual-hash" -> perceptualHash = true;
+                case "--no-perceptual-hash" -> perceptualHash = false;
+                case "--pixel-by-pixel" -> pixelByPixel = true;
+                case "--no-pixel-by-pixel" -> pixelByPixel = false;
+                case "--hash-distance" -> hashDistance = parseInt(arg, value != null ? value : next(args, ++i, arg));
+                case "--checksum" -> checksumAlgorithm = value != null ? value : next(args, ++i, arg);
+                case "--memory-budget" -> pixelMemoryBudget = parseInt(arg, value != null ? value : next(args, ++i, arg));
+                default -> {
+                    if (arg.startsWith("-")) throw new IllegalArgumentException("Unknown option: " + arg);
+
+                    File root = new File(arg);
+                    if (!root.exists()) throw new IllegalArgumentException("Root doesn't exist: " + arg);
+                    roots.add(root);
+                }
+            }
+        }
+
+        if (roots.isEmpty()) throw new IllegalArgumentException("No roots given.");
+        if (hashDistance != null && (hashDistance < 0 || hashDistance > SettingsModel.MAX_HASH_DISTANCE))
+            throw new IllegalArgumentException("Hash distance must be between 0 and " + SettingsModel.MAX_HASH_DISTANCE + ".");
+        if (checksumAlgorithm != null && !SettingsModel.getChecksumAlgorithms().contains(checksumAlgorithm))
+            throw new IllegalArgumentException("Unknown checksum algorithm: " + checksumAlgorithm);
+        if (pixelMemoryBudget != null
+            && (pixelMemoryBudget < SettingsModel.MIN_PIXEL_MEMORY_BUDGET || pixelMemoryBudget > SettingsModel.MAX_PIXEL_MEMORY_BUDGET))
+            throw new IllegalArgumentException(
+                "Memory budget must be between " + SettingsModel.MIN_PIXEL_MEMORY_BUDGET + " and " + SettingsModel.MAX_PIXEL_MEMORY_BUDGET + " MiB."
+            );
+
+        return new BatchOptions(
+            List.copyOf(roots), recursive, perceptualHash, pixelByPixel, hashDistance, checksumAlgorithm, pixelMemoryBudget, false
+        );
+    }
+
+    /**
+     * Returns the value of an option given as a separate argument.
+     *
+     * @param args the arguments
+     * @param index the index of the value
+     * @param option the option, used for error messages
+     * @return the value
+     * @throws IllegalArgumentException if there is no value
+     */
+    private static @NotNull String next(@NotNull String @NotNull [] args, int index, @NotNull String option) {
+        if (index >= args.length) throw new IllegalArgumentException("Missing value of: " + option);
+        return args[index];
+    }
+
+    /**
+     * Parses the numeric value of an option.
+     *
+     * @param option the option, used for error messages
+     * @param value the value
+     * @return the parsed value
+     * @throws IllegalArgumentException if the value is not a number
+     */
+    private static int parseInt(@NotNull String option, @NotNull String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value of " + option + ": " + value);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package pl.magzik.picture_comparer_fx.cli;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Collection;
+
+/**
+ * Writes the results of the batch mode as JSON Lines, one self-contained JSON object per line.
+ * <p>
+ * Every record has a {@code "type"} field:
+ * <ul>
+ *     <li>{@code "group"}: a group of duplicates, with the {@code "root"} it was found in, the {@code "original"}
+ *     and its {@code "duplicates"},</li>
+ *     <li>{@code "error"}: a root that couldn't be scanned, with the error {@code "message"},</li>
+ *     <li>{@code "summary"}: the totals of the whole run, always written last.</li>
+ * </ul>
+ * Every record is flushed as soon as it's written, so consumers can process the results while the scan still runs.
+ * </p>
+ */
+public class JsonLinesWriter {
+
+    private final PrintStream out;
+
+    /**
+     * Constructs a {@link JsonLinesWriter} writing to the given stream.
+     *
+     * @param out the stream to write to
+     */
+    public JsonLinesWriter(@NotNull PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes a group of duplicates.
+     *
+     * @param root the root the group was found in
+     * @param original the first file of the group
+     * @param group all files of the group, the original included
+     */
+    public void group(@NotNull File root, @NotNull File original, @NotNull Collection<File> group) {
+        StringBuilder line = new StringBuilder("{\"type\":\"group\",\"root\":");
+        string(line, root.getAbsolutePath()).append(",\"original\":");
+        string(line, original.getAbsolutePath()).append(",\"duplicates\":[");
+
+        boolean first = true;
+        for (File file : group) {
+            if (file.equals(original)) continue;
+            if (!first) line.append(',');
+            string(line, file.getAbsolutePath());
+            first = false;
+        }
+
+        write(line.append("]}"));
+    }
+
+    /**
+     * Writes an error of a root that couldn't be scanned.
+     *
+     * @param root the root
+     * @param message the error message
+     */
+    public void error(@NotNull File root, @NotNull String message) {
+        StringBuilder line = new StringBuilder("{\"type\":\"error\",\"root\":");
+        string(line, root.getAbsolutePath()).append(",\"message\":");
+        write(string(line, message).append('}'));
+    }
+
+    /**
+     * Writes the summary of the run.
+     *
+     * @param roots the number of scanned roots
+     * @param failedRoots the number of roots that couldn't be scanned
+     * @param files the number of discovered image files
+     * @param groups the number of groups of duplicates
+     * @param duplicates the number of duplicates, originals excluded
+     * @param elapsedMillis the duration of the run, in milliseconds
+     */
+    public void summary(int roots, int failedRoots, int files, int groups, int duplicates, long elapsedMillis) {
+        write(new StringBuilder()
+            .append("{\"type\":\"summary\",\"roots\":").append(roots)
+            .append(",\"failedRoots\":").append(failedRoots)
+            .append(",\"files\":").append(files)
+            .append(",\"groups\":").append(groups)
+            .append(",\"duplicates\":").append(duplicates)
+            .append(",\"elapsedMillis\":").append(elapsedMillis)
+            .append('}'));
+    }
+
+    /**
+     * Writes a single line and flushes the stream.
+     *
+     * @param line the line to write
+     */
+    private void write(@NotNull CharSequence line) {
+        out.println(line);
+        out.flush();
+    }
+
+    /**
+     * Appends the given value as a JSON string, escaping it as needed.
+     *
+     * @param line the line to append to
+     * @param value the value
+     * @return the given line
+     */
+    private static @NotNull StringBuilder string(@NotNull StringBuilder line, @NotNull String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                case '\t' -> line.append("\\t");
+                default -> {
+                    if (c < 0x20) line.append("\\u%04x".formatted((int) c));
+                    else line.append(c);
+                }
+            }
+        }
+        return line.append('"');
+    }
+}
@@ -1,5 +1,8 @@
 package pl.magzik.picture_comparer_fx.controller;
 
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
@@ -7,6 +10,8 @@ import javafx.scene.chart.PieChart;
 import javafx.scene.control.*;
 import javafx.scene.text.Text;
 import javafx.stage.DirectoryChooser;
+import javafx.util.Duration;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,13 +19,23 @@ import pl.magzik.picture_comparer_fx.controller.base.Controller;
 import pl.magzik.picture_comparer_fx.controller.base.PanelController;
 import pl.magzik.picture_comparer_fx.model.ComparerModel;
 import pl.magzik.picture_comparer_fx.service.ComparerService;
+import pl.magzik.picture_comparer_fx.service.comparison.DirectoryWatcher;
+import pl.magzik.picture_comparer_fx.service.comparison.ScanProgress;
+import pl.magzik.picture_comparer_fx.service.comparison.ScanResult;
+import pl.magzik.picture_comparer_fx.service.files.FileOperationReport;
 import pl.magzik.picture_comparer_fx.state.*;
 import pl.magzik.picture_comparer_fx.state.base.State;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 
 /**
@@ -31,11 +46,19 @@ import java.util.function.Supplier;
  * This class extends {@link PanelController} and provides methods to switch between different states during
  * the image comparison process, including selecting directories, loading files, comparing files, and managing
  * duplicate files.
+ * <p>
+ * While a scan is running, its progress is reported by the service from the scanning threads. Only the latest
+ * report is kept, and it's rendered at most every {@code 200} ms, so the UI thread never falls behind the scan.
+ * </p>
  */
 public class ComparerController extends PanelController {
 
     private static final Logger log = LoggerFactory.getLogger(ComparerController.class);
 
+    private static final Duration PROGRESS_RENDER_INTERVAL = Duration.millis(200);
+
+    private static final double MIB = 1024 * 1024;
+
     private final ComparerModel model;
 
     private final ComparerService service;
@@ -46,6 +69,18 @@ public class ComparerController extends PanelController {
 
     private final StateMachine<State<ComparerController>, ComparerController> stateMachine;
 
+    private final AtomicReference<ScanProgress> pendingProgress;
+
+    private final Timeline progressTimeline;
+
+    private @Nullable CompletableFuture<ScanResult> scan;
+
+    private int scanGeneration;
+
+    private @Nullable CompletableFuture<DirectoryWatcher> watcher;
+
+    private int watchGeneration;
+
     /**
      * Constructs a new {@code ComparerController}.
      */
@@ -57,6 +92,10 @@ public class ComparerController extends PanelController {
 
         this.originalSlice = new PieChart.Data("O", 50);
         this.duplicateSlice = new PieChart.Data("D", 50);
+
+        this.pendingProgress = new AtomicReference<>();
+        this.progressTimeline = new Timeline(new KeyFrame(PROGRESS_RENDER_INTERVAL, e -> renderProgress()));
+        this.progressTimeline.setCycleCount(Animation.INDEFINITE);
     }
 
     @FXML
@@ -74,6 +113,9 @@ public class ComparerController extends PanelController {
     @FXML
     private Button removeButton;
 
+    @FXML
+    private Button linkButton;
+
     @FXML
     private Button resetButton;
 
@@ -122,6 +164,8 @@ public class ComparerController extends PanelController {
             && !showConfirmationDialog("dialog.header.back-menu")
         ) return;
 
+        if (cancelScan()) stateMachine.changeState(new ComparerResetState());
+        stopWatching();
         super.backToMenu();
     }
 
@@ -160,8 +204,15 @@ public class ComparerController extends PanelController {
     }
 
     /**
-     * Initiates the file loading process. It validates the path and begins loading the files from the specified
-     * directory, updating the UI as the process progresses.
+     * Initiates the file loading process. It validates the path and begins a pipelined scan of the specified
+     * directory, in which files are compared while the directory is still being walked,
+     * updating the UI as the process progresses.
+     * <p>
+     * If the watch mode is enabled, the directory is watched for changes once the scan completes.
+     * </p>
+     * <p>
+     * The scan can be aborted with the reset or back button, in which case its results are discarded.
+     * </p>
      */
     @FXML
     private void handleLoadingFiles() {
@@ -169,14 +220,137 @@ public class ComparerController extends PanelController {
         if (!validatePath(path)) return;
 
         log.info("Loading files from path: {}", path);
-        stateMachine.changeState(new ComparerProcessingState(StatePhase.PREPARE));
+        cancelScan();
+        stopWatching();
+        stateMachine.changeState(new ComparerScanState());
+
+        pendingProgress.set(null);
+        progressTimeline.play();
+
+        File root = new File(path);
+        int generation = ++scanGeneration;
+        scan = service.scanFiles(root, pendingProgress::set);
+        scan.thenApply(result -> {
+                    updateUserInterface(generation, StatePhase.MAP, model.getLoadedFiles(), result.files());
+                    updateUserInterface(generation, StatePhase.UPDATE, model.getDuplicateFiles(), result.duplicates());
+                    return result;
+                })
+                .exceptionally(e -> isCancellation(e) ? null : handleTaskError("Error occurred while loading the files:", "dialog.context.error.comparer.loading", e))
+                .thenAccept(result -> handleLoadTaskCompleted(generation, root, result));
+    }
+
+    /**
+     * Cancels the running scan, if any, interrupting its work. Results of the scan already on their way are discarded.
+     *
+     * @return {@code true} if a running scan has been cancelled, {@code false} otherwise
+     */
+    private boolean cancelScan() {
+        scanGeneration++;
+        progressTimeline.stop();
+        pendingProgress.set(null);
+        if (scan == null) return false;
+
+        boolean cancelled = scan.cancel(true);
+        scan = null;
+        if (cancelled) log.info("Scan cancelled.");
+        return cancelled;
+    }
 
-        service.validateFiles(new File(path))
-                .thenApply(files -> updateUserInterface(StatePhase.MAP, model.getLoadedFiles(), files))
-                .thenCompose(service::compareFiles)
-                .thenApply(files -> updateUserInterface(StatePhase.UPDATE, model.getDuplicateFiles(), files))
-                .exceptionally(e -> handleTaskError("Error occurred while loading the files:", "dialog.context.error.comparer.loading", e))
-                .whenComplete((v, e) -> handleLoadTaskCompleted());
+    /**
+     * Checks whether the given failure of a task was caused by cancelling it.
+     *
+     * @param e the failure
+     * @return {@code true} if the task has been cancelled, {@code false} otherwise
+     */
+    private static boolean isCancellation(Throwable e) {
+        return e instanceof CancellationException || e.getCause() instanceof CancellationException;
+    }
+
+    /**
+     * Renders the latest progress of the running scan, if any was reported since the last rendering.
+     */
+    private void renderProgress() {
+        ScanProgress progress = pendingProgress.getAndSet(null);
+        if (progress == null) return;
+
+        taskProgressBar.setProgress(progress.fraction());
+        stateText.setText(formatProgress(progress));
+    }
+
+    /**
+     * Formats the given progress of a scan for the state text.
+     *
+     * @param progress the progress to format
+     * @return the translated description of the progress
+     */
+    private String formatProgress(ScanProgress progress) {
+        String phase = translate("comparer.progress." + progress.phase().name().toLowerCase(Locale.ROOT));
+
+        if (progress.phase() == ScanProgress.Phase.GROUPING) {
+            return String.format(translate("comparer.progress.groups"),
+                phase, progress.groupsRefined(), progress.groupsToRefine(), progress.imagesDecoded()
+            );
+        }
+
+        return String.format(translate("comparer.progress.files"),
+            phase,
+            progress.filesFingerprinted(),
+            progress.filesExpected() < 0 ? progress.filesDiscovered() + "+" : String.valueOf(progress.filesExpected()),
+            progress.bytesHashed() / MIB,
+            progress.bytesPerSecond() / MIB,
+            progress.imagesDecoded()
+        );
+    }
+
+    /**
+     * Starts watching the scanned directory, applying every change to the loaded and duplicate file lists in place.
+     *
+     * @param root the scanned directory
+     * @param result the {@link ScanResult} of the scan
+     */
+    private void startWatching(File root, ScanResult result) {
+        int generation = ++watchGeneration;
+        log.info("Watching directory: {}", root);
+
+        watcher = service.watchFiles(root, result, update -> Platform.runLater(() -> {
+            if (generation == watchGeneration) handleWatchUpdate(update);
+        }));
+        watcher.exceptionally(e -> handleTaskError("Error occurred while starting to watch the files:", "dialog.context.error.comparer.watch", e));
+    }
+
+    /**
+     * Stops watching the scanned directory, if it's watched. Updates already on their way are discarded.
+     */
+    private void stopWatching() {
+        watchGeneration++;
+        if (watcher == null) return;
+
+        watcher.thenAccept(w -> {
+            try {
+                w.close();
+            } catch (IOException e) {
+                log.warn("Couldn't stop watching: {}", e.getMessage(), e);
+            }
+        });
+        watcher = null;
+    }
+
+    /**
+     * Applies an incremental update of the watched directory to the user interface.
+     * The lists are updated in place, so unchanged entries keep their position and selection.
+     *
+     * @param result the updated {@link ScanResult}
+     */
+    private void handleWatchUpdate(ScanResult result) {
+        ComparerModel.updateInPlace(model.getLoadedFiles(), result.files());
+        ComparerModel.updateInPlace(model.getDuplicateFiles(), result.duplicates());
+        model.setDuplicateGroups(result.groups());
+
+        int totalCount = model.getLoadedFiles().size();
+        int duplicateCount = model.getDuplicateFiles().size();
+        stateMachine.changeState(new ComparerWatchState(totalCount, duplicateCount));
+
+        log.info("UI updated after changes: {} files, {} duplicates", totalCount, duplicateCount);
     }
 
     /**
@@ -197,13 +371,15 @@ public class ComparerController extends PanelController {
     /**
      * Updates the user interface with the list of files, updating the loaded and duplicate file lists, and the pie chart.
      *
+     * @param generation the generation of the scan the files come from
      * @param state the current state of the comparison process
      * @param list the list to update
      * @param files the list of files to add to the list
      * @return the updated list of files
      */
-    private List<File> updateUserInterface(StatePhase state, ObservableList<File> list, List<File> files) {
+    private List<File> updateUserInterface(int generation, StatePhase state, ObservableList<File> list, List<File> files) {
         Platform.runLater(() -> {
+            if (generation != scanGeneration) return;
             ComparerModel.clearAndAddAll(list, files);
             int totalCount = model.getLoadedFiles().size();
             int duplicateCount = model.getDuplicateFiles().size();
@@ -217,14 +393,27 @@ public class ComparerController extends PanelController {
 
     /**
      * Finalizes the loading process and updates the UI with the final number of duplicates and originals.
+     * If the watch mode is enabled and the scan succeeded, starts watching the scanned directory.
+     *
+     * @param generation the generation of the completed scan
+     * @param root the scanned directory
+     * @param result the {@link ScanResult} of the scan, or {@code null} if it failed
      */
-    private void handleLoadTaskCompleted() {
+    private void handleLoadTaskCompleted(int generation, File root, @Nullable ScanResult result) {
         Platform.runLater(() -> {
+            if (generation != scanGeneration) return;
+            scan = null;
+            progressTimeline.stop();
+            pendingProgress.set(null);
+            if (result != null) model.setDuplicateGroups(result.groups());
+
             int duplicateCount = model.getDuplicateFiles().size();
             int originalCount = model.getLoadedFiles().size() - duplicateCount;
             log.debug("Calculated: duplicates: {}, originals: {}", duplicateCount, originalCount);
 
             stateMachine.changeState(new ComparerLoadCompletedState(originalCount, duplicateCount));
+
+            if (result != null && model.isWatchMode()) startWatching(root, result);
         });
     }
 
@@ -255,24 +444,61 @@ public class ComparerController extends PanelController {
     }
 
     /**
-     * Handles the file transfer task (moving or removing duplicates). Initiates the task and shows a progress dialog.
+     * Handles the process of replacing duplicate files with hard links to their originals.
+     * Displays a confirmation dialog and initiates the link operation.
+     */
+    @FXML
+    private void handleLinkingFiles() {
+        handleFileTransferTask(
+            service::linkDuplicates,
+            "dialog.header.comparer-link",
+            "Linking duplicated images...",
+            StatePhase.LINK
+        );
+    }
+
+    /**
+     * Handles the file transfer task (moving, removing or linking duplicates). Initiates the task and shows a progress dialog.
+     * <p>
+     * Once the task completes, the transferred files are removed from the duplicates, so only the files that failed remain.
+     * If any file failed, an error dialog is shown.
+     * </p>
      *
-     * @param task the task to execute (move or remove)
+     * @param task the task to execute (move, remove or link)
      * @param confirmationText the text to display in the confirmation dialog
      * @param logMsg the log message to display during the operation
      * @param state the state to change to while the operation is in progress
      */
-    private void handleFileTransferTask(Supplier<CompletableFuture<Void>> task, String confirmationText, String logMsg, StatePhase state) {
+    private void handleFileTransferTask(Supplier<CompletableFuture<FileOperationReport>> task, String confirmationText, String logMsg, StatePhase state) {
         if (!showConfirmationDialog(confirmationText)) return;
 
+        stopWatching();
         log.info(logMsg);
         stateMachine.changeState(new ComparerProcessingState(state));
 
         task.get()
+            .thenAccept(report -> Platform.runLater(() -> handleFileTransferCompleted(report)))
             .exceptionally(e -> handleTaskError("Error occurred while transferring the files:", "dialog.context.error.comparer.file-transfer", e))
             .whenComplete((v, t) -> Platform.runLater(() -> stateMachine.changeState(new ComparerPostProcessState())));
     }
 
+    /**
+     * Removes the transferred files from the lists, and reports the files that couldn't be transferred.
+     * Linked files are still in place, so they're only removed from the duplicates.
+     *
+     * @param report the {@link FileOperationReport} of the transfer
+     */
+    private void handleFileTransferCompleted(@NotNull FileOperationReport report) {
+        Set<File> transferred = new HashSet<>(report.succeeded());
+        model.getDuplicateFiles().removeIf(transferred::contains);
+        if (report.operation() != FileOperationReport.Operation.LINK) model.getLoadedFiles().removeIf(transferred::contains);
+
+        if (report.isComplete()) return;
+
+        log.error("Couldn't transfer {} of {} files.", report.failures().size(), report.outcomes().size());
+        showErrorDialog("dialog.context.error.comparer.file-transfer-partial");
+    }
+
     /**
      * Handles an error during a task and displays an error dialog to the user.
      *
@@ -294,6 +520,8 @@ public class ComparerController extends PanelController {
     private void handleReset() {
         if (!showConfirmationDialog("dialog.header.comparer-reset")) return;
 
+        cancelScan();
+        stopWatching();
         model.clearLists();
         stateMachine.changeState(new ComparerResetState());
         log.info("Comparer's state has been reset.");
@@ -309,7 +537,9 @@ public class ComparerController extends PanelController {
         UPDATE("comparer.state.update"),
         MOVE("comparer.state.move"),
         REMOVE("comparer.state.remove"),
-        DONE("comparer.state.done");
+        LINK("comparer.state.link"),
+        DONE("comparer.state.done"),
+        WATCH("comparer.state.watch");
 
         private final String value;
 
@@ -337,6 +567,10 @@ public class ComparerController extends PanelController {
         return moveButton;
     }
 
+    public Button getLinkButton() {
+        return linkButton;
+    }
+
     public Button getLoadButton() {
         return loadButton;
     }
@@ -1,26 +1,42 @@
 package pl.magzik.picture_comparer_fx.controller;
 
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.fxml.FXML;
 import javafx.scene.Cursor;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.CheckBoxTableCell;
 import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
 import javafx.scene.text.Text;
 import javafx.stage.FileChooser;
+import javafx.util.Duration;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import pl.magzik.picture_comparer_fx.base.comparator.FileSizeComparator;
 import pl.magzik.picture_comparer_fx.base.comparator.NaturalComparator;
 import pl.magzik.picture_comparer_fx.controller.base.PanelController;
 import pl.magzik.picture_comparer_fx.model.GalleryModel;
 import pl.magzik.picture_comparer_fx.model.GalleryTableModel;
 import pl.magzik.picture_comparer_fx.service.GalleryService;
+import pl.magzik.picture_comparer_fx.service.gallery.ThumbnailCache;
 
 import java.io.File;
 import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 /**
  * The {@code GalleryController} class is responsible for managing the gallery view in the application.
@@ -35,29 +51,44 @@ public class GalleryController extends PanelController {
 
     private static final Logger log = LoggerFactory.getLogger(GalleryController.class);
 
+    private static final int THUMBNAIL_PADDING = 8;
+
+    private static final Duration SEARCH_DELAY = Duration.millis(150);
+
     private final GalleryModel model;
 
     private final GalleryService service;
 
+    private final DateTimeFormatter dateFormat;
+
+    private PauseTransition searchDelay;
+
     /**
      * Constructs a new {@code GalleryController} instance, initializing the model and service.
+     * Modification dates are formatted for the language chosen in the settings, not the default locale of the system.
      */
     public GalleryController() {
         this.model = getModel().getGalleryModel();
         this.service = new GalleryService(model);
+        this.dateFormat = DateTimeFormatter.ofLocalizedDateTime(FormatStyle.SHORT)
+            .withLocale(Locale.forLanguageTag(getModel().getSettingsModel().getLanguage()))
+            .withZone(ZoneId.systemDefault());
     }
 
     @FXML
     private TableColumn<GalleryTableModel, Boolean> selectColumn;
 
+    @FXML
+    private TableColumn<GalleryTableModel, File> thumbnailColumn;
+
     @FXML
     private TableColumn<GalleryTableModel, String> nameColumn;
 
     @FXML
-    private TableColumn<GalleryTableModel, String> sizeColumn;
+    private TableColumn<GalleryTableModel, Long> sizeColumn;
 
     @FXML
-    private TableColumn<GalleryTableModel, String> dateColumn;
+    private TableColumn<GalleryTableModel, Long> dateColumn;
 
     @FXML
     private TableView<GalleryTableModel> galleryTable;
@@ -92,6 +123,10 @@ public class GalleryController extends PanelController {
     /**
      * Initializes the gallery table and sets up the table columns, including setting up cell value factories,
      * comparators, and editing options. Additionally, sets the initial state of the gallery UI.
+     * <p>
+     * The file size and the modification date are formatted only by the cells displaying them,
+     * and the table is sorted by {@link #sortGallery(TableView)}.
+     * </p>
      */
     public void initialize() {
         galleryTable.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_FLEX_LAST_COLUMN);
@@ -104,19 +139,89 @@ public class GalleryController extends PanelController {
 
         addSelectAllCheckbox();
 
+        ThumbnailCache thumbnails = service.getThumbnailCache();
+        thumbnailColumn.setCellValueFactory(p -> new ReadOnlyObjectWrapper<>(p.getValue().getFile()));
+        thumbnailColumn.setCellFactory(c -> new ThumbnailCell(thumbnails));
+        thumbnailColumn.setSortable(false);
+        galleryTable.setFixedCellSize(ThumbnailCache.THUMBNAIL_SIZE + THUMBNAIL_PADDING);
+
         nameColumn.setCellValueFactory(new PropertyValueFactory<>("filename"));
         nameColumn.setComparator(new NaturalComparator());
 
-        sizeColumn.setCellValueFactory(new PropertyValueFactory<>("fileSize"));
-        sizeColumn.setComparator(new FileSizeComparator());
+        sizeColumn.setCellValueFactory(p -> new ReadOnlyObjectWrapper<>(p.getValue().getFileSize()));
+        sizeColumn.setCellFactory(c -> new FormattedCell<>(GalleryController::formatFileSize));
+        sizeColumn.setComparator(Comparator.naturalOrder());
 
-        dateColumn.setCellValueFactory(new PropertyValueFactory<>("modifiedDate"));
+        dateColumn.setCellValueFactory(p -> new ReadOnlyObjectWrapper<>(p.getValue().getModifiedDate()));
+        dateColumn.setCellFactory(c -> new FormattedCell<>(date -> dateFormat.format(Instant.ofEpochMilli(date))));
+        dateColumn.setComparator(Comparator.naturalOrder());
 
+        galleryTable.setSortPolicy(this::sortGallery);
         galleryTable.setItems(model.getGalleryData());
 
+        searchDelay = new PauseTransition(SEARCH_DELAY);
+        searchDelay.setOnFinished(event -> applySearch());
+
+        model.getGalleryData().addListener((ListChangeListener<GalleryTableModel>) c -> {
+            elementCountText.setText(String.valueOf(model.getGalleryData().size()));
+            if (!searchTextField.getText().isBlank()) searchDelay.playFromStart();
+        });
+        model.loadingProperty().addListener((observable, wasLoading, isLoading) -> setButtonsState(false));
+
         setProcessingState(false);
     }
 
+    /**
+     * Sorts the items of the gallery table by its sort order.
+     * <p>
+     * The default sort policy compares the cell values of the columns, which creates an observable value
+     * and boxes a number for every compared row. Instead, the rows are compared directly,
+     * by their raw file size and modification date, so these comparisons allocate nothing.
+     * </p>
+     *
+     * @param table the gallery table
+     * @return {@code true}, as the sorting always succeeds
+     */
+    private boolean sortGallery(@NotNull TableView<GalleryTableModel> table) {
+        Comparator<GalleryTableModel> comparator = null;
+        for (TableColumn<GalleryTableModel, ?> column : table.getSortOrder()) {
+            Comparator<GalleryTableModel> columnComparator = rowComparator(column);
+            if (columnComparator == null) continue;
+
+            if (column.getSortType() == TableColumn.SortType.DESCENDING) columnComparator = columnComparator.reversed();
+            comparator = comparator == null ? columnComparator : comparator.thenComparing(columnComparator);
+        }
+
+        if (comparator != null) FXCollections.sort(table.getItems(), comparator);
+        return true;
+    }
+
+    /**
+     * Returns the comparator of the gallery rows sorted by the given column.
+     *
+     * @param column the column
+     * @return the comparator, or {@code null} if the column is not sortable
+     */
+    private @Nullable Comparator<GalleryTableModel> rowComparator(@NotNull TableColumn<GalleryTableModel, ?> column) {
+        if (column == nameColumn) return Comparator.comparing(el -> el.filenameProperty().get(), nameColumn.getComparator());
+        if (column == sizeColumn) return GalleryTableModel.BY_FILE_SIZE;
+        if (column == dateColumn) return GalleryTableModel.BY_MODIFIED_DATE;
+        return null;
+    }
+
+    /**
+     * Formats the file size into a human-readable string (e.g., "1.2 MB").
+     *
+     * @param size the size of the file in bytes
+     * @return a formatted string representing the file size
+     */
+    private static @NotNull String formatFileSize(long size) {
+        if (size >= 1 << 30) return String.format("%.1f GB", size / (double)(1 << 30));
+        if (size >= 1 << 20) return String.format("%.1f MB", size / (double)(1 << 20));
+        if (size >= 1 << 10) return String.format("%.1f KB", size / (double)(1 << 10));
+        return size + " B";
+    }
+
     /**
      * Adds a "Select All" checkbox to the gallery table header, allowing users to select or deselect all images at once.
      */
@@ -222,19 +327,28 @@ public class GalleryController extends PanelController {
     }
 
     /**
-     * Handles the search functionality for images in the gallery. Filters the displayed images based on the search query.
+     * Handles the search functionality for images in the gallery.
+     * The search is debounced, so it runs only once the user stops typing for a moment.
      */
     @FXML
     public void handleSearch() {
-        String key = searchTextField.getText().toLowerCase();
+        searchDelay.playFromStart();
+    }
+
+    /**
+     * Filters the displayed images based on the search query, using the search index of the gallery.
+     * A blank query shows the whole gallery.
+     */
+    private void applySearch() {
+        String key = searchTextField.getText();
         if (key.isBlank()) {
-            galleryTable.setItems(model.getGalleryData());
+            if (galleryTable.getItems() != model.getGalleryData()) galleryTable.setItems(model.getGalleryData());
             return;
         }
 
-        galleryTable.setItems(model.getGalleryData()
-            .filtered(el -> el.filenameProperty().get().contains(key))
-        );
+        List<GalleryTableModel> result = service.search(key);
+        galleryTable.setItems(FXCollections.observableArrayList(result));
+        log.debug("Search for: '{}' found: {}", key, result.size());
     }
 
     /**
@@ -272,10 +386,88 @@ public class GalleryController extends PanelController {
 
     /**
      * Toggles the state of the buttons in the UI (enabled or disabled) based on the processing state.
+     * Buttons changing the gallery stay disabled while the gallery is still being loaded.
      *
      * @param disable true to disable buttons, false to enable them
      */
     private void setButtonsState(boolean disable) {
-        setButtonsState(disable, backButton, addButton, removeButton, deleteFromDiskButton, duplicatesButton, nameButton, openButton);
+        setButtonsState(disable, backButton, openButton);
+        setButtonsState(disable || model.isLoading(), addButton, removeButton, deleteFromDiskButton, duplicatesButton, nameButton);
+    }
+
+    /**
+     * A table cell showing its value as text, formatted by the given function.
+     *
+     * @param <T> the type of the value
+     */
+    private static final class FormattedCell<T> extends TableCell<GalleryTableModel, T> {
+
+        private final Function<T, String> formatter;
+
+        private FormattedCell(@NotNull Function<T, String> formatter) {
+            this.formatter = formatter;
+        }
+
+        @Override
+        protected void updateItem(T item, boolean empty) {
+            super.updateItem(item, empty);
+            setText(empty || item == null ? null : formatter.apply(item));
+        }
+    }
+
+    /**
+     * A table cell showing the thumbnail of a gallery image.
+     * <p>
+     * Thumbnails held in memory are shown right away. Others are requested from the {@link ThumbnailCache}
+     * in the background, and the request is cancelled once the cell is reused for another image,
+     * without affecting other cells waiting for the same thumbnail,
+     * so scrolling quickly through the gallery only loads the thumbnails of the rows that stay in view.
+     * </p>
+     */
+    private static final class ThumbnailCell extends TableCell<GalleryTableModel, File> {
+
+        private final ThumbnailCache thumbnails;
+
+        private final ImageView imageView;
+
+        private CompletableFuture<Image> request;
+
+        private ThumbnailCell(@NotNull ThumbnailCache thumbnails) {
+            this.thumbnails = thumbnails;
+            this.imageView = new ImageView();
+            this.imageView.setFitWidth(ThumbnailCache.THUMBNAIL_SIZE);
+            this.imageView.setFitHeight(ThumbnailCache.THUMBNAIL_SIZE);
+            this.imageView.setPreserveRatio(true);
+        }
+
+        @Override
+        protected void updateItem(File file, boolean empty) {
+            boolean same = !empty && file != null && !isEmpty() && file.equals(getItem());
+            super.updateItem(file, empty);
+
+            // A re-layout updates the cell with the image it already shows or loads.
+            if (same && (request != null || imageView.getImage() != null)) return;
+
+            if (request != null) {
+                request.cancel(false);
+                request = null;
+            }
+
+            if (empty || file == null) {
+                imageView.setImage(null);
+                setGraphic(null);
+                return;
+            }
+
+            imageView.setImage(thumbnails.getIfCached(file));
+            setGraphic(imageView);
+            if (imageView.getImage() != null) return;
+
+            CompletableFuture<Image> current = thumbnails.load(file);
+            request = current;
+            current.thenAccept(image -> Platform.runLater(() -> {
+                if (request == current && file.equals(getItem())) imageView.setImage(image);
+            }));
+        }
     }
 }
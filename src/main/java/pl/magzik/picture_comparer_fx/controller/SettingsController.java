@@ -5,6 +5,8 @@ import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.ComboBox;
+import javafx.scene.control.Spinner;
+import javafx.scene.control.SpinnerValueFactory;
 import javafx.scene.control.TextField;
 import javafx.stage.DirectoryChooser;
 import org.slf4j.Logger;
@@ -73,6 +75,18 @@ public class SettingsController extends PanelController {
     @FXML
     private CheckBox pixelByPixelCheckbox;
 
+    @FXML
+    private Spinner<Integer> hashDistanceSpinner;
+
+    @FXML
+    private ComboBox<String> checksumAlgorithmComboBox;
+
+    @FXML
+    private Spinner<Integer> pixelMemoryBudgetSpinner;
+
+    @FXML
+    private CheckBox watchModeCheckbox;
+
     @FXML
     private TextField namePrefixTextField;
 
@@ -101,6 +115,9 @@ public class SettingsController extends PanelController {
         themeComboBox.setItems(FXCollections.observableArrayList(
             SettingsModel.getThemes().stream().map(this::translate).toList()
         ));
+        checksumAlgorithmComboBox.setItems(FXCollections.observableArrayList(
+            SettingsModel.getChecksumAlgorithms().stream().sorted().map(this::translate).toList()
+        ));
 
         setValues();
     }
@@ -130,6 +147,10 @@ public class SettingsController extends PanelController {
         recursiveModeCheckbox.setSelected(model.isRecursiveMode());
         perceptualHashCheckbox.setSelected(model.isPerceptualHash());
         pixelByPixelCheckbox.setSelected(model.isPixelByPixel());
+        hashDistanceSpinner.getValueFactory().setValue(model.getHashDistance());
+        checksumAlgorithmComboBox.setValue(translate(model.getChecksumAlgorithm()));
+        pixelMemoryBudgetSpinner.getValueFactory().setValue(model.getPixelMemoryBudget());
+        watchModeCheckbox.setSelected(model.isWatchMode());
         namePrefixTextField.setText(model.getNamePrefix());
         lowercaseExtensionCheckbox.setSelected(model.isLowercaseExtension());
     }
@@ -138,6 +159,12 @@ public class SettingsController extends PanelController {
      * Initializes the state of the buttons based on the current UI state.
      */
     public void initialize() {
+        hashDistanceSpinner.setValueFactory(
+            new SpinnerValueFactory.IntegerSpinnerValueFactory(0, SettingsModel.MAX_HASH_DISTANCE, 0)
+        );
+        pixelMemoryBudgetSpinner.setValueFactory(new SpinnerValueFactory.IntegerSpinnerValueFactory(
+            SettingsModel.MIN_PIXEL_MEMORY_BUDGET, SettingsModel.MAX_PIXEL_MEMORY_BUDGET, 512, 64
+        ));
         setButtonsState(true, resetButton, saveButton);
     }
 
@@ -198,6 +225,10 @@ public class SettingsController extends PanelController {
             recursiveModeCheckbox.isSelected(),
             perceptualHashCheckbox.isSelected(),
             pixelByPixelCheckbox.isSelected(),
+            hashDistanceSpinner.getValue(),
+            findKey(checksumAlgorithmComboBox.getValue()),
+            pixelMemoryBudgetSpinner.getValue(),
+            watchModeCheckbox.isSelected(),
             namePrefixTextField.getText(),
             lowercaseExtensionCheckbox.isSelected()
         );
@@ -6,7 +6,7 @@ import org.jetbrains.annotations.NotNull;
 import pl.magzik.picture_comparer_fx.model.access.IOComparerSettingsAccess;
 
 import java.io.File;
-import java.util.Collection;
+import java.util.*;
 
 /**
  * The {@code ComparerModel} class represents the model responsible for managing image files,
@@ -23,6 +23,8 @@ public class ComparerModel {
 
     private final ObservableList<File> duplicateFiles;
 
+    private final Map<File, File> originals;
+
     private final IOComparerSettingsAccess comparerSettings;
 
     /**
@@ -34,6 +36,7 @@ public class ComparerModel {
     public ComparerModel(IOComparerSettingsAccess comparerSettings) {
         this.loadedFiles = FXCollections.observableArrayList();
         this.duplicateFiles = FXCollections.observableArrayList();
+        this.originals = new HashMap<>();
 
         this.comparerSettings = comparerSettings;
     }
@@ -63,6 +66,34 @@ public class ComparerModel {
         return duplicateFiles;
     }
 
+    /**
+     * Records the groups of duplicates found by the comparison, so every duplicate can be traced back to
+     * the original kept in its place, the first file of its group.
+     *
+     * @param groups a map where the key is the first file of a group, and the value is the set of all files in that group
+     */
+    public void setDuplicateGroups(@NotNull Map<File, Set<File>> groups) {
+        originals.clear();
+        groups.forEach((original, group) -> group.forEach(file -> {
+            if (!file.equals(original)) originals.put(file, original);
+        }));
+    }
+
+    /**
+     * Returns the originals of the files currently listed as duplicates.
+     * Duplicates whose original isn't known are left out.
+     *
+     * @return a new map where the key is a duplicate, and the value is its original
+     */
+    public @NotNull Map<File, File> getDuplicateOriginals() {
+        Map<File, File> map = new LinkedHashMap<>();
+        for (File file : duplicateFiles) {
+            File original = originals.get(file);
+            if (original != null) map.put(file, original);
+        }
+        return map;
+    }
+
     /**
      * Returns the destination directory where duplicate files should be moved, as specified in the application settings.
      *
@@ -100,11 +131,48 @@ public class ComparerModel {
     }
 
     /**
-     * Clears both the loaded files and duplicate files lists.
+     * Returns the maximum Hamming distance between perceptual hashes of near-duplicates, as specified in the comparer settings.
+     *
+     * @return the hash distance threshold, {@code 0} for exact duplicates only
+     */
+    public int getHashDistance() {
+        return comparerSettings.getHashDistance();
+    }
+
+    /**
+     * Returns the name of the checksum algorithm, as specified in the comparer settings.
+     *
+     * @return the checksum algorithm name
+     */
+    public String getChecksumAlgorithm() {
+        return comparerSettings.getChecksumAlgorithm();
+    }
+
+    /**
+     * Returns the memory budget of the pixel-by-pixel comparison in MiB, as specified in the comparer settings.
+     *
+     * @return the pixel comparison memory budget in MiB
+     */
+    public int getPixelMemoryBudget() {
+        return comparerSettings.getPixelMemoryBudget();
+    }
+
+    /**
+     * Returns whether a scanned directory should be watched for changes, as specified in the comparer settings.
+     *
+     * @return {@code true} if watch mode is enabled, {@code false} otherwise
+     */
+    public boolean isWatchMode() {
+        return comparerSettings.isWatchMode();
+    }
+
+    /**
+     * Clears both the loaded files and duplicate files lists, and forgets the originals of the duplicates.
      */
     public void clearLists() {
         loadedFiles.clear();
         duplicateFiles.clear();
+        originals.clear();
     }
 
     /**
@@ -118,4 +186,23 @@ public class ComparerModel {
         list.clear();
         list.addAll(files);
     }
+
+    /**
+     * Updates the specified list in place, so that it contains exactly the files from the given collection.
+     * <p>
+     * Unlike {@link #clearAndAddAll(ObservableList, Collection)}, files present both in the list and in the collection
+     * are left untouched, keeping their position and the selection of any UI component bound to the list.
+     * Files missing from the list are appended in the order of the collection.
+     * </p>
+     *
+     * @param list the list to update
+     * @param files the collection of files the list should contain
+     */
+    public static void updateInPlace(@NotNull ObservableList<File> list, @NotNull Collection<File> files) {
+        Set<File> retained = new HashSet<>(files);
+        list.removeIf(file -> !retained.contains(file));
+
+        Set<File> present = new HashSet<>(list);
+        list.addAll(files.stream().filter(file -> !present.contains(file)).toList());
+    }
 }
@@ -1,8 +1,12 @@
 package pl.magzik.picture_comparer_fx.model;
 
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import org.jetbrains.annotations.NotNull;
+import pl.magzik.picture_comparer_fx.base.search.SearchIndex;
 import pl.magzik.picture_comparer_fx.model.access.ComparerSettingsAccess;
 import pl.magzik.picture_comparer_fx.model.access.GallerySettingsAccess;
 
@@ -17,11 +21,18 @@ import java.util.List;
  * interfaces to retrieve the settings for comparing images (e.g., recursion, perceptual hashing, pixel-by-pixel comparison)
  * and gallery-specific settings (e.g., name prefix, lowercase file extensions).
  * </p>
+ * <p>
+ * The file names of the gallery items are kept in a {@link SearchIndex}, updated on every change of the gallery data.
+ * </p>
  */
 public class GalleryModel {
 
     private final ObservableList<GalleryTableModel> galleryData;
 
+    private final BooleanProperty loading;
+
+    private final SearchIndex<GalleryTableModel> searchIndex;
+
     private final ComparerSettingsAccess comparerSettings;
 
     private final GallerySettingsAccess gallerySettings;
@@ -35,6 +46,16 @@ public class GalleryModel {
      */
     public GalleryModel(@NotNull ComparerSettingsAccess comparerSettings, @NotNull GallerySettingsAccess gallerySettings) {
         this.galleryData = FXCollections.observableArrayList();
+        this.loading = new SimpleBooleanProperty(false);
+        this.searchIndex = new SearchIndex<>(el -> el.filenameProperty().get());
+
+        this.galleryData.addListener((ListChangeListener<GalleryTableModel>) c -> {
+            while (c.next()) {
+                if (c.wasPermutated()) continue;
+                c.getRemoved().forEach(searchIndex::remove);
+                c.getAddedSubList().forEach(searchIndex::add);
+            }
+        });
 
         this.comparerSettings = comparerSettings;
         this.gallerySettings = gallerySettings;
@@ -53,6 +74,48 @@ public class GalleryModel {
         return galleryData;
     }
 
+    /**
+     * Returns the search index over the file names of all gallery items.
+     * It must only be used on the JavaFX application thread, like the gallery data it follows.
+     *
+     * @return the search index of the gallery
+     */
+    public SearchIndex<GalleryTableModel> getSearchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * Returns the property telling whether the stored gallery is still being loaded into the gallery data.
+     * <p>
+     * The gallery is loaded in batches, in the background, so the gallery data may already hold some items
+     * while this property is {@code true}.
+     * </p>
+     *
+     * @return the loading property
+     */
+    public BooleanProperty loadingProperty() {
+        return loading;
+    }
+
+    /**
+     * Returns whether the stored gallery is still being loaded into the gallery data.
+     *
+     * @return {@code true} if the gallery is being loaded, {@code false} otherwise
+     */
+    public boolean isLoading() {
+        return loading.get();
+    }
+
+    /**
+     * Sets whether the stored gallery is being loaded into the gallery data.
+     * Must be called on the JavaFX application thread.
+     *
+     * @param loading {@code true} if the gallery is being loaded, {@code false} otherwise
+     */
+    public void setLoading(boolean loading) {
+        this.loading.set(loading);
+    }
+
     /**
      * Returns a list of gallery items that are currently selected.
      * <p>
@@ -92,6 +155,33 @@ public class GalleryModel {
         return comparerSettings.isPixelByPixel();
     }
 
+    /**
+     * Returns the maximum Hamming distance between perceptual hashes of near-duplicates, as specified in the comparer settings.
+     *
+     * @return the hash distance threshold, {@code 0} for exact duplicates only
+     */
+    public int getHashDistance() {
+        return comparerSettings.getHashDistance();
+    }
+
+    /**
+     * Returns the name of the checksum algorithm, as specified in the comparer settings.
+     *
+     * @return the checksum algorithm name
+     */
+    public String getChecksumAlgorithm() {
+        return comparerSettings.getChecksumAlgorithm();
+    }
+
+    /**
+     * Returns the memory budget of the pixel-by-pixel comparison in MiB, as specified in the comparer settings.
+     *
+     * @return the pixel comparison memory budget in MiB
+     */
+    public int getPixelMemoryBudget() {
+        return comparerSettings.getPixelMemoryBudget();
+    }
+
     /**
      * Returns the name prefix to be used when renaming gallery items, as specified in the gallery settings.
      *
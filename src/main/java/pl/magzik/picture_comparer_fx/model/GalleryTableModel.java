@@ -3,6 +3,7 @@ package pl.magzik.picture_comparer_fx.model;
 import javafx.beans.property.*;
 
 import java.io.File;
+import java.util.Comparator;
 import java.util.Objects;
 
 /**
@@ -12,30 +13,45 @@ import java.util.Objects;
  * This model is designed to be used with JavaFX data binding, with {@link BooleanProperty} and {@link StringProperty}
  * allowing automatic updates to the user interface when the properties change.
  * </p>
+ * <p>
+ * The file size and the last modified date are kept as raw numbers, and are only formatted when displayed,
+ * so rows can be sorted by them with {@link #BY_FILE_SIZE} and {@link #BY_MODIFIED_DATE}
+ * without parsing or allocating anything per comparison.
+ * </p>
  */
 public class GalleryTableModel {
 
+    /**
+     * Orders gallery entries by their file size, ascending.
+     */
+    public static final Comparator<GalleryTableModel> BY_FILE_SIZE = Comparator.comparingLong(GalleryTableModel::getFileSize);
+
+    /**
+     * Orders gallery entries by their last modified date, oldest first.
+     */
+    public static final Comparator<GalleryTableModel> BY_MODIFIED_DATE = Comparator.comparingLong(GalleryTableModel::getModifiedDate);
+
     private final File file;
 
     private final BooleanProperty selected;
     private final StringProperty filename;
-    private final StringProperty fileSize;
-    private final StringProperty modifiedDate;
+    private final long fileSize;
+    private final long modifiedDate;
 
     /**
      * Constructs a new {@code GalleryTableModel} instance with the specified file information.
      *
      * @param file the {@link File} representing the image file
      * @param filename the name of the file
-     * @param fileSize the size of the file (as a human-readable string)
-     * @param modifiedDate the last modified date of the file (as a string)
+     * @param fileSize the size of the file, in bytes
+     * @param modifiedDate the last modified date of the file, in epoch milliseconds
      */
-    public GalleryTableModel(File file, String filename, String fileSize, String modifiedDate) {
+    public GalleryTableModel(File file, String filename, long fileSize, long modifiedDate) {
         this.file = file;
         this.selected = new SimpleBooleanProperty(false);
         this.filename = new SimpleStringProperty(filename);
-        this.fileSize = new SimpleStringProperty(fileSize);
-        this.modifiedDate = new SimpleStringProperty(modifiedDate);
+        this.fileSize = fileSize;
+        this.modifiedDate = modifiedDate;
     }
 
     /**
@@ -72,26 +88,20 @@ public class GalleryTableModel {
     }
 
     /**
-     * Returns the {@link StringProperty} representing the file size of the gallery entry.
-     * <p>
-     * This property can be used to display the file size in a user interface and supports data binding.
-     * </p>
+     * Returns the file size of the gallery entry.
      *
-     * @return the StringProperty for the file size
+     * @return the file size, in bytes
      */
-    public StringProperty fileSizeProperty() {
+    public long getFileSize() {
         return fileSize;
     }
 
     /**
-     * Returns the {@link StringProperty} representing the last modified date of the gallery entry.
-     * <p>
-     * This property can be used to display the modified date in a user interface and supports data binding.
-     * </p>
+     * Returns the last modified date of the gallery entry.
      *
-     * @return the StringProperty for the last modified date
+     * @return the last modified date, in epoch milliseconds
      */
-    public StringProperty modifiedDateProperty() {
+    public long getModifiedDate() {
         return modifiedDate;
     }
 
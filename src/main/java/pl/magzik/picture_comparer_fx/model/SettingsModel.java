@@ -22,12 +22,28 @@ public class SettingsModel implements IOComparerSettingsAccess, GallerySettingsA
      */
     private static final Set<String> languages = Set.of("en-US", "pl-PL");
 
+    /**
+     * The maximum supported Hamming distance between perceptual hashes of near-duplicates.
+     */
+    public static final int MAX_HASH_DISTANCE = 32;
+
+    /**
+     * The minimal and maximal supported memory budget of the pixel-by-pixel comparison, in MiB.
+     */
+    public static final int MIN_PIXEL_MEMORY_BUDGET = 64, MAX_PIXEL_MEMORY_BUDGET = 65536;
+
     /**
      * A set of supported themes: light and dark modes.
      * The theme setting is used to configure the application's UI theme.
      */
     private static final Set<String> themes = Set.of("light", "dark");
 
+    /**
+     * A set of supported checksum algorithms: buffered CRC32 and CRC32C read through a direct buffer.
+     * The checksum algorithm setting is used to configure how the comparer checksums file content.
+     */
+    private static final Set<String> checksumAlgorithms = Set.of("crc32", "crc32c");
+
     /**
      * Returns the available languages.
      *
@@ -46,6 +62,15 @@ public class SettingsModel implements IOComparerSettingsAccess, GallerySettingsA
         return themes;
     }
 
+    /**
+     * Returns the available checksum algorithms.
+     *
+     * @return a set of supported checksum algorithm names
+     */
+    public static Set<String> getChecksumAlgorithms() {
+        return checksumAlgorithms;
+    }
+
     // General settings
     private String language;
     private String theme;
@@ -55,6 +80,10 @@ public class SettingsModel implements IOComparerSettingsAccess, GallerySettingsA
     private boolean recursiveMode;
     private boolean perceptualHash;
     private boolean pixelByPixel;
+    private int hashDistance;
+    private String checksumAlgorithm;
+    private int pixelMemoryBudget;
+    private boolean watchMode;
 
     // Gallery settings
     private String namePrefix;
@@ -69,6 +98,10 @@ public class SettingsModel implements IOComparerSettingsAccess, GallerySettingsA
      * <li>recursiveMode: false</li>
      * <li>perceptualHash: true</li>
      * <li>pixelByPixel: true</li>
+     * <li>hashDistance: 0</li>
+     * <li>checksumAlgorithm: "crc32"</li>
+     * <li>pixelMemoryBudget: 512</li>
+     * <li>watchMode: false</li>
      * <li>namePrefix: "img_"</li>
      * <li>lowercaseExtension: false</li>
      * </ul>
@@ -80,6 +113,10 @@ public class SettingsModel implements IOComparerSettingsAccess, GallerySettingsA
         this.recursiveMode = false;
         this.perceptualHash = true;
         this.pixelByPixel = true;
+        this.hashDistance = 0;
+        this.checksumAlgorithm = "crc32";
+        this.pixelMemoryBudget = 512;
+        this.watchMode = false;
         this.namePrefix = "img_";
         this.lowercaseExtension = false;
     }
@@ -196,6 +233,82 @@ public class SettingsModel implements IOComparerSettingsAccess, GallerySettingsA
         this.pixelByPixel = pixelByPixel;
     }
 
+    /**
+     * Returns the maximum Hamming distance between perceptual hashes of near-duplicates.
+     *
+     * @return the hash distance threshold, {@code 0} for exact duplicates only
+     */
+    @Override
+    public int getHashDistance() {
+        return hashDistance;
+    }
+
+    /**
+     * Sets the maximum Hamming distance between perceptual hashes of near-duplicates.
+     *
+     * @param hashDistance the hash distance threshold, {@code 0} for exact duplicates only
+     */
+    public void setHashDistance(int hashDistance) {
+        this.hashDistance = hashDistance;
+    }
+
+    /**
+     * Returns the name of the algorithm used to checksum file content.
+     *
+     * @return the checksum algorithm name (either "crc32" or "crc32c")
+     */
+    @Override
+    public String getChecksumAlgorithm() {
+        return checksumAlgorithm;
+    }
+
+    /**
+     * Sets the algorithm used to checksum file content.
+     *
+     * @param checksumAlgorithm the checksum algorithm name ("crc32" or "crc32c")
+     */
+    public void setChecksumAlgorithm(String checksumAlgorithm) {
+        this.checksumAlgorithm = checksumAlgorithm;
+    }
+
+    /**
+     * Returns the maximal total size of images decoded at once for the pixel-by-pixel comparison.
+     *
+     * @return the pixel comparison memory budget in MiB
+     */
+    @Override
+    public int getPixelMemoryBudget() {
+        return pixelMemoryBudget;
+    }
+
+    /**
+     * Sets the maximal total size of images decoded at once for the pixel-by-pixel comparison.
+     *
+     * @param pixelMemoryBudget the pixel comparison memory budget in MiB
+     */
+    public void setPixelMemoryBudget(int pixelMemoryBudget) {
+        this.pixelMemoryBudget = pixelMemoryBudget;
+    }
+
+    /**
+     * Returns whether a scanned directory should be watched for changes after the scan.
+     *
+     * @return {@code true} if watch mode is enabled, {@code false} otherwise
+     */
+    @Override
+    public boolean isWatchMode() {
+        return watchMode;
+    }
+
+    /**
+     * Sets whether a scanned directory should be watched for changes after the scan.
+     *
+     * @param watchMode {@code true} to enable watch mode, {@code false} to disable
+     */
+    public void setWatchMode(boolean watchMode) {
+        this.watchMode = watchMode;
+    }
+
     /**
      * Returns the prefix used for naming files in the gallery.
      *
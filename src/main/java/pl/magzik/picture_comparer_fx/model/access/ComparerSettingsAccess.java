@@ -5,7 +5,8 @@ package pl.magzik.picture_comparer_fx.model.access;
  * <p>
  * This interface allows retrieval of the settings related to the comparison mode in the picture comparison process.
  * The settings include options for enabling recursive comparison, perceptual hash comparison,
- * and pixel-by-pixel comparison.
+ * pixel-by-pixel comparison, the near-duplicate hash distance threshold, the checksum algorithm,
+ * the memory budget of the pixel-by-pixel comparison, and the watch mode.
  * </p>
  */
 public interface ComparerSettingsAccess {
@@ -40,4 +41,40 @@ public interface ComparerSettingsAccess {
      * @return true if pixel-by-pixel comparison is enabled, false otherwise
      */
     boolean isPixelByPixel();
+
+    /**
+     * Returns the maximum Hamming distance between perceptual hashes of two images considered near-duplicates.
+     * <p>
+     * A distance of {@code 0} means that only exact duplicates are searched for.
+     * It only takes effect if the perceptual hash comparison is enabled.
+     * </p>
+     *
+     * @return the hash distance threshold
+     */
+    int getHashDistance();
+
+    /**
+     * Returns the name of the algorithm used to checksum file content.
+     *
+     * @return the checksum algorithm name
+     */
+    String getChecksumAlgorithm();
+
+    /**
+     * Returns the maximal total size of images decoded at once for the pixel-by-pixel comparison, in MiB.
+     *
+     * @return the pixel comparison memory budget in MiB
+     */
+    int getPixelMemoryBudget();
+
+    /**
+     * Returns whether the watch mode is enabled.
+     * <p>
+     * If enabled, a scanned directory is watched for created, modified and deleted images,
+     * and the duplicates are updated incrementally, without scanning the whole directory again.
+     * </p>
+     *
+     * @return true if watch mode is enabled, false otherwise
+     */
+    boolean isWatchMode();
 }
@@ -1,20 +1,31 @@
 package pl.magzik.picture_comparer_fx.service;
 
 import org.jetbrains.annotations.NotNull;
+import pl.magzik.picture_comparer_fx.base.metrics.MetricsRegistry;
 import pl.magzik.picture_comparer_fx.model.ComparerModel;
+import pl.magzik.picture_comparer_fx.service.comparison.DirectoryWatcher;
+import pl.magzik.picture_comparer_fx.service.comparison.ScanProgress;
+import pl.magzik.picture_comparer_fx.service.comparison.ScanResult;
+import pl.magzik.picture_comparer_fx.service.files.FileOperationEngine;
+import pl.magzik.picture_comparer_fx.service.files.FileOperationReport;
 import pl.magzik.picture_comparer_fx.service.helpers.ImageComparisonHelper;
 import pl.magzik.picture_comparer_fx.base.async.AsyncTaskSupport;
 
 import java.io.File;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * A service responsible for handling the comparison of image files and managing duplicates.
  * <p>
- * This service leverages {@link ImageComparisonHelper} to validate, compare, move, and delete duplicate image files asynchronously.
+ * This service leverages {@link ImageComparisonHelper} to validate, compare, move, delete, and hard-link duplicate image files asynchronously.
  * The service provides methods to handle tasks such as validating files, comparing images, and managing the resulting duplicates (moving or removing them).
  * </p>
+ * <p>
+ * Scans, comparisons, moves, removals and links run as {@link MetricsRegistry#job(String, MetricsRegistry.Job) jobs},
+ * so the metrics of every stage are written to the log directory once each of them ends.
+ * </p>
  *
  * @see AsyncTaskSupport
  * @see ImageComparisonHelper
@@ -27,6 +38,8 @@ public class ComparerService implements AsyncTaskSupport {
 
     private final ImageComparisonHelper comparisonHelper;
 
+    private final MetricsRegistry metrics;
+
     /**
      * Constructs a {@link ComparerService} instance using the provided model.
      * <p>
@@ -40,9 +53,15 @@ public class ComparerService implements AsyncTaskSupport {
         this.model = model;
         this.moveDestination = new File(model.getMoveDestination());
         this.comparisonHelper = new ImageComparisonHelper(
-            ImageComparisonHelper.buildFileOperator(model.isRecursiveMode()),
-            ImageComparisonHelper.buildProcessor(model.isPerceptualHash(), model.isPixelByPixel())
+            new FileOperationEngine(ioExecutor()),
+            ImageComparisonHelper.buildFileWalker(model.isRecursiveMode()),
+            ImageComparisonHelper.buildPipeline(model.isPerceptualHash(), model.isPixelByPixel(), model.getHashDistance(),
+                model.getChecksumAlgorithm(),
+                model.getPixelMemoryBudget()
+            ),
+            cpuExecutor()
         );
+        this.metrics = MetricsRegistry.getInstance();
     }
 
     /**
@@ -69,7 +88,65 @@ public class ComparerService implements AsyncTaskSupport {
      * @return a {@link CompletableFuture} that resolves to a list of duplicate image files
      */
     public @NotNull CompletableFuture<List<File>> compareFiles(@NotNull List<@NotNull File> files) {
-        return supplyAsyncTask(() -> comparisonHelper.flatten(comparisonHelper.compare(files)));
+        return supplyAsyncTask(() -> metrics.job("compare", () -> comparisonHelper.flatten(comparisonHelper.compare(files))));
+    }
+
+    /**
+     * Scans the given directory and compares the discovered image files asynchronously, in a single pipelined pass.
+     * <p>
+     * Unlike calling {@link #validateFiles(File)} and {@link #compareFiles(List)} in sequence,
+     * files are checksummed and hashed while the directory tree is still being walked.
+     * </p>
+     * <p>
+     * Cancelling the returned future with {@code mayInterruptIfRunning} set aborts the scan:
+     * the walk, the reads and the decodes stop promptly, and the threads of the scan are released.
+     * </p>
+     *
+     * @param root the directory to scan
+     * @return a {@link CompletableFuture} that resolves to the {@link ScanResult} of the scan
+     */
+    public @NotNull CompletableFuture<ScanResult> scanFiles(@NotNull File root) {
+        return supplyCancellableTask(() -> metrics.job("scan", () -> comparisonHelper.scan(root)));
+    }
+
+    /**
+     * Scans the given directory and compares the discovered image files asynchronously, reporting the progress.
+     * <p>
+     * The listener receives a {@link ScanProgress} snapshot every time a file is discovered or fingerprinted,
+     * a candidate group is refined, or the phase of the scan changes. It's called from the scanning threads,
+     * possibly very often, so it must be cheap and thread-safe; throttling the rendering is up to the caller.
+     * </p>
+     * <p>
+     * The scan can be aborted by cancelling the returned future, just like with {@link #scanFiles(File)}.
+     * </p>
+     *
+     * @param root the directory to scan
+     * @param listener the listener receiving the progress of the scan
+     * @return a {@link CompletableFuture} that resolves to the {@link ScanResult} of the scan
+     * @see #scanFiles(File)
+     */
+    public @NotNull CompletableFuture<ScanResult> scanFiles(@NotNull File root, @NotNull Consumer<ScanProgress> listener) {
+        return supplyCancellableTask(() -> metrics.job("scan", () -> comparisonHelper.scan(root, listener)));
+    }
+
+    /**
+     * Starts watching the given, already scanned directory asynchronously, keeping the result of its scan up to date.
+     * <p>
+     * Files created, modified or deleted under the directory are applied incrementally,
+     * and every updated result is passed to the listener on the watcher thread.
+     * </p>
+     *
+     * @param root the scanned directory
+     * @param result the {@link ScanResult} of the scan
+     * @param listener the listener receiving the updated results
+     * @return a {@link CompletableFuture} that resolves to the started {@link DirectoryWatcher}, which must be closed to stop watching
+     */
+    public @NotNull CompletableFuture<DirectoryWatcher> watchFiles(
+        @NotNull File root,
+        @NotNull ScanResult result,
+        @NotNull Consumer<ScanResult> listener
+    ) {
+        return supplyAsyncTask(() -> comparisonHelper.watch(root, result, listener));
     }
 
     /**
@@ -77,15 +154,14 @@ public class ComparerService implements AsyncTaskSupport {
      * <p>
      * This method processes the list of duplicate files, moving them to the destination folder configured in the model.
      * It runs asynchronously to avoid blocking the main thread.
+     * Files that cannot be moved don't fail the task, but are listed in the resulting report.
      * </p>
      *
-     * @return a {@link CompletableFuture} that resolves when the move operation completes
+     * @return a {@link CompletableFuture} that resolves to the {@link FileOperationReport} of the move
      */
-    public @NotNull CompletableFuture<Void> moveDuplicates() {
-        return runAsyncTask(() -> {
-            comparisonHelper.move(moveDestination, model.getDuplicateFiles());
-            return null;
-        });
+    public @NotNull CompletableFuture<FileOperationReport> moveDuplicates() {
+        List<File> duplicates = List.copyOf(model.getDuplicateFiles());
+        return supplyAsyncTask(() -> metrics.job("move", () -> comparisonHelper.move(moveDestination, duplicates)));
     }
 
     /**
@@ -93,14 +169,28 @@ public class ComparerService implements AsyncTaskSupport {
      * <p>
      * This method processes the list of duplicate files, deleting them from the file system.
      * It runs asynchronously to prevent blocking the main thread.
+     * Files that cannot be deleted don't fail the task, but are listed in the resulting report.
+     * </p>
+     *
+     * @return a {@link CompletableFuture} that resolves to the {@link FileOperationReport} of the removal
+     */
+    public @NotNull CompletableFuture<FileOperationReport> removeDuplicates() {
+        List<File> duplicates = List.copyOf(model.getDuplicateFiles());
+        return supplyAsyncTask(() -> metrics.job("delete", () -> comparisonHelper.delete(duplicates)));
+    }
+
+    /**
+     * Replaces the duplicate image files with hard links to their originals asynchronously.
+     * <p>
+     * Unlike moving or removing them, every path of a duplicate stays valid, while its content is stored only once.
+     * Duplicates on another file system than their original, or not byte-identical to it, are left untouched,
+     * and listed as failures in the resulting report.
      * </p>
      *
-     * @return a {@link CompletableFuture} that resolves when the remove operation completes
+     * @return a {@link CompletableFuture} that resolves to the {@link FileOperationReport} of the linking
      */
-    public @NotNull CompletableFuture<Void> removeDuplicates() {
-        return runAsyncTask(() -> {
-            comparisonHelper.delete(model.getDuplicateFiles());
-            return null;
-        });
+    public @NotNull CompletableFuture<FileOperationReport> linkDuplicates() {
+        Map<File, File> originals = model.getDuplicateOriginals();
+        return supplyAsyncTask(() -> metrics.job("link", () -> comparisonHelper.link(originals)));
     }
 }
@@ -6,21 +6,27 @@ import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import pl.magzik.picture_comparer_fx.base.PathResolver;
+import pl.magzik.picture_comparer_fx.base.metrics.MetricsRegistry;
+import pl.magzik.picture_comparer_fx.base.metrics.Timer;
 import pl.magzik.picture_comparer_fx.model.GalleryModel;
 import pl.magzik.picture_comparer_fx.model.GalleryTableModel;
+import pl.magzik.picture_comparer_fx.service.comparison.ChecksumAlgorithm;
+import pl.magzik.picture_comparer_fx.service.comparison.ImageDecoder;
+import pl.magzik.picture_comparer_fx.service.files.FileOperationEngine;
+import pl.magzik.picture_comparer_fx.service.files.FileOperationReport;
+import pl.magzik.picture_comparer_fx.service.gallery.GalleryStore;
+import pl.magzik.picture_comparer_fx.service.gallery.ThumbnailCache;
 import pl.magzik.picture_comparer_fx.service.helpers.ImageComparisonHelper;
 import pl.magzik.picture_comparer_fx.base.async.AsyncTaskSupport;
 
 import java.awt.Desktop;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.io.UncheckedIOException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
@@ -42,85 +48,159 @@ public class GalleryService implements AsyncTaskSupport {
 
     private static final Logger log = LoggerFactory.getLogger(GalleryService.class);
 
-    private static final String DATA_FILE_NAME = "gallery.pfx";
+    private static final Timer LOAD_TIMER = MetricsRegistry.getInstance().timer("gallery.load");
 
-    private final Path dataFile;
+    private static final Timer SAVE_TIMER = MetricsRegistry.getInstance().timer("gallery.save");
+
+    private static final Timer SEARCH_TIMER = MetricsRegistry.getInstance().timer("gallery.search");
+
+    private static final int LOAD_BATCH_SIZE = 1024;
+
+    private static final int THUMBNAIL_MEMORY_CAPACITY = 1024;
+
+    private final GalleryStore store;
 
     private final GalleryModel model;
 
     private final ImageComparisonHelper comparisonHelper;
 
+    private ThumbnailCache thumbnailCache;
+
     /**
      * Constructs a {@link GalleryService} instance with the given {@link GalleryModel}.
      * <p>
-     * This constructor initializes the gallery service with a path for saving and loading gallery data,
-     * and sets up the image comparison helper with the appropriate file operator and processor.
+     * This constructor initializes the gallery service with the shared {@link GalleryStore},
+     * and sets up the image comparison helper with the appropriate file walker and comparison pipeline.
      * </p>
      *
      * @param model the {@link GalleryModel} that holds the gallery data and configurations
      */
     public GalleryService(@NotNull GalleryModel model) {
-        this.dataFile = PathResolver.getInstance().getDataDirectory().resolve(DATA_FILE_NAME);
+        this.store = GalleryStore.getInstance();
 
         this.model = model;
 
         this.comparisonHelper = new ImageComparisonHelper(
-            ImageComparisonHelper.buildFileOperator(model.isRecursiveMode()),
-            ImageComparisonHelper.buildProcessor(model.isPerceptualHash(), model.isPixelByPixel())
+            new FileOperationEngine(ioExecutor()),
+            ImageComparisonHelper.buildFileWalker(model.isRecursiveMode()),
+            ImageComparisonHelper.buildPipeline(model.isPerceptualHash(), model.isPixelByPixel(), model.getHashDistance(),
+                model.getChecksumAlgorithm(),
+                model.getPixelMemoryBudget()
+            ),
+            cpuExecutor()
         );
     }
 
     /**
-     * Loads the gallery images from the data file into the model's gallery data.
+     * Loads the gallery images from the {@link GalleryStore} into the model's gallery data, in the background.
      * <p>
-     * If the data file exists, the method reads all lines from the file, converts them into {@link GalleryTableModel}
-     * objects, and adds them to the gallery model.
+     * The images are streamed into the model in batches, each added on the JavaFX application thread
+     * as soon as it's ready, so the gallery fills up while the rest is still being read.
+     * The model is marked as {@link GalleryModel#isLoading() loading} until the last batch has been added.
+     * Files that no longer exist are left out of the model, and removed from the store.
+     * </p>
+     * <p>
+     * This method must be called on the JavaFX application thread.
      * </p>
      *
-     * @throws IOException if an error occurs while reading the data file or transforming the files
+     * @return a {@link CompletableFuture} that resolves once every batch has been added to the model
      */
-    public void loadFiles() throws IOException {
-        if (Files.notExists(dataFile)) return;
+    public CompletableFuture<Void> loadFiles() {
+        model.setLoading(true);
 
+        return runAsyncTask(() -> MetricsRegistry.getInstance().job("gallery-load", () -> {
+            try (Timer.Context ignored = LOAD_TIMER.start()) {
+                readFiles();
+            }
+            return null;
+        }))
+        .whenComplete((v, t) -> Platform.runLater(() -> model.setLoading(false)));
+    }
+
+    /**
+     * Reads the gallery images from the {@link GalleryStore} into the gallery model, batch by batch.
+     * <p>
+     * The attributes of the images of every batch are read concurrently, on virtual threads.
+     * </p>
+     *
+     * @throws IOException if an error occurs while reading the store or transforming the files
+     */
+    private void readFiles() throws IOException {
         try {
-            List<GalleryTableModel> images = Files.readAllLines(dataFile)
-                .stream()
-                .map(File::new)
-                .map(this::transformFile)
-                .filter(Objects::nonNull)
-                .toList();
+            List<File> files = store.load();
+            List<File> missing = new ArrayList<>();
+
+            for (int from = 0; from < files.size(); from += LOAD_BATCH_SIZE) {
+                List<File> batch = files.subList(from, Math.min(files.size(), from + LOAD_BATCH_SIZE));
+                List<GalleryTableModel> images = transformFiles(batch);
+
+                if (images.size() < batch.size()) {
+                    Set<File> found = new HashSet<>(images.size());
+                    images.forEach(gtm -> found.add(gtm.getFile()));
+                    batch.stream()
+                        .filter(f -> !found.contains(f))
+                        .forEach(missing::add);
+                }
+
+                Platform.runLater(() -> model.getGalleryData().addAll(images));
+            }
+            log.info("Gallery images loaded. Found: {}", files.size() - missing.size());
 
-            model.getGalleryData().addAll(images);
-            log.info("Gallery images loaded. Found: {}", model.getGalleryData().size());
-        } catch (UncheckedIOException e) {
-            log.error("Couldn't load images from: {}", dataFile, e);
-            throw e.getCause();
+            if (!missing.isEmpty()) saveRemoved(missing);
+        } catch (IOException e) {
+            log.error("Couldn't load gallery images, due to: {}", e.getMessage(), e);
+            throw e;
         }
-
-        saveFiles();
     }
 
     /**
-     * Saves the current gallery images to the data file.
-     * <p>
-     * This method writes the absolute paths of the gallery images to the data file, one per line.
-     * </p>
+     * Records the images added to the gallery in the {@link GalleryStore}.
      *
-     * @throws IOException if an error occurs while writing to the data file
+     * @param files the files of the added images
+     * @throws IOException if an error occurs while writing to the store
      */
-    private void saveFiles() throws IOException {
-        List<File> data = model.getGalleryData().stream().map(GalleryTableModel::getFile).toList();
+    private void saveAdded(@NotNull List<File> files) throws IOException {
+        try (Timer.Context ignored = SAVE_TIMER.start()) {
+            store.add(files);
+        }
 
-        try (BufferedWriter writer = Files.newBufferedWriter(dataFile)) {
-            for (File f : data) {
-                writer.write(f.getAbsolutePath());
-                writer.newLine();
-            }
+        log.info("Gallery saved successfully.");
+    }
+
+    /**
+     * Records the images removed from the gallery in the {@link GalleryStore}.
+     *
+     * @param files the files of the removed images
+     * @throws IOException if an error occurs while writing to the store
+     */
+    private void saveRemoved(@NotNull List<File> files) throws IOException {
+        try (Timer.Context ignored = SAVE_TIMER.start()) {
+            store.remove(files);
         }
 
         log.info("Gallery saved successfully.");
     }
 
+    /**
+     * Returns the cache of the thumbnails of the gallery images, creating it on first use.
+     * Thumbnails are addressed by the checksum algorithm currently chosen in the comparer settings.
+     * Must be called on the JavaFX application thread.
+     *
+     * @return the {@link ThumbnailCache}
+     */
+    public @NotNull ThumbnailCache getThumbnailCache() {
+        if (thumbnailCache == null) {
+            thumbnailCache = new ThumbnailCache(
+                PathResolver.getInstance().getDataDirectory(),
+                new ImageDecoder(),
+                () -> ChecksumAlgorithm.fromName(model.getChecksumAlgorithm()),
+                ioExecutor(),
+                THUMBNAIL_MEMORY_CAPACITY
+            );
+        }
+        return thumbnailCache;
+    }
+
     /**
      * Adds a collection of image files to the gallery.
      * <p>
@@ -133,28 +213,29 @@ public class GalleryService implements AsyncTaskSupport {
     public void addImages(@NotNull Collection<File> files) throws IOException {
         if (files.isEmpty()) return;
 
+        List<GalleryTableModel> images;
         try {
-            List<GalleryTableModel> images = comparisonHelper.validate(files)
+            images = transformFiles(comparisonHelper.validate(files))
                 .stream()
-                .map(this::transformFile)
-                .filter(Objects::nonNull)
                 .filter(gtm -> !model.getGalleryData().contains(gtm))
                 .toList();
 
             model.getGalleryData().addAll(images);
             log.info("Added images successfully.");
-        } catch (UncheckedIOException e) {
+        } catch (IOException e) {
             log.error("Couldn't add images, due to: {}", e.getMessage(), e);
-            throw e.getCause();
+            throw e;
         }
 
-        saveFiles();
+        saveAdded(images.stream()
+            .map(GalleryTableModel::getFile)
+            .toList());
     }
 
     /**
      * Removes images from the gallery.
      * <p>
-     * This method removes the specified images from the gallery data and saves the updated gallery.
+     * This method removes the specified images from the gallery data and records the removal in the store.
      * </p>
      *
      * @param entries the list of {@link GalleryTableModel} entries to remove
@@ -163,31 +244,43 @@ public class GalleryService implements AsyncTaskSupport {
     public void removeImages(@NotNull List<GalleryTableModel> entries) throws IOException {
         if (entries.isEmpty()) return;
 
+        List<File> files = entries.stream()
+            .map(GalleryTableModel::getFile)
+            .toList();
+
         model.getGalleryData().removeAll(entries);
+        if (thumbnailCache != null) thumbnailCache.invalidate(files);
         log.info("Images removed from gallery successfully.");
 
-        saveFiles();
+        saveRemoved(files);
     }
 
     /**
      * Deletes the specified images from disk and removes them from the gallery.
      * <p>
      * This method deletes the images from the file system and removes them from the gallery model.
+     * Images that cannot be deleted stay in the gallery, while the others are removed and the gallery is saved,
+     * after which the failure is reported.
      * </p>
      *
      * @param entries the list of {@link GalleryTableModel} entries to delete
-     * @throws IOException if an error occurs while deleting the images or saving the updated gallery
+     * @throws IOException if some of the images couldn't be deleted, or an error occurs while saving the updated gallery
      */
     public void deleteImagesFromDisk(@NotNull List<GalleryTableModel> entries) throws IOException {
         List<File> files = entries.stream()
             .map(GalleryTableModel::getFile)
             .toList();
-        comparisonHelper.delete(files);
+        FileOperationReport report = comparisonHelper.delete(files);
 
-        removeImages(entries);
-        log.info("Images deleted from disk successfully.");
+        Set<File> deleted = new HashSet<>(report.succeeded());
+        removeImages(entries.stream()
+            .filter(e -> deleted.contains(e.getFile()))
+            .toList());
 
-        saveFiles();
+        if (!report.isComplete()) {
+            throw new IOException("Couldn't delete " + report.failures().size() + " of " + files.size() + " images.");
+        }
+        log.info("Images deleted from disk successfully.");
     }
 
     /**
@@ -204,9 +297,10 @@ public class GalleryService implements AsyncTaskSupport {
             .map(GalleryTableModel::getFile)
             .toList();
 
-        return supplyAsyncTask(() -> comparisonHelper.validate(files))
-            .thenApply(this::compareAndFlatten)
-            .thenAccept(this::deleteFlattenedFiles);
+        return runAsyncTask(() -> MetricsRegistry.getInstance().job("gallery-deduplicate", () -> {
+            deleteFlattenedFiles(compareAndFlatten(comparisonHelper.validate(files)));
+            return null;
+        }));
     }
 
     /**
@@ -231,6 +325,22 @@ public class GalleryService implements AsyncTaskSupport {
         }));
     }
 
+    /**
+     * Searches the gallery for images whose file name contains the given key, ignoring case.
+     * <p>
+     * The query is answered by the search index of the {@link GalleryModel}, so it doesn't scan the whole gallery.
+     * Must be called on the JavaFX application thread.
+     * </p>
+     *
+     * @param key the searched text
+     * @return the matching gallery entries
+     */
+    public @NotNull List<GalleryTableModel> search(@NotNull String key) {
+        try (Timer.Context ignored = SEARCH_TIMER.start()) {
+            return model.getSearchIndex().search(key);
+        }
+    }
+
     /**
      * Opens the selected images using the system's default image viewer.
      * <p>
@@ -242,7 +352,7 @@ public class GalleryService implements AsyncTaskSupport {
      */
     public CompletableFuture<Void> openImages(List<GalleryTableModel> entries) {
         return runAsyncTask(() -> {
-            entries.parallelStream()
+            entries.stream()
                 .map(GalleryTableModel::getFile)
                 .forEach(f -> {
                     try {
@@ -255,42 +365,45 @@ public class GalleryService implements AsyncTaskSupport {
         });
     }
 
+    /**
+     * Transforms the given files into {@link GalleryTableModel}s, reading their attributes concurrently on virtual threads.
+     * Invalid files are left out.
+     *
+     * @param files the files to transform
+     * @return the {@link GalleryTableModel}s of the valid files, in the order of the files
+     * @throws IOException if the attributes of a file cannot be read
+     */
+    private @NotNull List<GalleryTableModel> transformFiles(@NotNull List<File> files) throws IOException {
+        return virtualIoStage().map(files, this::transformFile)
+            .stream()
+            .filter(Objects::nonNull)
+            .toList();
+    }
+
     /**
      * Transforms a {@link File} into a {@link GalleryTableModel}, extracting information like name, size, and last modified date.
+     * <p>
+     * Everything is taken from the attributes of the file, read with a single call.
+     * </p>
      *
      * @param file the {@link File} to transform
      * @return a {@link GalleryTableModel} containing the file information, or {@code null} if the file is invalid
+     * @throws IOException if the attributes of the file cannot be read
      */
-    private @Nullable GalleryTableModel transformFile(@NotNull File file) {
+    private @Nullable GalleryTableModel transformFile(@NotNull File file) throws IOException {
+        BasicFileAttributes attrs;
         try {
-            if (!file.exists() || !file.isFile()) {
-                log.error("File: {} doesn't exists or is not a file.", file);
-                return null;
-            }
-
-            BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
-
-            String name = file.getName();
-            String size = formatFileSize(Files.size(file.toPath()));
-            String date = new SimpleDateFormat().format(attrs.lastModifiedTime().toMillis());
+            attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            attrs = null;
+        }
 
-            return new GalleryTableModel(file, name, size, date);
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
+        if (attrs == null || !attrs.isRegularFile()) {
+            log.error("File: {} doesn't exists or is not a file.", file);
+            return null;
         }
-    }
 
-    /**
-     * Formats the file size into a human-readable string (e.g., "1.2 MB").
-     *
-     * @param size the size of the file in bytes
-     * @return a formatted string representing the file size
-     */
-    private @NotNull String formatFileSize(long size) {
-        if (size >= 1 << 30) return String.format("%.1f GB", size / (double)(1 << 30));
-        if (size >= 1 << 20) return String.format("%.1f MB", size / (double)(1 << 20));
-        if (size >= 1 << 10) return String.format("%.1f KB", size / (double)(1 << 10));
-        return size + " B";
+        return new GalleryTableModel(file, file.getName(), attrs.size(), attrs.lastModifiedTime().toMillis());
     }
 
     /**
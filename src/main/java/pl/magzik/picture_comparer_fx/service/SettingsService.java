@@ -66,6 +66,10 @@ public class SettingsService {
         properties.setProperty("recursive.mode", model.isRecursiveMode() ? "true" : "false");
         properties.setProperty("perceptual.hash", model.isPerceptualHash() ? "true" : "false");
         properties.setProperty("pixel.by.pixel", model.isPixelByPixel() ? "true" : "false");
+        properties.setProperty("hash.distance", String.valueOf(model.getHashDistance()));
+        properties.setProperty("checksum.algorithm", model.getChecksumAlgorithm());
+        properties.setProperty("pixel.memory.budget", String.valueOf(model.getPixelMemoryBudget()));
+        properties.setProperty("watch.mode", model.isWatchMode() ? "true" : "false");
         properties.setProperty("name.prefix", model.getNamePrefix());
         properties.setProperty("lowercase.extension", model.isLowercaseExtension() ? "true" : "false");
 
@@ -99,6 +103,10 @@ public class SettingsService {
             Boolean.parseBoolean(properties.getProperty("recursive.mode", "false")),
             Boolean.parseBoolean(properties.getProperty("perceptual.hash", "true")),
             Boolean.parseBoolean(properties.getProperty("pixel.by.pixel", "true")),
+            parseInt(properties.getProperty("hash.distance", "0"), 0),
+            properties.getProperty("checksum.algorithm", "crc32"),
+            parseInt(properties.getProperty("pixel.memory.budget", "512"), 512),
+            Boolean.parseBoolean(properties.getProperty("watch.mode", "false")),
             properties.getProperty("name.prefix", "img_"),
             Boolean.parseBoolean(properties.getProperty("lowercase.extension", "false"))
         );
@@ -119,6 +127,10 @@ public class SettingsService {
      * @param recursiveMode the recursive mode setting
      * @param perceptualHash the perceptual hash setting
      * @param pixelByPixel the pixel by pixel setting
+     * @param hashDistance the perceptual hash distance setting
+     * @param checksumAlgorithm the checksum algorithm setting
+     * @param pixelMemoryBudget the pixel comparison memory budget setting
+     * @param watchMode the watch mode setting
      * @param namePrefix the name prefix setting
      * @param lowercaseExtension the lowercase extension setting
      */
@@ -129,6 +141,10 @@ public class SettingsService {
             boolean recursiveMode,
             boolean perceptualHash,
             boolean pixelByPixel,
+            int hashDistance,
+            @NotNull String checksumAlgorithm,
+            int pixelMemoryBudget,
+            boolean watchMode,
             @NotNull String namePrefix,
             boolean lowercaseExtension
     ) {
@@ -152,7 +168,43 @@ public class SettingsService {
         model.setRecursiveMode(recursiveMode);
         model.setPerceptualHash(perceptualHash);
         model.setPixelByPixel(pixelByPixel);
+
+        if (hashDistance < 0 || hashDistance > SettingsModel.MAX_HASH_DISTANCE) {
+            log.warn("Invalid hash distance. Using default '0'.");
+            hashDistance = 0;
+        }
+        model.setHashDistance(hashDistance);
+
+        if (!SettingsModel.getChecksumAlgorithms().contains(checksumAlgorithm)) {
+            log.warn("Invalid checksum algorithm. Using default 'crc32'.");
+            checksumAlgorithm = "crc32";
+        }
+        model.setChecksumAlgorithm(checksumAlgorithm);
+
+        if (pixelMemoryBudget < SettingsModel.MIN_PIXEL_MEMORY_BUDGET || pixelMemoryBudget > SettingsModel.MAX_PIXEL_MEMORY_BUDGET) {
+            log.warn("Invalid pixel memory budget. Using default '512'.");
+            pixelMemoryBudget = 512;
+        }
+        model.setPixelMemoryBudget(pixelMemoryBudget);
+        model.setWatchMode(watchMode);
+
         model.setNamePrefix(namePrefix);
         model.setLowercaseExtension(lowercaseExtension);
     }
+
+    /**
+     * Parses an integer setting, falling back to the default value if it's malformed.
+     *
+     * @param value the value to parse
+     * @param defaultValue the value used if parsing fails
+     * @return the parsed value, or the default value
+     */
+    private int parseInt(@NotNull String value, int defaultValue) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid numeric setting: '{}'. Using default '{}'.", value, defaultValue);
+            return defaultValue;
+        }
+    }
 }
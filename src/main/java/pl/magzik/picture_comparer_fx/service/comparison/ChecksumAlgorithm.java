@@ -0,0 +1,143 @@
+package pl.magzik.picture_comparer_fx.service.comparison;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+/**
+ * The algorithms available for checksumming file content.
+ * <p>
+ * Every algorithm checksums arbitrary ranges of a {@link FileChannel}, so the same algorithm is used
+ * both for partial hashes and for whole-file checksums. Checksums computed by different algorithms
+ * are never comparable, so every {@link Fingerprint} records the algorithm its checksums were computed by.
+ * </p>
+ */
+public enum ChecksumAlgorithm {
+
+    /**
+     * CRC32, streamed through a heap buffer.
+     */
+    CRC32("crc32") {
+        @Override
+        public @NotNull Checksum newChecksum() {
+            return new CRC32();
+        }
+
+        @Override
+        public void update(@NotNull Checksum checksum, @NotNull FileChannel channel, long position, long length) throws IOException {
+            readFully(channel, position, length, ByteBuffer.allocate(BUFFER_SIZE), checksum);
+        }
+    },
+
+    /**
+     * CRC32C, read with positional reads into a direct buffer.
+     * <p>
+     * Reading into a direct buffer skips the copy into the heap, and {@link CRC32C} over a direct buffer
+     * is intrinsified to the hardware CRC32C instruction on most platforms.
+     * The file is never memory-mapped, as a mapping keeps the file open until it's garbage collected,
+     * which on Windows prevents moving or removing a file right after it was checksummed.
+     * </p>
+     */
+    CRC32C("crc32c") {
+        @Override
+        public @NotNull Checksum newChecksum() {
+            return new CRC32C();
+        }
+
+        @Override
+        public void update(@NotNull Checksum checksum, @NotNull FileChannel channel, long position, long length) throws IOException {
+            readFully(channel, position, length, DIRECT_BUFFER.get(), checksum);
+        }
+    };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int DIRECT_BUFFER_SIZE = 256 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> DIRECT_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE));
+
+    private final String name;
+
+    ChecksumAlgorithm(@NotNull String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the name of this algorithm, as used in the settings.
+     *
+     * @return the name of the algorithm
+     */
+    public @NotNull String getName() {
+        return name;
+    }
+
+    /**
+     * Creates a new, empty checksum of this algorithm.
+     *
+     * @return a new {@link Checksum} instance
+     */
+    public abstract @NotNull Checksum newChecksum();
+
+    /**
+     * Updates the given checksum with a range of the channel's content.
+     *
+     * @param checksum the checksum to update, created by {@link #newChecksum()}
+     * @param channel the channel to read from
+     * @param position the position of the first byte of the range
+     * @param length the length of the range in bytes
+     * @throws IOException if the channel cannot be read, or it ends before the range does
+     */
+    public abstract void update(@NotNull Checksum checksum, @NotNull FileChannel channel, long position, long length) throws IOException;
+
+    /**
+     * Returns the algorithm with the given name.
+     *
+     * @param name the name of the algorithm, as used in the settings
+     * @return the matching {@link ChecksumAlgorithm}
+     * @throws IllegalArgumentException if no algorithm has the given name
+     */
+    public static @NotNull ChecksumAlgorithm fromName(@NotNull String name) {
+        return Arrays.stream(values())
+            .filter(algorithm -> algorithm.name.equals(name))
+            .findFirst()
+            .orElseThrow(() -> new IllegalArgumentException("Unknown checksum algorithm: " + name));
+    }
+
+    /**
+     * Reads a range of the channel through the given buffer, updating the checksum with every chunk.
+     *
+     * @param channel the channel to read from
+     * @param position the position of the first byte of the range
+     * @param length the length of the range in bytes
+     * @param buffer the buffer to read through
+     * @param checksum the checksum to update
+     * @throws IOException if the channel cannot be read, or it ends before the range does
+     */
+    private static void readFully(
+        @NotNull FileChannel channel,
+        long position,
+        long length,
+        @NotNull ByteBuffer buffer,
+        @NotNull Checksum checksum
+    ) throws IOException {
+        long end = position + length;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+
+            int read = channel.read(buffer, position);
+            if (read == -1) throw new EOFException("Channel ended before the checksummed range.");
+
+            buffer.flip();
+            checksum.update(buffer);
+            position += read;
+        }
+    }
+}
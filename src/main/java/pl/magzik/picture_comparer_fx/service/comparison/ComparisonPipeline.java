@@ -0,0 +1,507 @@
+package pl.magzik.picture_comparer_fx.service.comparison;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.magzik.picture_comparer_fx.base.metrics.MetricsRegistry;
+import pl.magzik.picture_comparer_fx.base.metrics.Timer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Groups image files into sets of duplicates.
+ * <p>
+ * Files are first grouped by their size, since files of different sizes can never be byte-identical,
+ * then by a partial hash of the head and tail of their content, and only then by the checksum of their whole content.
+ * Only groups with more than one file are kept after every step, so a file with a unique size is never read at all,
+ * and a file differing from the others near its start or end is never read in full. The remaining groups are then optionally refined by comparing perceptual hashes and pixels,
+ * so that a checksum collision never reports two different images as duplicates.
+ * </p>
+ * <p>
+ * If perceptual hashing is enabled with a non-zero hash distance, the pipeline searches for near-duplicates instead:
+ * every image is hashed, and images whose perceptual hashes differ by at most the given number of bits
+ * from the first image of a group join that group, even if their content differs. The lookups go through a {@link HammingIndex},
+ * so the search stays sub-quadratic. Pixel-by-pixel refinement only applies to the exact search.
+ * </p>
+ * <p>
+ * Every fingerprint is obtained through a {@link FingerprintCalculator}, so files that did not change
+ * since the last scan are neither read nor decoded again.
+ * </p>
+ * <p>
+ * The work done by the pipeline is counted over its whole lifetime, see {@link #counters()}.
+ * </p>
+ * <p>
+ * Grouping stops with an {@link InterruptedIOException} once the grouping thread is interrupted,
+ * interrupting the pixel-by-pixel refinement tasks still running on the executor.
+ * </p>
+ */
+public class ComparisonPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(ComparisonPipeline.class);
+
+    private static final Timer GROUP_TIMER = MetricsRegistry.getInstance().timer("group");
+
+    private final FingerprintCalculator calculator;
+
+    private final PixelComparator pixelComparator;
+
+    private final boolean perceptualHash;
+
+    private final boolean pixelByPixel;
+
+    private final int hashDistance;
+
+    private final LongAdder groupsToRefine = new LongAdder();
+
+    private final LongAdder groupsRefined = new LongAdder();
+
+    /**
+     * Constructs a {@link ComparisonPipeline} with the given components and enabled algorithms.
+     *
+     * @param calculator the {@link FingerprintCalculator} used to obtain fingerprints
+     * @param pixelComparator the {@link PixelComparator} used for pixel-by-pixel comparison
+     * @param perceptualHash whether to refine the groups by perceptual hash
+     * @param pixelByPixel whether to refine the groups by pixel-by-pixel comparison
+     * @param hashDistance the maximum Hamming distance between perceptual hashes of near-duplicates,
+     *                     or {@code 0} to search for exact duplicates only
+     */
+    public ComparisonPipeline(
+        @NotNull FingerprintCalculator calculator,
+        @NotNull PixelComparator pixelComparator,
+        boolean perceptualHash,
+        boolean pixelByPixel,
+        int hashDistance
+    ) {
+        if (hashDistance < 0 || hashDistance > Long.SIZE)
+            throw new IllegalArgumentException("Hash distance must be between 0 and " + Long.SIZE + ".");
+
+        this.calculator = calculator;
+        this.pixelComparator = pixelComparator;
+        this.perceptualHash = perceptualHash;
+        this.pixelByPixel = pixelByPixel;
+        this.hashDistance = hashDistance;
+    }
+
+    /**
+     * Returns whether this pipeline refines groups by perceptual hash.
+     *
+     * @return {@code true} if perceptual hashing is enabled, {@code false} otherwise
+     */
+    public boolean isPerceptualHash() {
+        return perceptualHash;
+    }
+
+    /**
+     * Returns whether this pipeline searches for near-duplicates, in which case every file needs a perceptual hash.
+     *
+     * @return {@code true} if near-duplicate search is enabled, {@code false} otherwise
+     */
+    public boolean isNearDuplicateSearch() {
+        return perceptualHash && hashDistance > 0;
+    }
+
+    /**
+     * Returns the amount of work done by this pipeline so far.
+     * <p>
+     * The counters only ever grow, so the work done by a single run is the difference between the counters
+     * taken after and before it, see {@link Counters#minus(Counters)}.
+     * </p>
+     *
+     * @return the current {@link Counters}
+     */
+    public @NotNull Counters counters() {
+        return new Counters(
+            calculator.bytesHashed(),
+            calculator.imagesDecoded() + pixelComparator.imagesDecoded(),
+            groupsToRefine.sum(),
+            groupsRefined.sum()
+        );
+    }
+
+    /**
+     * Persists every fingerprint computed so far, so it survives a crash of a running comparison.
+     *
+     * @throws IOException if the fingerprints cannot be saved
+     */
+    public void flush() throws IOException {
+        calculator.flush();
+    }
+
+    /**
+     * Runs the stat stage for a single file, reading only its attributes.
+     *
+     * @param file the file to fingerprint
+     * @return the {@link Fingerprint} of the file, with at least the size present
+     * @throws IOException if the attributes of the file cannot be read
+     */
+    public @NotNull Fingerprint stat(@NotNull File file) throws IOException {
+        return calculator.stat(file);
+    }
+
+    /**
+     * Runs the partial hash stage for a single file.
+     *
+     * @param file the file to fingerprint
+     * @param fingerprint the current fingerprint of the file
+     * @return the {@link Fingerprint} of the file, with the partial hash present
+     * @throws IOException if an error occurs while reading the file
+     */
+    public @NotNull Fingerprint partialHash(@NotNull File file, @NotNull Fingerprint fingerprint) throws IOException {
+        return calculator.withPartialHash(file, fingerprint);
+    }
+
+    /**
+     * Runs the checksum stage for a single file.
+     *
+     * @param file the file to fingerprint
+     * @param fingerprint the current fingerprint of the file
+     * @return the {@link Fingerprint} of the file, with the checksum present
+     * @throws IOException if an error occurs while reading the file
+     */
+    public @NotNull Fingerprint checksum(@NotNull File file, @NotNull Fingerprint fingerprint) throws IOException {
+        return calculator.withChecksum(file, fingerprint);
+    }
+
+    /**
+     * Runs the perceptual hash stage for a single file, if perceptual hashing is enabled.
+     *
+     * @param file the file to hash
+     * @param fingerprint the current fingerprint of the file
+     * @return the {@link Fingerprint} of the file, with the perceptual hash present if enabled
+     * @throws IOException if an error occurs while decoding the file
+     */
+    public @NotNull Fingerprint perceptualHash(@NotNull File file, @NotNull Fingerprint fingerprint) throws IOException {
+        return perceptualHash ? calculator.withPerceptualHash(file, fingerprint) : fingerprint;
+    }
+
+    /**
+     * Groups already fingerprinted files into sets of duplicates.
+     * <p>
+     * Every file must have its fingerprint present in the given map. Missing partial hashes, checksums and perceptual hashes
+     * are computed on demand, and the map is updated with them.
+     * </p>
+     * <p>
+     * Pixel-by-pixel refinement of different groups runs in parallel on the given executor,
+     * so the calling thread must not belong to it.
+     * </p>
+     *
+     * @param files the files to group, in the order the groups should follow
+     * @param fingerprints the fingerprints of the files
+     * @param executor the executor running the pixel-by-pixel refinement
+     * @return a map where the key is the first file of a group, and the value is the set of all files in that group
+     * @throws IOException if an error occurs while reading the files
+     */
+    public @NotNull Map<File, Set<File>> group(
+        @NotNull List<File> files,
+        @NotNull Map<File, Fingerprint> fingerprints,
+        @NotNull Executor executor
+    ) throws IOException {
+        return group(files, fingerprints, executor, () -> {});
+    }
+
+    /**
+     * Groups already fingerprinted files into sets of duplicates, notifying the given callback
+     * every time a candidate group has been refined pixel by pixel.
+     *
+     * @param files the files to group, in the order the groups should follow
+     * @param fingerprints the fingerprints of the files
+     * @param executor the executor running the pixel-by-pixel refinement
+     * @param onGroupRefined the callback, called from the threads of the executor
+     * @return a map where the key is the first file of a group, and the value is the set of all files in that group
+     * @throws IOException if an error occurs while reading the files
+     * @throws InterruptedIOException if the calling thread has been interrupted
+     * @see #group(List, Map, Executor)
+     */
+    public @NotNull Map<File, Set<File>> group(
+        @NotNull List<File> files,
+        @NotNull Map<File, Fingerprint> fingerprints,
+        @NotNull Executor executor,
+        @NotNull Runnable onGroupRefined
+    ) throws IOException {
+        List<List<File>> groups;
+        try (Timer.Context ignored = GROUP_TIMER.start()) {
+            groups = isNearDuplicateSearch()
+                ? groupByDistance(files, fingerprints)
+                : groupExact(files, fingerprints, executor, onGroupRefined);
+        }
+
+        calculator.flush();
+
+        Map<File, Set<File>> result = new LinkedHashMap<>();
+        groups.forEach(group -> result.put(group.getFirst(), new LinkedHashSet<>(group)));
+        return result;
+    }
+
+    /**
+     * Groups files with identical content, refining the groups with the enabled algorithms.
+     *
+     * @param files the files to group
+     * @param fingerprints the fingerprints of the files
+     * @param executor the executor running the pixel-by-pixel refinement
+     * @param onGroupRefined the callback notified every time a group has been refined pixel by pixel
+     * @return the list of groups with at least two files
+     * @throws IOException if an error occurs while reading the files
+     */
+    private @NotNull List<List<File>> groupExact(
+        @NotNull List<File> files,
+        @NotNull Map<File, Fingerprint> fingerprints,
+        @NotNull Executor executor,
+        @NotNull Runnable onGroupRefined
+    ) throws IOException {
+        List<List<File>> groups = groupBy(List.of(files), f -> fingerprints.get(f).size());
+        log.info("Size grouping done. Found {} candidate groups.", groups.size());
+
+        complete(groups, fingerprints, this::partialHash);
+        groups = groupBy(groups, f -> fingerprints.get(f).partialHash());
+        log.info("Partial hash grouping done. Found {} candidate groups.", groups.size());
+
+        complete(groups, fingerprints, this::checksum);
+        groups = groupBy(groups, f -> fingerprints.get(f).checksum());
+        log.info("Checksum grouping done. Found {} candidate groups.", groups.size());
+
+        if (perceptualHash) {
+            complete(groups, fingerprints, this::perceptualHash);
+            groups = groupBy(groups, f -> fingerprints.get(f).perceptualHash());
+            log.info("Perceptual hash refinement done. Remaining groups: {}", groups.size());
+        }
+
+        if (pixelByPixel) {
+            groups = splitByPixels(groups, executor, onGroupRefined);
+            log.info("Pixel by pixel refinement done. Remaining groups: {}", groups.size());
+        }
+
+        return groups;
+    }
+
+    /**
+     * Groups images whose perceptual hashes are within the configured Hamming distance of the first image of their group.
+     * <p>
+     * Images are taken in order. An image joins the group of the nearest center within the distance, ties going
+     * to the earliest one, or becomes the center of a new group otherwise. Only centers are kept in a {@link HammingIndex},
+     * and every group is represented by its center, so each image of a group is within the distance of the one kept
+     * by the actions run on duplicates. A chain of slightly different images therefore never merges into one group
+     * whose ends are far apart.
+     * </p>
+     * <p>
+     * Images that cannot be decoded are logged and left out, so a single broken file doesn't abort the search.
+     * </p>
+     *
+     * @param files the files to group
+     * @param fingerprints the fingerprints of the files, updated with missing perceptual hashes
+     * @return the list of groups with at least two files
+     * @throws InterruptedIOException if the current thread has been interrupted
+     */
+    private @NotNull List<List<File>> groupByDistance(@NotNull List<File> files, @NotNull Map<File, Fingerprint> fingerprints) throws InterruptedIOException {
+        HammingIndex index = new HammingIndex();
+        List<Long> centerHashes = new ArrayList<>();
+        List<List<File>> clusters = new ArrayList<>();
+
+        for (File file : files) {
+            checkInterrupted();
+            Fingerprint fingerprint;
+            try {
+                fingerprint = perceptualHash(file, fingerprints.get(file));
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                log.warn("Couldn't hash: {}, skipping it, because: {}", file, e.getMessage());
+                continue;
+            }
+            fingerprints.put(file, fingerprint);
+
+            long hash = fingerprint.perceptualHash();
+            int[] nearest = { -1, Integer.MAX_VALUE };
+            index.search(hash, hashDistance, center -> {
+                int distance = HammingIndex.distance(hash, centerHashes.get(center));
+                if (distance < nearest[1] || (distance == nearest[1] && center < nearest[0])) {
+                    nearest[0] = center;
+                    nearest[1] = distance;
+                }
+            });
+
+            if (nearest[0] >= 0) {
+                clusters.get(nearest[0]).add(file);
+            } else {
+                index.add(hash, clusters.size());
+                centerHashes.add(hash);
+                clusters.add(new ArrayList<>(List.of(file)));
+            }
+        }
+
+        List<List<File>> groups = clusters.stream()
+            .filter(group -> group.size() > 1)
+            .toList();
+        log.info("Near-duplicate grouping done. Found {} groups within distance {}.", groups.size(), hashDistance);
+        return groups;
+    }
+
+    /**
+     * Runs the given stage for every file of the given groups, updating the fingerprints map.
+     *
+     * @param groups the groups of files to process
+     * @param fingerprints the fingerprints of the files
+     * @param stage the stage computing a missing part of the fingerprint
+     * @throws IOException if the stage fails for any file
+     */
+    private void complete(
+        @NotNull List<List<File>> groups,
+        @NotNull Map<File, Fingerprint> fingerprints,
+        @NotNull Stage stage
+    ) throws IOException {
+        for (List<File> group : groups) {
+            for (File file : group) {
+                checkInterrupted();
+                fingerprints.put(file, stage.apply(file, fingerprints.get(file)));
+            }
+        }
+    }
+
+    /**
+     * Splits every group into subgroups sharing the same key, dropping subgroups with a single file.
+     *
+     * @param groups the groups to split
+     * @param key the function extracting the grouping key of a file
+     * @return the list of subgroups with at least two files
+     */
+    private @NotNull List<List<File>> groupBy(@NotNull List<List<File>> groups, @NotNull Function<File, ?> key) {
+        List<List<File>> result = new ArrayList<>();
+        for (List<File> group : groups) {
+            Map<Object, List<File>> subgroups = new LinkedHashMap<>();
+            for (File file : group) {
+                subgroups.computeIfAbsent(key.apply(file), k -> new ArrayList<>()).add(file);
+            }
+
+            subgroups.values().stream()
+                .filter(subgroup -> subgroup.size() > 1)
+                .forEach(result::add);
+        }
+        return result;
+    }
+
+    /**
+     * Splits every group into subgroups of pixel-identical images, dropping subgroups with a single file.
+     * <p>
+     * Every group is split in a separate task on the given executor. The memory held by decoded images
+     * is bounded by the {@link MemoryBudget} of the {@link PixelComparator}, not by the number of tasks.
+     * If any task fails, or the calling thread is interrupted, the remaining tasks are cancelled,
+     * and the running ones interrupted.
+     * </p>
+     *
+     * @param groups the groups to split
+     * @param executor the executor running the tasks
+     * @param onGroupRefined the callback notified every time a group has been split
+     * @return the list of subgroups with at least two files
+     * @throws IOException if an error occurs while decoding the images
+     */
+    private @NotNull List<List<File>> splitByPixels(
+        @NotNull List<List<File>> groups,
+        @NotNull Executor executor,
+        @NotNull Runnable onGroupRefined
+    ) throws IOException {
+        groupsToRefine.add(groups.size());
+        List<FutureTask<List<List<File>>>> tasks = groups.stream()
+            .map(group -> new FutureTask<>(() -> {
+                try {
+                    return splitByPixels(group);
+                } finally {
+                    groupsRefined.increment();
+                    onGroupRefined.run();
+                }
+            }))
+            .toList();
+        tasks.forEach(executor::execute);
+
+        List<List<File>> result = new ArrayList<>();
+        try {
+            for (FutureTask<List<List<File>>> task : tasks) result.addAll(task.get());
+        } catch (InterruptedException e) {
+            tasks.forEach(task -> task.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Pixel by pixel refinement interrupted.");
+        } catch (ExecutionException e) {
+            tasks.forEach(task -> task.cancel(true));
+            if (e.getCause() instanceof IOException cause) throw cause;
+            throw new IOException("Pixel by pixel refinement failed.", e.getCause());
+        }
+        return result;
+    }
+
+    /**
+     * Splits a single group into subgroups of pixel-identical images, dropping subgroups with a single file.
+     *
+     * @param group the group to split
+     * @return the list of subgroups with at least two files
+     * @throws IOException if an error occurs while decoding the images
+     */
+    private @NotNull List<List<File>> splitByPixels(@NotNull List<File> group) throws IOException {
+        List<List<File>> result = new ArrayList<>();
+        List<File> remaining = new LinkedList<>(group);
+        while (remaining.size() > 1) {
+            File reference = remaining.removeFirst();
+            List<File> subgroup = new ArrayList<>(List.of(reference));
+
+            Iterator<File> it = remaining.iterator();
+            while (it.hasNext()) {
+                File candidate = it.next();
+                if (pixelComparator.equal(reference, candidate)) {
+                    subgroup.add(candidate);
+                    it.remove();
+                }
+            }
+
+            if (subgroup.size() > 1) result.add(subgroup);
+        }
+        return result;
+    }
+
+    /**
+     * Stops the grouping if the current thread has been interrupted.
+     *
+     * @throws InterruptedIOException if the current thread has been interrupted
+     */
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Grouping interrupted.");
+    }
+
+    /**
+     * The amount of work done by a pipeline.
+     *
+     * @param bytesHashed the number of bytes read to compute partial hashes and checksums
+     * @param imagesDecoded the number of images decoded for perceptual hashing and pixel-by-pixel comparison
+     * @param groupsToRefine the number of candidate groups handed over to the pixel-by-pixel refinement
+     * @param groupsRefined the number of candidate groups already refined pixel by pixel
+     */
+    public record Counters(long bytesHashed, long imagesDecoded, long groupsToRefine, long groupsRefined) {
+
+        /**
+         * Returns the work done since the given counters were taken.
+         *
+         * @param baseline the counters taken earlier
+         * @return the difference between these counters and the baseline
+         */
+        public @NotNull Counters minus(@NotNull Counters baseline) {
+            return new Counters(
+                bytesHashed - baseline.bytesHashed,
+                imagesDecoded - baseline.imagesDecoded,
+                groupsToRefine - baseline.groupsToRefine,
+                groupsRefined - baseline.groupsRefined
+            );
+        }
+    }
+
+    /**
+     * A single stage of the pipeline, completing a part of a file's fingerprint.
+     */
+    @FunctionalInterface
+    private interface Stage {
+        @NotNull Fingerprint apply(@NotNull File file, @NotNull Fingerprint fingerprint) throws IOException;
+    }
+}
@@ -0,0 +1,295 @@
+package pl.magzik.picture_comparer_fx.service.comparison;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches a directory tree for image files being created, modified or deleted.
+ * <p>
+ * Every directory of the tree, up to the depth of the {@link ImageFileWalker} used for the scan,
+ * is registered with a {@link WatchService}. Events are collected on a dedicated daemon thread and debounced:
+ * once an event arrives, the watcher waits until no new event arrives for {@value #QUIET_PERIOD_MILLIS} ms,
+ * but no longer than {@value #MAX_BATCH_DELAY_MILLIS} ms, and then reports all of them at once as a {@link Changes}.
+ * This way, a file being copied in many writes, or a batch of files dropped at once, results in a single update.
+ * </p>
+ * <p>
+ * Directories created inside the tree are registered as well, and the images already inside them are reported
+ * as created. If the {@link WatchService} loses events, the whole tree is walked again and reported as a full listing.
+ * </p>
+ * <p>
+ * The listener is always called on the watcher thread, one batch at a time. Its first batch is a full listing
+ * of the tree, so changes made between the scan and the start of the watcher are not lost.
+ * </p>
+ */
+public class DirectoryWatcher implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(DirectoryWatcher.class);
+
+    private static final long QUIET_PERIOD_MILLIS = 500;
+
+    private static final long MAX_BATCH_DELAY_MILLIS = 5_000;
+
+    private final Path root;
+
+    private final ImageFileWalker walker;
+
+    private final WatchService watchService;
+
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+
+    private final Thread thread;
+
+    private volatile boolean closed;
+
+    /**
+     * Constructs a {@link DirectoryWatcher} and registers every directory of the given tree.
+     * The watcher doesn't report anything until it is {@link #start() started}.
+     *
+     * @param root the root directory of the tree
+     * @param walker the {@link ImageFileWalker} used for the scan, defining the depth of the tree
+     * @param listener the listener receiving the batches of changes
+     * @throws IOException if the root cannot be registered
+     */
+    public DirectoryWatcher(@NotNull File root, @NotNull ImageFileWalker walker, @NotNull Consumer<Changes> listener) throws IOException {
+        this.root = root.toPath().toAbsolutePath();
+        this.walker = walker;
+        this.watchService = this.root.getFileSystem().newWatchService();
+        this.thread = Thread.ofPlatform()
+            .name("directory-watcher")
+            .daemon()
+            .unstarted(() -> watch(listener));
+
+        try {
+            registerTree(this.root);
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+        log.info("Watching {} directories under {}.", directories.size(), this.root);
+    }
+
+    /**
+     * Starts reporting changes to the listener.
+     */
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Stops watching the tree. A batch already being reported is allowed to finish.
+     *
+     * @throws IOException if the {@link WatchService} cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        watchService.close();
+        log.info("Stopped watching {}.", root);
+    }
+
+    /**
+     * The loop of the watcher thread, collecting debounced batches of events and passing them to the listener.
+     *
+     * @param listener the listener receiving the batches of changes
+     */
+    private void watch(@NotNull Consumer<Changes> listener) {
+        try {
+            listener.accept(listing());
+
+            while (!closed) {
+                Batch batch = new Batch();
+                batch.poll(watchService.take());
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_BATCH_DELAY_MILLIS);
+                WatchKey key;
+                while (System.nanoTime() < deadline
+                    && (key = watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    batch.poll(key);
+                }
+
+                Changes changes = batch.toChanges();
+                if (changes.isEmpty()) continue;
+
+                log.info("Detected {} changed and {} deleted paths under {}.", changes.changed().size(), changes.deleted().size(), root);
+                listener.accept(changes);
+            }
+        } catch (IOException e) {
+            log.error("Couldn't list {}: {}", root, e.getMessage(), e);
+        } catch (ClosedWatchServiceException e) {
+            log.debug("Watch service of {} closed.", root);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Watching {} failed: {}", root, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Registers the given directory and every directory below it whose children are within the depth of the walker.
+     * The walk visits directories above the depth limit with {@code preVisitDirectory},
+     * and reports the ones at the limit as plain files, which are left unregistered.
+     *
+     * @param start the directory to register
+     * @throws IOException if the directory cannot be registered
+     */
+    private void registerTree(@NotNull Path start) throws IOException {
+        int maxDepth = walker.getMaxDepth() - depth(start);
+        if (maxDepth <= 0) return;
+
+        Files.walkFileTree(start, EnumSet.noneOf(FileVisitOption.class), maxDepth, new SimpleFileVisitor<>() {
+            @Override
+            public @NotNull FileVisitResult preVisitDirectory(@NotNull Path dir, @NotNull BasicFileAttributes attrs) throws IOException {
+                directories.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public @NotNull FileVisitResult visitFileFailed(@NotNull Path file, @NotNull IOException e) {
+                log.warn("Skipping unreadable path: {}", file, e);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Returns the depth of the given path relative to the root.
+     *
+     * @param path the path below the root
+     * @return the number of directory levels between the root and the path, {@code 0} for the root itself
+     */
+    private int depth(@NotNull Path path) {
+        return path.equals(root) ? 0 : root.relativize(path).getNameCount();
+    }
+
+    /**
+     * A batch of changes reported to the listener.
+     * <p>
+     * Deleted paths may be directories, in which case every file below them is deleted too.
+     * If the batch is a full listing, every image file not among the changed ones has been deleted.
+     * </p>
+     *
+     * @param changed the image files created or modified since the last batch, or every image file of a full listing
+     * @param deleted the deleted paths
+     * @param fullListing whether events were lost and the changed files list the whole tree
+     */
+    public record Changes(@NotNull Set<File> changed, @NotNull Set<File> deleted, boolean fullListing) {
+
+        /**
+         * Returns whether the batch has no effect.
+         *
+         * @return {@code true} if the batch carries no changes, {@code false} otherwise
+         */
+        public boolean isEmpty() {
+            return changed.isEmpty() && deleted.isEmpty() && !fullListing;
+        }
+    }
+
+    /**
+     * The events collected during a single debounce period.
+     */
+    private final class Batch {
+        private final Set<File> changed = new LinkedHashSet<>();
+
+        private final Set<File> deleted = new LinkedHashSet<>();
+
+        private boolean overflow;
+
+        /**
+         * Collects the pending events of the given key and resets it.
+         *
+         * @param key the signalled key
+         */
+        private void poll(@NotNull WatchKey key) {
+            Path dir = directories.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    overflow = true;
+                    continue;
+                }
+                if (dir == null) continue;
+
+                Path path = dir.resolve((Path) event.context());
+                if (event.kind() == ENTRY_DELETE) {
+                    delete(path);
+                } else if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    if (event.kind() == ENTRY_CREATE) create(path);
+                } else if (ImageFileWalker.isImageFile(path)) {
+                    change(path.toFile());
+                }
+            }
+
+            if (!key.reset()) directories.remove(key);
+        }
+
+        /**
+         * Registers a directory created inside the tree, and collects the images already inside it.
+         *
+         * @param dir the created directory
+         */
+        private void create(@NotNull Path dir) {
+            int maxDepth = walker.getMaxDepth() - depth(dir);
+            if (maxDepth <= 0) return;
+
+            try {
+                registerTree(dir);
+                walker.walk(dir.toFile(), this::change, maxDepth);
+            } catch (IOException e) {
+                log.warn("Couldn't watch new directory: {}", dir, e);
+            }
+        }
+
+        private void change(@NotNull File file) {
+            deleted.remove(file);
+            changed.add(file);
+        }
+
+        private void delete(@NotNull Path path) {
+            File file = path.toFile();
+            changed.remove(file);
+            deleted.add(file);
+        }
+
+        /**
+         * Converts the collected events into {@link Changes}, walking the whole tree if any events were lost.
+         *
+         * @return the collected changes
+         */
+        private @NotNull Changes toChanges() {
+            if (!overflow) return new Changes(changed, deleted, false);
+
+            log.warn("Lost events while watching {}, listing the whole tree again.", root);
+            try {
+                registerTree(root);
+                return listing();
+            } catch (IOException e) {
+                log.error("Couldn't list {} again: {}", root, e.getMessage(), e);
+                return new Changes(changed, deleted, false);
+            }
+        }
+    }
+
+    /**
+     * Lists every image file of the tree.
+     *
+     * @return the full listing of the tree
+     * @throws IOException if the root cannot be walked
+     */
+    private @NotNull Changes listing() throws IOException {
+        Set<File> files = new LinkedHashSet<>();
+        walker.walk(root.toFile(), files::add);
+        return new Changes(files, Set.of(), true);
+    }
+}
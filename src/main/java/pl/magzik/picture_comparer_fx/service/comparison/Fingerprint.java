@@ -0,0 +1,114 @@
+package pl.magzik.picture_comparer_fx.service.comparison;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An immutable snapshot of everything the comparison pipeline knows about a single image file.
+ * <p>
+ * A fingerprint is only valid for the exact file state it was computed from, which is identified by the
+ * file's size and last modification time. The partial hash, the checksum and the perceptual hash are all optional,
+ * as they are computed lazily and only when a comparison actually needs them.
+ * The partial hash and the checksum are always computed by the same {@link ChecksumAlgorithm},
+ * which is recorded with them, as checksums computed by different algorithms are not comparable.
+ * </p>
+ *
+ * @param size the size of the file in bytes
+ * @param lastModified the last modification time of the file, in epoch milliseconds
+ * @param checksumAlgorithm the algorithm the partial hash and the checksum were computed by,
+ *                          or {@code null} if neither is computed yet
+ * @param partialHash the checksum of the head and tail windows of the file content, or {@code null} if not computed yet
+ * @param checksum the checksum of the whole file content, or {@code null} if not computed yet
+ * @param perceptualHash the 64-bit perceptual hash of the image, or {@code null} if not computed yet
+ */
+public record Fingerprint(
+    long size,
+    long lastModified,
+    @Nullable ChecksumAlgorithm checksumAlgorithm,
+    @Nullable Long partialHash,
+    @Nullable Long checksum,
+    @Nullable Long perceptualHash
+) {
+
+    /**
+     * Checks whether this fingerprint still describes a file with the given attributes.
+     *
+     * @param size the current size of the file in bytes
+     * @param lastModified the current last modification time of the file, in epoch milliseconds
+     * @return {@code true} if the fingerprint is still valid, {@code false} otherwise
+     */
+    public boolean matches(long size, long lastModified) {
+        return this.size == size && this.lastModified == lastModified;
+    }
+
+    /**
+     * Returns a copy of this fingerprint with the given partial hash.
+     * If the checksum was computed by another algorithm, it's dropped.
+     *
+     * @param algorithm the algorithm the partial hash was computed by
+     * @param partialHash the checksum of the head and tail windows of the file content
+     * @return a new {@link Fingerprint} instance
+     */
+    @Contract("_, _ -> new")
+    public @NotNull Fingerprint withPartialHash(@NotNull ChecksumAlgorithm algorithm, long partialHash) {
+        Long checksum = algorithm == checksumAlgorithm ? this.checksum : null;
+        return new Fingerprint(size, lastModified, algorithm, partialHash, checksum, perceptualHash);
+    }
+
+    /**
+     * Returns a copy of this fingerprint with the given checksum.
+     * If the partial hash was computed by another algorithm, it's dropped.
+     *
+     * @param algorithm the algorithm the checksum was computed by
+     * @param checksum the checksum of the file content
+     * @return a new {@link Fingerprint} instance
+     */
+    @Contract("_, _ -> new")
+    public @NotNull Fingerprint withChecksum(@NotNull ChecksumAlgorithm algorithm, long checksum) {
+        Long partialHash = algorithm == checksumAlgorithm ? this.partialHash : null;
+        return new Fingerprint(size, lastModified, algorithm, partialHash, checksum, perceptualHash);
+    }
+
+    /**
+     * Returns this fingerprint if its partial hash and checksum can be compared with ones computed
+     * by the given algorithm, or a copy without them otherwise.
+     *
+     * @param algorithm the algorithm the checksums must be computed by
+     * @return this or a new {@link Fingerprint} instance
+     */
+    public @NotNull Fingerprint forChecksumAlgorithm(@NotNull ChecksumAlgorithm algorithm) {
+        return checksumAlgorithm == null || checksumAlgorithm == algorithm ? this : withoutChecksums();
+    }
+
+    /**
+     * Returns a copy of this fingerprint without the partial hash and the checksum.
+     *
+     * @return a new {@link Fingerprint} instance
+     */
+    @Contract("-> new")
+    public @NotNull Fingerprint withoutChecksums() {
+        return new Fingerprint(size, lastModified, null, null, null, perceptualHash);
+    }
+
+    /**
+     * Returns a copy of this fingerprint without the perceptual hash.
+     *
+     * @return a new {@link Fingerprint} instance
+     */
+    @Contract("-> new")
+    public @NotNull Fingerprint withoutPerceptualHash() {
+        return new Fingerprint(size, lastModified, checksumAlgorithm, partialHash, checksum, null);
+    }
+
+    /**
+     * Returns a copy of this fingerprint with the given perceptual hash.
+     *
+     * @param perceptualHash the perceptual hash of the image
+     * @return a new {@link Fingerprint} instance
+     */
+    @Contract("_ -> new")
+    public @NotNull Fingerprint withPerceptualHash(long perceptualHash) {
+        return new Fingerprint(size, lastModified, checksumAlgorithm, partialHash, checksum, perceptualHash);
+    }
+}
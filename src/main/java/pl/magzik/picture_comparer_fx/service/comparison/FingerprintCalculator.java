@@ -0,0 +1,229 @@
+package pl.magzik.picture_comparer_fx.service.comparison;
+
+import org.jetbrains.annotations.NotNull;
+import pl.magzik.picture_comparer_fx.base.metrics.Histogram;
+import pl.magzik.picture_comparer_fx.base.metrics.MetricsRegistry;
+import pl.magzik.picture_comparer_fx.base.metrics.Timer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Checksum;
+
+/**
+ * Computes {@link Fingerprint}s of image files, backed by a {@link FingerprintStore}.
+ * <p>
+ * Every step is incremental: the file is first stat-ed, and a cached fingerprint is reused if the file did not change.
+ * The partial hash, the checksum and the perceptual hash are then computed only if they are requested and missing,
+ * and every newly computed value is written back to the store.
+ * </p>
+ * <p>
+ * The number of bytes read for hashing and the number of images decoded are counted over the lifetime
+ * of the calculator, so progress of a running scan can be reported.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ */
+public class FingerprintCalculator {
+
+    /**
+     * The size of each of the head and tail windows read by the partial hash, in bytes.
+     */
+    public static final int PARTIAL_WINDOW_SIZE = 16 * 1024;
+
+    private static final Timer STAT_TIMER = MetricsRegistry.getInstance().timer("stat");
+
+    private static final Timer PARTIAL_HASH_TIMER = MetricsRegistry.getInstance().timer("checksum.partial");
+
+    private static final Timer CHECKSUM_TIMER = MetricsRegistry.getInstance().timer("checksum.full");
+
+    private static final Histogram CHECKSUM_SIZES = MetricsRegistry.getInstance().histogram("checksum.size", "bytes");
+
+    private final FingerprintStore store;
+
+    private final PerceptualHasher hasher;
+
+    private final ChecksumAlgorithm algorithm;
+
+    private final LongAdder bytesHashed = new LongAdder();
+
+    private final LongAdder imagesDecoded = new LongAdder();
+
+    /**
+     * Constructs a {@link FingerprintCalculator} using the given store, hasher and checksum algorithm.
+     * <p>
+     * If the store holds perceptual hashes computed by a different version of the hasher, they are dropped.
+     * Stored checksums are kept, as every fingerprint records the algorithm its checksums were computed by.
+     * </p>
+     *
+     * @param store the {@link FingerprintStore} used to cache fingerprints
+     * @param hasher the {@link PerceptualHasher} used to compute perceptual hashes
+     * @param algorithm the {@link ChecksumAlgorithm} used for partial hashes and checksums
+     */
+    public FingerprintCalculator(@NotNull FingerprintStore store, @NotNull PerceptualHasher hasher, @NotNull ChecksumAlgorithm algorithm) {
+        this.store = store;
+        this.hasher = hasher;
+        this.algorithm = algorithm;
+        store.usePerceptualHashVersion(PerceptualHasher.VERSION);
+    }
+
+    /**
+     * Returns the fingerprint of the given file, reading only its attributes.
+     * <p>
+     * If the store holds a valid fingerprint for the file, it is returned, without the partial hash and the checksum
+     * if they were computed by a different algorithm than the one of this calculator. Otherwise, a fresh fingerprint with only the size and the modification time is returned.
+     * </p>
+     *
+     * @param file the file to stat
+     * @return the {@link Fingerprint} of the file
+     * @throws IOException if the attributes of the file cannot be read
+     */
+    public @NotNull Fingerprint stat(@NotNull File file) throws IOException {
+        BasicFileAttributes attrs;
+        try (Timer.Context ignored = STAT_TIMER.start()) {
+            attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        }
+        long size = attrs.size();
+        long lastModified = attrs.lastModifiedTime().toMillis();
+
+        Fingerprint fingerprint = store.get(file, size, lastModified);
+        return fingerprint != null
+            ? fingerprint.forChecksumAlgorithm(algorithm)
+            : new Fingerprint(size, lastModified, null, null, null, null);
+    }
+
+    /**
+     * Ensures the given fingerprint contains the partial hash of the file content.
+     * <p>
+     * The partial hash only covers the first and the last {@value #PARTIAL_WINDOW_SIZE} bytes of the file.
+     * If the file is not larger than both windows together, the whole file is read instead,
+     * and the result is stored as both the partial hash and the checksum.
+     * </p>
+     *
+     * @param file the file the fingerprint describes
+     * @param fingerprint the current fingerprint of the file
+     * @return a {@link Fingerprint} with the partial hash present
+     * @throws IOException if the file cannot be read
+     */
+    public @NotNull Fingerprint withPartialHash(@NotNull File file, @NotNull Fingerprint fingerprint) throws IOException {
+        fingerprint = fingerprint.forChecksumAlgorithm(algorithm);
+        if (fingerprint.partialHash() != null) return fingerprint;
+
+        Fingerprint updated;
+        if (fingerprint.size() <= 2L * PARTIAL_WINDOW_SIZE) {
+            Fingerprint checksummed = withChecksum(file, fingerprint);
+            updated = checksummed.withPartialHash(algorithm, checksummed.checksum());
+        } else {
+            updated = fingerprint.withPartialHash(algorithm, partialHash(file, fingerprint.size()));
+        }
+        store.put(file, updated);
+        return updated;
+    }
+
+    /**
+     * Ensures the given fingerprint contains the checksum of the file content.
+     *
+     * @param file the file the fingerprint describes
+     * @param fingerprint the current fingerprint of the file
+     * @return a {@link Fingerprint} with the checksum present
+     * @throws IOException if the file cannot be read
+     */
+    public @NotNull Fingerprint withChecksum(@NotNull File file, @NotNull Fingerprint fingerprint) throws IOException {
+        fingerprint = fingerprint.forChecksumAlgorithm(algorithm);
+        if (fingerprint.checksum() != null) return fingerprint;
+
+        Fingerprint updated = fingerprint.withChecksum(algorithm, checksum(file));
+        store.put(file, updated);
+        return updated;
+    }
+
+    /**
+     * Ensures the given fingerprint contains the perceptual hash of the image.
+     *
+     * @param file the file the fingerprint describes
+     * @param fingerprint the current fingerprint of the file
+     * @return a {@link Fingerprint} with the perceptual hash present
+     * @throws IOException if the file cannot be read or decoded
+     */
+    public @NotNull Fingerprint withPerceptualHash(@NotNull File file, @NotNull Fingerprint fingerprint) throws IOException {
+        if (fingerprint.perceptualHash() != null) return fingerprint;
+
+        Fingerprint updated = fingerprint.withPerceptualHash(hasher.hash(file));
+        imagesDecoded.increment();
+        store.put(file, updated);
+        return updated;
+    }
+
+    /**
+     * Returns the total number of bytes read to compute partial hashes and checksums.
+     *
+     * @return the number of hashed bytes
+     */
+    public long bytesHashed() {
+        return bytesHashed.sum();
+    }
+
+    /**
+     * Returns the total number of images decoded to compute perceptual hashes.
+     *
+     * @return the number of decoded images
+     */
+    public long imagesDecoded() {
+        return imagesDecoded.sum();
+    }
+
+    /**
+     * Persists all fingerprints computed so far.
+     *
+     * @throws IOException if the store cannot be saved
+     */
+    public void flush() throws IOException {
+        store.save();
+    }
+
+    /**
+     * Computes the checksum of the head and tail windows of the file content.
+     *
+     * @param file the file to read
+     * @param size the size of the file in bytes, larger than both windows together
+     * @return the checksum value
+     * @throws IOException if the file cannot be read
+     */
+    private long partialHash(@NotNull File file, long size) throws IOException {
+        Checksum checksum = algorithm.newChecksum();
+
+        try (Timer.Context ignored = PARTIAL_HASH_TIMER.start();
+             FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            algorithm.update(checksum, channel, 0, PARTIAL_WINDOW_SIZE);
+            algorithm.update(checksum, channel, size - PARTIAL_WINDOW_SIZE, PARTIAL_WINDOW_SIZE);
+        }
+        bytesHashed.add(2L * PARTIAL_WINDOW_SIZE);
+
+        return checksum.getValue();
+    }
+
+    /**
+     * Computes the checksum of the whole file content.
+     *
+     * @param file the file to read
+     * @return the checksum value
+     * @throws IOException if the file cannot be read
+     */
+    private long checksum(@NotNull File file) throws IOException {
+        Checksum checksum = algorithm.newChecksum();
+
+        try (Timer.Context ignored = CHECKSUM_TIMER.start();
+             FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            algorithm.update(checksum, channel, 0, channel.size());
+            bytesHashed.add(channel.size());
+            CHECKSUM_SIZES.record(channel.size());
+        }
+
+        return checksum.getValue();
+    }
+}
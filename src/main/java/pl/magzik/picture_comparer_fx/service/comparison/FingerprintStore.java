@@ -0,0 +1,650 @@
+package pl.magzik.picture_comparer_fx.service.comparison;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.magzik.picture_comparer_fx.base.PathResolver;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent store of {@link Fingerprint}s, keyed by the absolute path of the file they describe.
+ * <p>
+ * The store lets the comparison pipeline skip reading and decoding files that did not change since the last scan.
+ * A cached fingerprint is only returned when the file's size and last modification time still match.
+ * </p>
+ * <p>
+ * The fingerprints are kept in two files inside the {@link PathResolver#getDataDirectory() data directory}:
+ * a compact binary snapshot of the whole store, and an append-only journal of the entries changed since.
+ * A {@link #save()} only appends the entries changed since the previous one, so the periodic saves of a long scan
+ * cost as much as the fingerprints computed in between, not as much as the whole store.
+ * Once the journal grows larger than the snapshot, both are compacted into a new snapshot,
+ * and so are they after the store has been cleared, or its perceptual hashes dropped.
+ * Journal records are checked and cut back after a crash the same way as the ones of the {@code GalleryStore} journal.
+ * </p>
+ * <p>
+ * The store is a lazily initialized, thread-safe singleton, shared by every service that compares images.
+ * Unsaved fingerprints are saved by a shutdown hook when the JVM exits, so closing the application
+ * in the middle of a scan doesn't lose the work done since the last save.
+ * </p>
+ */
+public class FingerprintStore {
+
+    private static final Logger log = LoggerFactory.getLogger(FingerprintStore.class);
+
+    private static final String DATA_FILE_NAME = "fingerprints.pfx";
+    private static final String JOURNAL_FILE_NAME = "fingerprints.journal";
+
+    private static final int MAGIC = 0x50465846; // "PFXF"
+    private static final int JOURNAL_MAGIC = 0x5046464A; // "PFFJ"
+    private static final int VERSION = 6;
+    private static final int MIN_VERSION = 1; // Older versions lack newer fields, but are otherwise compatible.
+
+    private static final int JOURNAL_HEADER_SIZE = 2 * Integer.BYTES + Long.BYTES;
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int MAX_RECORD_SIZE = 64 << 20;
+    private static final int MAX_FINGERPRINT_SIZE = 2 * Long.BYTES + 2 * Byte.BYTES + 3 * Long.BYTES;
+
+    private static final long MIN_COMPACTION_SIZE = 1 << 20;
+
+    private static final byte HAS_CHECKSUM = 1, HAS_PERCEPTUAL_HASH = 1 << 1, HAS_PARTIAL_HASH = 1 << 2,
+        HAS_CHECKSUM_ALGORITHM = 1 << 3;
+
+    private static final byte PUT = 1, REMOVE = 2;
+
+    private static class InstanceHolder {
+        private static final FingerprintStore INSTANCE = new FingerprintStore(
+            PathResolver.getInstance().getDataDirectory().resolve(DATA_FILE_NAME)
+        );
+    }
+
+    /**
+     * Returns the singleton instance of the {@link FingerprintStore} class.
+     *
+     * @return the singleton {@link FingerprintStore} instance
+     */
+    public static FingerprintStore getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    private final Path dataFile;
+
+    private final Path journalFile;
+
+    private final Map<String, Fingerprint> fingerprints;
+
+    private final Set<String> changed;
+
+    private volatile boolean rewrite;
+
+    private volatile int perceptualHashVersion;
+
+    private long generation;
+
+    private long snapshotSize;
+
+    private FileChannel journal;
+
+    /**
+     * Constructs a {@link FingerprintStore} backed by the given snapshot file and loads its content,
+     * along with the journal next to it.
+     * If the files cannot be read, the store starts empty.
+     *
+     * @param dataFile the file used to persist the snapshot of the fingerprints
+     */
+    private FingerprintStore(@NotNull Path dataFile) {
+        this.dataFile = dataFile;
+        this.journalFile = dataFile.resolveSibling(JOURNAL_FILE_NAME);
+        this.fingerprints = new ConcurrentHashMap<>();
+        this.changed = ConcurrentHashMap.newKeySet();
+        this.rewrite = false;
+        this.perceptualHashVersion = 1;
+        this.generation = 0;
+        this.snapshotSize = 0;
+        this.journal = null;
+
+        try {
+            load();
+        } catch (IOException e) {
+            log.warn("Couldn't load fingerprints from: {}, starting with an empty store.", dataFile, e);
+            fingerprints.clear();
+            rewrite = true;
+        }
+
+        Runtime.getRuntime().addShutdownHook(Thread.ofPlatform().name("fingerprint-store-save").unstarted(() -> {
+            try {
+                save();
+            } catch (IOException e) {
+                log.error("Couldn't save fingerprints on exit: {}", e.getMessage(), e);
+            }
+        }));
+    }
+
+    /**
+     * Sets the version of the perceptual hashes held by this store.
+     * <p>
+     * Perceptual hashes computed by different versions of the hasher are not comparable, so if the version differs
+     * from the one the stored hashes were computed by, every perceptual hash is dropped.
+     * </p>
+     *
+     * @param version the version of the hasher used for all perceptual hashes stored from now on
+     */
+    public synchronized void usePerceptualHashVersion(int version) {
+        if (perceptualHashVersion == version) return;
+
+        log.info("Perceptual hash version changed from {} to {}, dropping cached hashes.", perceptualHashVersion, version);
+        fingerprints.replaceAll((path, fingerprint) -> fingerprint.withoutPerceptualHash());
+        perceptualHashVersion = version;
+        rewrite = true;
+    }
+
+    /**
+     * Returns the cached fingerprint of the given file, if it is still valid for the given attributes.
+     *
+     * @param file the file to look up
+     * @param size the current size of the file in bytes
+     * @param lastModified the current last modification time of the file, in epoch milliseconds
+     * @return the cached {@link Fingerprint}, or {@code null} if there is none or it's outdated
+     */
+    public @Nullable Fingerprint get(@NotNull File file, long size, long lastModified) {
+        Fingerprint fingerprint = fingerprints.get(file.getAbsolutePath());
+        return fingerprint != null && fingerprint.matches(size, lastModified) ? fingerprint : null;
+    }
+
+    /**
+     * Stores the fingerprint of the given file, replacing any previous one.
+     *
+     * @param file the file the fingerprint describes
+     * @param fingerprint the fingerprint to store
+     */
+    public void put(@NotNull File file, @NotNull Fingerprint fingerprint) {
+        String path = file.getAbsolutePath();
+        if (!fingerprint.equals(fingerprints.put(path, fingerprint)))
+            changed.add(path);
+    }
+
+    /**
+     * Removes the fingerprint of the given file, if present.
+     *
+     * @param file the file whose fingerprint should be removed
+     */
+    public void remove(@NotNull File file) {
+        String path = file.getAbsolutePath();
+        if (fingerprints.remove(path) != null)
+            changed.add(path);
+    }
+
+    /**
+     * Removes every fingerprint from the store. The data files are emptied on the next {@link #save()}.
+     */
+    public void clear() {
+        if (fingerprints.isEmpty()) return;
+
+        fingerprints.clear();
+        rewrite = true;
+    }
+
+    /**
+     * Saves the fingerprints changed since the last save.
+     * <p>
+     * The changed entries are appended to the journal, which is compacted afterward, if it has grown larger
+     * than the snapshot. If the store has been cleared, its perceptual hashes dropped, or there is no journal
+     * to append to yet, the whole store is written to a new snapshot instead.
+     * </p>
+     *
+     * @throws IOException if an error occurs while writing the journal or the snapshot
+     */
+    public synchronized void save() throws IOException {
+        if (!rewrite && changed.isEmpty()) return;
+
+        if (rewrite || journal == null) {
+            compact();
+            return;
+        }
+
+        int count = appendChanges();
+        log.debug("Fingerprints journaled. Changed: {}", count);
+
+        if (journal.size() > Math.max(MIN_COMPACTION_SIZE, snapshotSize)) compact();
+    }
+
+    /**
+     * Writes the whole store to a new snapshot, and starts an empty journal.
+     * <p>
+     * Both files are first written to temporary files, which then atomically replace the current ones.
+     * The snapshot is replaced first, so a crash in between leaves a stale journal, which is ignored on the next load.
+     * </p>
+     *
+     * @throws IOException if an error occurs while writing the snapshot or the journal
+     */
+    private void compact() throws IOException {
+        // Entries changed from now on are journaled on top of the new snapshot, even if they make it in.
+        rewrite = false;
+        changed.clear();
+
+        try {
+            long next = generation + 1;
+            writeSnapshot(next);
+            generation = next;
+            resetJournal();
+        } catch (IOException e) {
+            rewrite = true;
+            throw e;
+        }
+
+        log.info("Fingerprints saved successfully. Stored: {}", fingerprints.size());
+    }
+
+    /**
+     * Appends the entries changed since the last save to the journal, forcing them to the storage device.
+     * The entries are split into as many records as needed to keep each of them within {@link #MAX_RECORD_SIZE},
+     * the largest record a replay accepts.
+     *
+     * @return the number of journaled entries
+     * @throws IOException if an error occurs while writing the journal
+     */
+    private int appendChanges() throws IOException {
+        List<String> paths = new ArrayList<>(changed);
+        changed.removeAll(paths);
+
+        long position = journal.size();
+        try {
+            int from = 0;
+            while (from < paths.size()) {
+                // Every character takes at most three bytes in the modified UTF-8 written by writeUTF.
+                int to = from, size = Integer.BYTES;
+                while (to < paths.size() && size + entrySize(paths.get(to)) <= MAX_RECORD_SIZE) {
+                    size += entrySize(paths.get(to));
+                    to++;
+                }
+                writeRecord(paths.subList(from, to));
+                from = to;
+            }
+            journal.force(false);
+        } catch (IOException e) {
+            // Cuts the records of a partially written save, so later records aren't appended behind garbage.
+            journal.truncate(position);
+            changed.addAll(paths);
+            throw e;
+        }
+
+        return paths.size();
+    }
+
+    /**
+     * Returns the largest size the journal entry of the given path can take.
+     *
+     * @param path the absolute path of the file
+     * @return the size of the entry, in bytes
+     */
+    private int entrySize(@NotNull String path) {
+        return Byte.BYTES + Short.BYTES + 3 * path.length() + MAX_FINGERPRINT_SIZE;
+    }
+
+    /**
+     * Writes a single record at the end of the journal, without forcing it to the storage device.
+     * Every entry holds the current fingerprint of its file, or removes it, if the store no longer holds one.
+     *
+     * @param paths the paths of the changed entries, few enough to fit in a single record
+     * @throws IOException if an error occurs while writing the journal
+     */
+    private void writeRecord(@NotNull List<String> paths) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(paths.size());
+            for (String path : paths) {
+                Fingerprint fingerprint = fingerprints.get(path);
+                if (fingerprint == null) {
+                    out.writeByte(REMOVE);
+                    out.writeUTF(path);
+                } else {
+                    out.writeByte(PUT);
+                    writeEntry(out, path, fingerprint);
+                }
+            }
+        }
+        byte[] payload = bytes.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length)
+            .putInt(payload.length)
+            .putInt((int) crc.getValue())
+            .put(payload)
+            .flip();
+        while (record.hasRemaining()) journal.write(record);
+    }
+
+    /**
+     * Writes the whole store to the snapshot, atomically replacing the previous one.
+     *
+     * @param snapshotGeneration the generation of the new snapshot
+     * @throws IOException if an error occurs while writing the snapshot
+     */
+    private void writeSnapshot(long snapshotGeneration) throws IOException {
+        Path tempFile = dataFile.resolveSibling(DATA_FILE_NAME + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(tempFile.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            Map<String, Fingerprint> snapshot = Map.copyOf(fingerprints);
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(snapshotGeneration);
+            out.writeInt(perceptualHashVersion);
+            ChecksumAlgorithm[] algorithms = ChecksumAlgorithm.values();
+            out.writeByte(algorithms.length);
+            for (ChecksumAlgorithm algorithm : algorithms) out.writeUTF(algorithm.getName());
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, Fingerprint> entry : snapshot.entrySet()) {
+                writeEntry(out, entry.getKey(), entry.getValue());
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+
+        Files.move(tempFile, dataFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        snapshotSize = Files.size(dataFile);
+    }
+
+    /**
+     * Reads all fingerprints from the snapshot, if it exists, and replays the journal on top of it.
+     * <p>
+     * Journal entries refer to checksum algorithms by their index in the header of the snapshot,
+     * so if the supported algorithms changed since the snapshot was written, the store is rewritten on the next save.
+     * </p>
+     *
+     * @throws IOException if the snapshot or the journal is unreadable, or the snapshot has an unknown format
+     */
+    private void load() throws IOException {
+        if (Files.notExists(dataFile)) return;
+
+        int version;
+        ChecksumAlgorithm[] algorithms = { ChecksumAlgorithm.CRC32 };
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(dataFile)))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException("Unsupported fingerprint file format.");
+            version = in.readInt();
+            if (version < MIN_VERSION || version > VERSION)
+                throw new IOException("Unsupported fingerprint file version: " + version);
+
+            // Before version 6, there was no journal, so every snapshot is of the first generation.
+            if (version >= 6) generation = in.readLong();
+            // Before version 5, a single algorithm was recorded for the whole store, and before version 3, it was CRC32.
+            if (version == 3 || version == 4) algorithms[0] = readChecksumAlgorithm(in);
+            if (version >= 4) perceptualHashVersion = in.readInt();
+            if (version >= 5) {
+                algorithms = new ChecksumAlgorithm[in.readUnsignedByte()];
+                for (int i = 0; i < algorithms.length; i++) algorithms[i] = findChecksumAlgorithm(in.readUTF());
+            }
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                fingerprints.put(path, readFingerprint(in, version >= 5 ? null : algorithms[0], algorithms));
+            }
+        }
+        snapshotSize = Files.size(dataFile);
+
+        if (version >= 6) {
+            replayJournal(algorithms);
+            if (!Arrays.equals(algorithms, ChecksumAlgorithm.values())) rewrite = true;
+        }
+
+        log.info("Fingerprints loaded. Found: {}", fingerprints.size());
+    }
+
+    /**
+     * Replays the journal on top of the snapshot, then opens it for appending.
+     * <p>
+     * Replaying stops at the first incomplete or damaged record, and the journal is cut back to the last complete one.
+     * A journal of another generation than the snapshot, or one without a valid header, is left closed,
+     * so it's replaced on the next save.
+     * </p>
+     *
+     * @param algorithms the algorithms listed in the header of the snapshot
+     * @throws IOException if an error occurs while reading or opening the journal
+     */
+    private void replayJournal(@Nullable ChecksumAlgorithm @NotNull [] algorithms) throws IOException {
+        if (Files.notExists(journalFile)) return;
+
+        FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (!hasJournalHeader(channel)) {
+                log.warn("Fingerprint journal: {} doesn't belong to the current snapshot, discarding it.", journalFile);
+                channel.close();
+                return;
+            }
+
+            long valid = replayRecords(channel, algorithms);
+            if (valid < channel.size()) {
+                log.warn("Fingerprint journal: {} ends with a damaged record, discarding {} bytes.", journalFile, channel.size() - valid);
+                channel.truncate(valid);
+                channel.force(false);
+            }
+            channel.position(valid);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        journal = channel;
+    }
+
+    /**
+     * Checks whether the journal starts with a valid header of the current generation.
+     *
+     * @param channel the journal
+     * @return {@code true} if the header is valid, {@code false} otherwise
+     * @throws IOException if an error occurs while reading the journal
+     */
+    private boolean hasJournalHeader(@NotNull FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(JOURNAL_HEADER_SIZE);
+        if (!readFully(channel, header, 0)) return false;
+
+        return header.getInt() == JOURNAL_MAGIC
+            && header.getInt() == VERSION
+            && header.getLong() == generation;
+    }
+
+    /**
+     * Applies every complete record of the journal to the store.
+     *
+     * @param channel the journal
+     * @param algorithms the algorithms listed in the header of the snapshot
+     * @return the position right after the last complete record
+     * @throws IOException if an error occurs while reading the journal
+     */
+    private long replayRecords(
+        @NotNull FileChannel channel,
+        @Nullable ChecksumAlgorithm @NotNull [] algorithms
+    ) throws IOException {
+        long position = JOURNAL_HEADER_SIZE;
+        int records = 0;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+
+        records:
+        while (readFully(channel, header.clear(), position)) {
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length < 0 || length > MAX_RECORD_SIZE) break;
+
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            if (!readFully(channel, payload, position + RECORD_HEADER_SIZE)) break;
+
+            CRC32 crc = new CRC32();
+            crc.update(payload.array());
+            if ((int) crc.getValue() != checksum) break;
+
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload.array()))) {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    byte operation = in.readByte();
+                    if (operation != PUT && operation != REMOVE) break records;
+
+                    String path = in.readUTF();
+                    if (operation == PUT) fingerprints.put(path, readFingerprint(in, null, algorithms));
+                    else fingerprints.remove(path);
+                }
+            }
+
+            position += RECORD_HEADER_SIZE + length;
+            records++;
+        }
+
+        log.debug("Replayed {} fingerprint journal records.", records);
+        return position;
+    }
+
+    /**
+     * Reads from the channel at the given position until the buffer is full, or the end of the channel is reached.
+     *
+     * @param channel the channel to read from
+     * @param buffer the buffer to fill, flipped for reading afterward
+     * @param position the position to start reading at
+     * @return {@code true} if the buffer has been filled, {@code false} if the channel ended first
+     * @throws IOException if an error occurs while reading
+     */
+    private boolean readFully(@NotNull FileChannel channel, @NotNull ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) return false;
+        }
+        buffer.flip();
+        return true;
+    }
+
+    /**
+     * Replaces the journal by an empty one of the current generation, and opens it for appending.
+     *
+     * @throws IOException if an error occurs while writing the journal
+     */
+    private void resetJournal() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+
+        Path tempFile = journalFile.resolveSibling(JOURNAL_FILE_NAME + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(JOURNAL_HEADER_SIZE)
+                .putInt(JOURNAL_MAGIC)
+                .putInt(VERSION)
+                .putLong(generation)
+                .flip();
+            while (header.hasRemaining()) channel.write(header);
+            channel.force(false);
+        }
+        Files.move(tempFile, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        journal = FileChannel.open(journalFile, StandardOpenOption.WRITE);
+        journal.position(journal.size());
+    }
+
+    /**
+     * Reads the name of the checksum algorithm from the given stream.
+     *
+     * @param in the stream to read from
+     * @return the read {@link ChecksumAlgorithm}
+     * @throws IOException if an error occurs while reading, or the algorithm is unknown
+     */
+    private @NotNull ChecksumAlgorithm readChecksumAlgorithm(@NotNull DataInputStream in) throws IOException {
+        String name = in.readUTF();
+        try {
+            return ChecksumAlgorithm.fromName(name);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown checksum algorithm: " + name, e);
+        }
+    }
+
+    /**
+     * Returns the checksum algorithm with the given name, if it's still supported.
+     *
+     * @param name the name of the algorithm
+     * @return the {@link ChecksumAlgorithm}, or {@code null} if no algorithm has the given name
+     */
+    private @Nullable ChecksumAlgorithm findChecksumAlgorithm(@NotNull String name) {
+        return Arrays.stream(ChecksumAlgorithm.values())
+            .filter(algorithm -> algorithm.getName().equals(name))
+            .findFirst()
+            .orElse(null);
+    }
+
+    /**
+     * Writes a single store entry to the given stream.
+     * The checksum algorithm is written as its index in {@link ChecksumAlgorithm#values()},
+     * whose names are listed in the header.
+     *
+     * @param out the stream to write to
+     * @param path the absolute path of the file
+     * @param fingerprint the fingerprint of the file
+     * @throws IOException if an error occurs while writing
+     */
+    private void writeEntry(@NotNull DataOutputStream out, @NotNull String path, @NotNull Fingerprint fingerprint) throws IOException {
+        byte flags = 0;
+        if (fingerprint.checksum() != null) flags |= HAS_CHECKSUM;
+        if (fingerprint.perceptualHash() != null) flags |= HAS_PERCEPTUAL_HASH;
+        if (fingerprint.partialHash() != null) flags |= HAS_PARTIAL_HASH;
+        if (fingerprint.checksumAlgorithm() != null) flags |= HAS_CHECKSUM_ALGORITHM;
+
+        out.writeUTF(path);
+        out.writeLong(fingerprint.size());
+        out.writeLong(fingerprint.lastModified());
+        out.writeByte(flags);
+        if (fingerprint.checksumAlgorithm() != null) out.writeByte(fingerprint.checksumAlgorithm().ordinal());
+        if (fingerprint.checksum() != null) out.writeLong(fingerprint.checksum());
+        if (fingerprint.perceptualHash() != null) out.writeLong(fingerprint.perceptualHash());
+        if (fingerprint.partialHash() != null) out.writeLong(fingerprint.partialHash());
+    }
+
+    /**
+     * Reads a single fingerprint from the given stream.
+     *
+     * @param in the stream to read from
+     * @param storeAlgorithm the algorithm of every checksum in files older than version 5,
+     *                       or {@code null} if every entry records its own algorithm
+     * @param algorithms the algorithms listed in the header, indexed as written by the entries,
+     *                   with {@code null} in place of the ones no longer supported
+     * @return the read {@link Fingerprint}, without the checksums computed by an unsupported algorithm
+     * @throws IOException if an error occurs while reading, or the algorithm index is unknown
+     */
+    private @NotNull Fingerprint readFingerprint(
+        @NotNull DataInputStream in,
+        @Nullable ChecksumAlgorithm storeAlgorithm,
+        @Nullable ChecksumAlgorithm @NotNull [] algorithms
+    ) throws IOException {
+        long size = in.readLong();
+        long lastModified = in.readLong();
+        byte flags = in.readByte();
+        ChecksumAlgorithm algorithm = null;
+        if ((flags & HAS_CHECKSUM_ALGORITHM) != 0) {
+            int index = in.readUnsignedByte();
+            if (index >= algorithms.length)
+                throw new IOException("Unknown checksum algorithm index: " + index);
+            algorithm = algorithms[index];
+        } else if (storeAlgorithm != null && (flags & (HAS_CHECKSUM | HAS_PARTIAL_HASH)) != 0) {
+            algorithm = storeAlgorithm;
+        }
+        Long checksum = (flags & HAS_CHECKSUM) != 0 ? in.readLong() : null;
+        Long perceptualHash = (flags & HAS_PERCEPTUAL_HASH) != 0 ? in.readLong() : null;
+        Long partialHash = (flags & HAS_PARTIAL_HASH) != 0 ? in.readLong() : null;
+
+        if (algorithm == null) {
+            checksum = null;
+            partialHash = null;
+        }
+
+        return new Fingerprint(size, lastModified, algorithm, partialHash, checksum, perceptualHash);
+    }
+}
@@ -0,0 +1,147 @@
+package pl.magzik.picture_comparer_fx.service.comparison;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.function.IntConsumer;
+
+/**
+ * A BK-tree over 64-bit hashes, answering "all hashes within a Hamming distance" queries.
+ * <p>
+ * Every node holds a distinct hash and the identifiers of all entries sharing it. Children are keyed by their
+ * distance to the parent, and the triangle inequality lets a query skip every subtree whose key lies outside
+ * {@code [d - radius, d + radius]}, where {@code d} is the distance between the query and the parent.
+ * For the small radii used in near-duplicate search, this keeps lookups far below a linear scan.
+ * </p>
+ * <p>
+ * This class is not thread-safe.
+ * </p>
+ */
+public class HammingIndex {
+
+    private Node root;
+
+    private int size;
+
+    /**
+     * Adds an entry with the given hash to the index.
+     *
+     * @param hash the 64-bit hash of the entry
+     * @param id the identifier of the entry, reported back by {@link #search(long, int, IntConsumer)}
+     */
+    public void add(long hash, int id) {
+        size++;
+        if (root == null) {
+            root = new Node(hash, id);
+            return;
+        }
+
+        Node node = root;
+        while (true) {
+            int distance = distance(hash, node.hash);
+            if (distance == 0) {
+                node.addId(id);
+                return;
+            }
+
+            Node child = node.child(distance);
+            if (child == null) {
+                node.addChild(distance, new Node(hash, id));
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Reports every entry whose hash is within the given Hamming distance of the query.
+     *
+     * @param hash the query hash
+     * @param radius the maximum Hamming distance, inclusive
+     * @param consumer the consumer receiving identifiers of matching entries
+     */
+    public void search(long hash, int radius, @NotNull IntConsumer consumer) {
+        if (root == null) return;
+
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            int distance = distance(hash, node.hash);
+            if (distance <= radius) node.forEachId(consumer);
+
+            for (int i = 0; i < node.childCount; i++) {
+                if (Math.abs(node.childDistances[i] - distance) <= radius) stack.push(node.children[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of entries in the index.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Computes the Hamming distance between two 64-bit hashes.
+     *
+     * @param a the first hash
+     * @param b the second hash
+     * @return the number of differing bits
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /**
+     * A single node of the tree, with children stored in compact parallel arrays.
+     */
+    private static final class Node {
+        private final long hash;
+
+        private int[] ids;
+        private int idCount;
+
+        private byte[] childDistances;
+        private Node[] children;
+        private int childCount;
+
+        private Node(long hash, int id) {
+            this.hash = hash;
+            this.ids = new int[] { id };
+            this.idCount = 1;
+        }
+
+        private void addId(int id) {
+            if (idCount == ids.length) ids = Arrays.copyOf(ids, idCount * 2);
+            ids[idCount++] = id;
+        }
+
+        private void forEachId(@NotNull IntConsumer consumer) {
+            for (int i = 0; i < idCount; i++) consumer.accept(ids[i]);
+        }
+
+        private Node child(int distance) {
+            for (int i = 0; i < childCount; i++)
+                if (childDistances[i] == distance) return children[i];
+            return null;
+        }
+
+        private void addChild(int distance, @NotNull Node child) {
+            if (children == null) {
+                childDistances = new byte[2];
+                children = new Node[2];
+            } else if (childCount == children.length) {
+                childDistances = Arrays.copyOf(childDistances, childCount * 2);
+                children = Arrays.copyOf(children, childCount * 2);
+            }
+            childDistances[childCount] = (byte) distance;
+            children[childCount++] = child;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package pl.magzik.picture_comparer_fx.service.comparison;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import pl.magzik.picture_comparer_fx.base.metrics.MetricsRegistry;
+import pl.magzik.picture_comparer_fx.base.metrics.Timer;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.event.IIOReadProgressListener;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+
+/**
+ * Decodes image files, optionally at a reduced resolution.
+ * <p>
+ * Reduced decoding uses {@link ImageReadParam#setSourceSubsampling(int, int, int, int)}, so only every n-th pixel
+ * of every n-th row ever reaches the heap. For algorithms that only need a small thumbnail, this cuts
+ * the size of the decoded raster by the square of the subsampling factor.
+ * </p>
+ * <p>
+ * Thumbnails are taken from the thumbnail embedded in the image file when it is large enough,
+ * which skips decoding the image itself.
+ * </p>
+ * <p>
+ * Decoding is aborted as soon as the decoding thread is interrupted, so a cancelled comparison
+ * doesn't keep decoding a large image to the end. An aborted decoding throws an {@link InterruptedIOException}.
+ * </p>
+ * <p>
+ * This class is stateless and thread-safe.
+ * </p>
+ */
+public class ImageDecoder {
+
+    private static final Timer DECODE_TIMER = MetricsRegistry.getInstance().timer("decode");
+
+    /**
+     * Decodes the given image file at full resolution.
+     *
+     * @param file the image file
+     * @return the decoded image
+     * @throws IOException if the file cannot be read or is not a supported image
+     */
+    public @NotNull BufferedImage read(@NotNull File file) throws IOException {
+        return decode(file, 0);
+    }
+
+    /**
+     * Reads the dimensions of the given image file from its header, without decoding any pixels.
+     *
+     * @param file the image file
+     * @return the width and height of the image
+     * @throws IOException if the file cannot be read or is not a supported image
+     */
+    public @NotNull Dimension dimensions(@NotNull File file) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            ImageReader reader = reader(file, input);
+            try {
+                reader.setInput(input, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Decodes the given image file, subsampled so that its shorter side is still at least the given size.
+     * <p>
+     * Images whose shorter side is already smaller than twice the given size are decoded at full resolution.
+     * </p>
+     *
+     * @param file the image file
+     * @param minSize the minimal length of the shorter side of the decoded image, in pixels
+     * @return the decoded image
+     * @throws IOException if the file cannot be read or is not a supported image
+     */
+    public @NotNull BufferedImage readSubsampled(@NotNull File file, int minSize) throws IOException {
+        return decode(file, minSize);
+    }
+
+    /**
+     * Reads a thumbnail of the given image file, whose shorter side is at least the given size.
+     * <p>
+     * The smallest thumbnail embedded in the file that is still large enough is used, if the format supports them.
+     * Otherwise, the image is decoded subsampled, see {@link #readSubsampled(File, int)}.
+     * The returned image is not scaled down to the given size, which is left to the caller.
+     * </p>
+     *
+     * @param file the image file
+     * @param minSize the minimal length of the shorter side of the thumbnail, in pixels
+     * @return the thumbnail
+     * @throws IOException if the file cannot be read or is not a supported image
+     */
+    public @NotNull BufferedImage readThumbnail(@NotNull File file, int minSize) throws IOException {
+        BufferedImage embedded = readEmbeddedThumbnail(file, minSize);
+        return embedded != null ? embedded : decode(file, minSize);
+    }
+
+    /**
+     * Reads the smallest thumbnail embedded in the given image file whose shorter side is at least the given size.
+     *
+     * @param file the image file
+     * @param minSize the minimal length of the shorter side of the thumbnail, in pixels
+     * @return the thumbnail, or {@code null} if the file has no thumbnail large enough
+     * @throws IOException if the file cannot be read or is not a supported image
+     */
+    private @Nullable BufferedImage readEmbeddedThumbnail(@NotNull File file, int minSize) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            ImageReader reader = reader(file, input);
+            try {
+                reader.setInput(input, true, true);
+                if (!reader.readerSupportsThumbnails()) return null;
+
+                int best = -1, bestSize = Integer.MAX_VALUE;
+                for (int i = 0; i < reader.getNumThumbnails(0); i++) {
+                    int size = Math.min(reader.getThumbnailWidth(0, i), reader.getThumbnailHeight(0, i));
+                    if (size >= minSize && size < bestSize) {
+                        best = i;
+                        bestSize = size;
+                    }
+                }
+
+                return best < 0 ? null : reader.readThumbnail(0, best);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Decodes the given image file, aborting as soon as the current thread is interrupted.
+     *
+     * @param file the image file
+     * @param minSize the minimal length of the shorter side of the decoded image, in pixels,
+     *                or {@code 0} to decode the image at full resolution
+     * @return the decoded image
+     * @throws IOException if the file cannot be read or is not a supported image
+     * @throws InterruptedIOException if the current thread has been interrupted while decoding
+     */
+    private @NotNull BufferedImage decode(@NotNull File file, int minSize) throws IOException {
+        try (Timer.Context ignored = DECODE_TIMER.start();
+             ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            ImageReader reader = reader(file, input);
+            try {
+                reader.setInput(input, true, true);
+                reader.addIIOReadProgressListener(AbortOnInterrupt.INSTANCE);
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (minSize > 0) {
+                    int factor = Math.max(1, Math.min(reader.getWidth(0), reader.getHeight(0)) / minSize);
+                    param.setSourceSubsampling(factor, factor, 0, 0);
+                }
+
+                BufferedImage image = reader.read(0, param);
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Decoding of " + file + " interrupted.");
+                return image;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Finds a reader able to decode the given stream.
+     *
+     * @param file the image file, used for error messages
+     * @param input the stream of the image file, or {@code null} if it couldn't be opened
+     * @return the {@link ImageReader}, which must be disposed after use
+     * @throws IOException if the stream couldn't be opened or no reader supports it
+     */
+    private @NotNull ImageReader reader(@NotNull File file, ImageInputStream input) throws IOException {
+        if (input == null) throw new IOException("Couldn't open image file: " + file);
+
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) throw new IOException("Unsupported image format: " + file);
+        return readers.next();
+    }
+
+    /**
+     * Aborts the reading of an image once the reading thread is interrupted.
+     * Readers report their progress every few rows, so the abort takes effect long before the whole image is decoded.
+     */
+    private static final class AbortOnInterrupt implements IIOReadProgressListener {
+        private static final AbortOnInterrupt INSTANCE = new AbortOnInterrupt();
+
+        @Override
+        public void imageStarted(ImageReader source, int imageIndex) {
+            abortIfInterrupted(source);
+        }
+
+        @Override
+        public void imageProgress(ImageReader source, float percentageDone) {
+            abortIfInterrupted(source);
+        }
+
+        private void abortIfInterrupted(@NotNull ImageReader source) {
+            if (Thread.currentThread().isInterrupted()) source.abort();
+        }
+
+        @Override
+        public void sequenceStarted(ImageReader source, int minIndex) {}
+
+        @Override
+        public void sequenceComplete(ImageReader source) {}
+
+        @Override
+        public void imageComplete(ImageReader source) {}
+
+        @Override
+        public void thumbnailStarted(ImageReader source, int imageIndex, int thumbnailIndex) {}
+
+        @Override
+        public void thumbnailProgress(ImageReader source, float percentageDone) {}
+
+        @Override
+        public void thumbnailComplete(ImageReader source) {}
+
+        @Override
+        public void readAborted(ImageReader source) {}
+    }
+}
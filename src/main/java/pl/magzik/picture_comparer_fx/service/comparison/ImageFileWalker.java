@@ -0,0 +1,451 @@
+package pl.magzik.picture_comparer_fx.service.comparison;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.magzik.picture_comparer_fx.base.metrics.Counter;
+import pl.magzik.picture_comparer_fx.base.metrics.MetricsRegistry;
+import pl.magzik.picture_comparer_fx.base.metrics.Timer;
+
+import javax.imageio.ImageIO;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Walks a directory tree and reports every image file as soon as it is discovered.
+ * <p>
+ * Unlike a batch loader, this walker never collects the whole tree in memory, which lets the following
+ * comparison stages start working while the walk is still in progress.
+ * A file is considered an image if its extension is supported by one of the installed {@link ImageIO} readers,
+ * and, for the formats with a known signature, if its content starts with the signature of one of them,
+ * so files merely named like images are skipped before anything tries to hash or decode them.
+ * Unreadable files and directories are logged and skipped.
+ * </p>
+ * <p>
+ * The walk stops with an {@link InterruptedIOException} before entering the next directory
+ * once the walking thread is interrupted.
+ * </p>
+ * <p>
+ * When the files are needed all at once rather than as they're discovered, {@link #collect(Collection)}
+ * walks the tree in parallel instead, on the {@link ForkJoinPool} of the walker.
+ * Every directory is a separate task, forked for each subdirectory, so idle workers steal whole subtrees
+ * from busy ones. Each task filters the images of its own directory, reading their signatures
+ * as part of the same blocking operation as the listing, and the results are merged
+ * along the tree of tasks once they're joined, so the workers never contend for a shared collection.
+ * Listing a directory blocks in {@link ForkJoinPool#managedBlock(ForkJoinPool.ManagedBlocker)},
+ * which lets the pool start compensating workers meanwhile, so slow file systems, such as network mounts,
+ * still have many listings in flight.
+ * </p>
+ */
+public class ImageFileWalker {
+
+    private static final Logger log = LoggerFactory.getLogger(ImageFileWalker.class);
+
+    private static final Timer WALK_TIMER = MetricsRegistry.getInstance().timer("walk");
+
+    private static final Counter WALKED_FILES = MetricsRegistry.getInstance().counter("walk.files");
+
+    private static final Set<String> IMAGE_EXTENSIONS = Arrays.stream(ImageIO.getReaderFileSuffixes())
+        .map(suffix -> suffix.toLowerCase(Locale.ROOT))
+        .collect(Collectors.toUnmodifiableSet());
+
+    private static final Set<String> SIGNED_EXTENSIONS = Set.of("jpg", "jpeg", "png", "gif", "bmp", "tif", "tiff");
+
+    private static final byte[][] IMAGE_SIGNATURES = {
+        { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF },               // JPEG
+        { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' },  // PNG
+        { 'G', 'I', 'F', '8' },                                  // GIF
+        { 'B', 'M' },                                            // BMP
+        { 'I', 'I', '*', 0 },                                    // TIFF, little-endian
+        { 'M', 'M', 0, '*' },                                    // TIFF, big-endian
+    };
+
+    private static final int SIGNATURE_LENGTH = 8;
+
+    private final int maxDepth;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructs an {@link ImageFileWalker} descending at most the given number of directory levels.
+     *
+     * @param maxDepth the maximum number of directory levels to visit, {@code 1} visits only the direct children
+     * @param pool the {@link ForkJoinPool} running the parallel walks
+     */
+    public ImageFileWalker(int maxDepth, @NotNull ForkJoinPool pool) {
+        this.maxDepth = maxDepth;
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the maximum number of directory levels this walker visits.
+     *
+     * @return the maximum depth, {@code 1} if only the direct children of the root are visited
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Walks the given root and passes every discovered image file to the consumer.
+     * If the root is a regular file, only that file is considered.
+     *
+     * @param root the directory or file to walk
+     * @param consumer the consumer receiving discovered image files, in discovery order
+     * @throws IOException if the root cannot be walked
+     * @throws InterruptedIOException if the walking thread has been interrupted
+     */
+    public void walk(@NotNull File root, @NotNull Consumer<File> consumer) throws IOException {
+        walk(root, consumer, maxDepth);
+    }
+
+    /**
+     * Walks the given root, descending at most the given number of directory levels,
+     * and passes every discovered image file to the consumer.
+     *
+     * @param root the directory or file to walk
+     * @param consumer the consumer receiving discovered image files, in discovery order
+     * @param maxDepth the maximum number of directory levels to visit below the root
+     * @throws IOException if the root cannot be walked
+     * @throws InterruptedIOException if the walking thread has been interrupted
+     */
+    void walk(@NotNull File root, @NotNull Consumer<File> consumer, int maxDepth) throws IOException {
+        walk(root, consumer, maxDepth, (dir, attrs) -> true, (dir, lastModified, images) -> {});
+    }
+
+    /**
+     * Walks the given root, descending at most the given number of directory levels, and passes every discovered
+     * image file to the consumer, skipping the subtrees of the directories rejected by the filter.
+     * <p>
+     * Every directory walked completely, with its whole subtree within the depth, is reported to the listener
+     * along with the images directly inside it, once its subtree is done.
+     * Directories that couldn't be listed, and the ones the walk was interrupted in, are never reported.
+     * </p>
+     *
+     * @param root the directory or file to walk
+     * @param consumer the consumer receiving discovered image files, in discovery order
+     * @param maxDepth the maximum number of directory levels to visit below the root
+     * @param filter the filter deciding whether a directory is listed, given its attributes read before listing it
+     * @param listener the listener receiving every directory walked completely
+     * @throws IOException if the root cannot be walked
+     * @throws InterruptedIOException if the walking thread has been interrupted
+     */
+    void walk(
+        @NotNull File root,
+        @NotNull Consumer<File> consumer,
+        int maxDepth,
+        @NotNull BiPredicate<Path, BasicFileAttributes> filter,
+        @NotNull DirectoryListener listener
+    ) throws IOException {
+        try (Timer.Context ignored = WALK_TIMER.start()) {
+            walkTree(root, consumer, maxDepth, filter, listener);
+        }
+    }
+
+    private void walkTree(
+        @NotNull File root,
+        @NotNull Consumer<File> consumer,
+        int maxDepth,
+        @NotNull BiPredicate<Path, BasicFileAttributes> filter,
+        @NotNull DirectoryListener listener
+    ) throws IOException {
+        Deque<Directory> directories = new ArrayDeque<>();
+
+        Files.walkFileTree(root.toPath(), EnumSet.noneOf(FileVisitOption.class), maxDepth, new SimpleFileVisitor<>() {
+            @Override
+            public @NotNull FileVisitResult preVisitDirectory(@NotNull Path dir, @NotNull BasicFileAttributes attrs) throws IOException {
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Walk of " + root + " interrupted.");
+                if (!filter.test(dir, attrs)) return FileVisitResult.SKIP_SUBTREE;
+
+                directories.push(new Directory(dir, attrs.lastModifiedTime().toMillis(), new ArrayList<>()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public @NotNull FileVisitResult visitFile(@NotNull Path file, @NotNull BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && isImageFile(file) && hasImageContent(file)) {
+                    WALKED_FILES.increment();
+                    if (!directories.isEmpty()) directories.peek().images().add(file.toFile());
+                    consumer.accept(file.toFile());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public @NotNull FileVisitResult visitFileFailed(@NotNull Path file, @NotNull IOException e) {
+                log.warn("Skipping unreadable path: {}", file, e);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public @NotNull FileVisitResult postVisitDirectory(@NotNull Path dir, @Nullable IOException e) {
+                Directory directory = directories.pop();
+                if (e != null) log.warn("Skipping unreadable path: {}", dir, e);
+                else listener.walked(directory.path(), directory.lastModified(), directory.images());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * A directory being walked.
+     *
+     * @param path the directory
+     * @param lastModified the modification time of the directory read before listing it, in epoch milliseconds
+     * @param images the images found directly inside the directory so far
+     */
+    private record Directory(@NotNull Path path, long lastModified, @NotNull List<File> images) {}
+
+    /**
+     * A listener receiving the directories walked completely by {@link #walk(File, Consumer, int, BiPredicate, DirectoryListener)}.
+     */
+    @FunctionalInterface
+    interface DirectoryListener {
+        /**
+         * Called once the given directory and its whole subtree have been walked.
+         *
+         * @param dir the directory
+         * @param lastModified the modification time of the directory read before listing it, in epoch milliseconds
+         * @param images the images directly inside the directory
+         */
+        void walked(@NotNull Path dir, long lastModified, @NotNull List<File> images);
+    }
+
+    /**
+     * Collects every image file under the given roots, walking their trees in parallel.
+     * <p>
+     * Roots that are regular files are collected as they are, and symbolic links below the roots are not followed.
+     * The files of every directory are kept together, and the directories are ordered depth-first,
+     * though the files within a directory are in no particular order.
+     * </p>
+     *
+     * @param roots the directories or files to walk
+     * @return the discovered image files
+     * @throws InterruptedIOException if the walking thread has been interrupted
+     * @throws IOException if the walk fails unexpectedly
+     */
+    public @NotNull List<File> collect(@NotNull Collection<File> roots) throws IOException {
+        try (Timer.Context ignored = WALK_TIMER.start()) {
+            List<Node> nodes = walkParallel(roots);
+
+            List<File> files = new ArrayList<>(nodes.stream().mapToInt(Node::total).sum());
+            nodes.forEach(node -> node.flatten(files));
+            WALKED_FILES.add(files.size());
+            return files;
+        }
+    }
+
+    /**
+     * Walks the given roots on the pool, and waits for the tree of results.
+     * Interrupting the waiting thread stops the workers before they list their next directory.
+     *
+     * @param roots the directories or files to walk
+     * @return the results of the roots, in the order of the roots
+     * @throws IOException if the walk fails unexpectedly, or has been interrupted
+     */
+    private @NotNull List<Node> walkParallel(@NotNull Collection<File> roots) throws IOException {
+        Walk walk = new Walk();
+        List<DirectoryTask> tasks = roots.stream()
+            .map(root -> new DirectoryTask(walk, root.toPath(), -1))
+            .toList();
+
+        ForkJoinTask<List<Node>> all = pool.submit(() -> ForkJoinTask.invokeAll(tasks).stream().map(ForkJoinTask::join).toList());
+        try {
+            return all.get();
+        } catch (InterruptedException e) {
+            walk.cancelled = true;
+            all.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Walk interrupted.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            if (e.getCause() instanceof Error err) throw err;
+            throw new IOException("Walk failed.", e.getCause());
+        }
+    }
+
+    /**
+     * The state shared by the tasks of a single parallel walk.
+     */
+    private static final class Walk {
+        private volatile boolean cancelled;
+    }
+
+    /**
+     * The images found in a single directory, and the results of its subdirectories.
+     *
+     * @param files the images of the directory
+     * @param children the results of the subdirectories
+     * @param total the number of images in the whole subtree
+     */
+    private record Node(@NotNull List<File> files, @NotNull List<Node> children, int total) {
+
+        private static final Node EMPTY = new Node(List.of(), List.of(), 0);
+
+        private void flatten(@NotNull List<File> target) {
+            target.addAll(files);
+            children.forEach(child -> child.flatten(target));
+        }
+    }
+
+    /**
+     * Lists a single directory, filters its images, and forks a task for every subdirectory within the depth.
+     * A root is given the depth {@code -1}, since it may be a regular file rather than a directory.
+     */
+    private final class DirectoryTask extends RecursiveTask<Node> {
+        private final Walk walk;
+
+        private final Path path;
+
+        private final int depth;
+
+        private DirectoryTask(@NotNull Walk walk, @NotNull Path path, int depth) {
+            this.walk = walk;
+            this.path = path;
+            this.depth = depth;
+        }
+
+        @Override
+        protected @NotNull Node compute() {
+            if (walk.cancelled) return Node.EMPTY;
+
+            if (depth < 0) {
+                BasicFileAttributes attrs = readAttributes(path);
+                if (attrs == null) return Node.EMPTY;
+                if (!attrs.isDirectory()) {
+                    return attrs.isRegularFile() && isImageFile(path) && hasImageContent(path) ? new Node(List.of(path.toFile()), List.of(), 1) : Node.EMPTY;
+                }
+            }
+
+            Listing listing = new Listing(path);
+            try {
+                ForkJoinPool.managedBlock(listing);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                walk.cancelled = true;
+                return Node.EMPTY;
+            }
+
+            int entryDepth = Math.max(depth, 0) + 1;
+            List<File> files = new ArrayList<>();
+            List<DirectoryTask> subdirectories = new ArrayList<>();
+            for (Listing.Entry entry : listing.entries) {
+                if (entry.attrs().isDirectory()) {
+                    if (entryDepth < maxDepth) subdirectories.add(new DirectoryTask(walk, entry.path(), entryDepth));
+                } else if (entry.attrs().isRegularFile()) {
+                    files.add(entry.path().toFile());
+                }
+            }
+
+            List<Node> children = subdirectories.isEmpty()
+                ? List.of()
+                : ForkJoinTask.invokeAll(subdirectories).stream().map(ForkJoinTask::join).toList();
+            int total = files.size() + children.stream().mapToInt(Node::total).sum();
+            return new Node(files, children, total);
+        }
+    }
+
+    /**
+     * Lists a directory, reads the attributes of its entries and the signatures of its images,
+     * as a single blocking operation of a worker. Only subdirectories and images are kept.
+     */
+    private static final class Listing implements ForkJoinPool.ManagedBlocker {
+        private record Entry(@NotNull Path path, @NotNull BasicFileAttributes attrs) {}
+
+        private final Path directory;
+
+        private final List<Entry> entries = new ArrayList<>();
+
+        private boolean done;
+
+        private Listing(@NotNull Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        public boolean block() {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path entry : stream) {
+                    BasicFileAttributes attrs = readAttributes(entry, LinkOption.NOFOLLOW_LINKS);
+                    if (attrs == null) continue;
+                    if (attrs.isDirectory() || attrs.isRegularFile() && isImageFile(entry) && hasImageContent(entry))
+                        entries.add(new Entry(entry, attrs));
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                log.warn("Skipping unreadable path: {}", directory, e);
+            }
+            done = true;
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return done;
+        }
+    }
+
+    private static @Nullable BasicFileAttributes readAttributes(@NotNull Path path, @NotNull LinkOption... options) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class, options);
+        } catch (IOException e) {
+            log.warn("Skipping unreadable path: {}", path, e);
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether the given path has an extension of a supported image format.
+     *
+     * @param path the path to check
+     * @return {@code true} if the path looks like a supported image file, {@code false} otherwise
+     */
+    public static boolean isImageFile(@NotNull Path path) {
+        return IMAGE_EXTENSIONS.contains(extension(path));
+    }
+
+    /**
+     * Checks whether the content of the given file starts with the signature of an image format.
+     * Files of formats without a known signature are accepted as they are.
+     *
+     * @param path the file to check, with an extension of a supported image format
+     * @return {@code true} if the content matches an image format, {@code false} if it doesn't, or it's unreadable
+     */
+    static boolean hasImageContent(@NotNull Path path) {
+        if (!SIGNED_EXTENSIONS.contains(extension(path))) return true;
+
+        byte[] header = new byte[SIGNATURE_LENGTH];
+        int length;
+        try (InputStream in = Files.newInputStream(path)) {
+            length = in.readNBytes(header, 0, header.length);
+        } catch (IOException e) {
+            log.warn("Skipping unreadable path: {}", path, e);
+            return false;
+        }
+
+        for (byte[] signature : IMAGE_SIGNATURES) {
+            if (length >= signature.length && Arrays.equals(header, 0, signature.length, signature, 0, signature.length))
+                return true;
+        }
+        log.debug("Skipping file with no image signature: {}", path);
+        return false;
+    }
+
+    private static @NotNull String extension(@NotNull Path path) {
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 ? name.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+    }
+}
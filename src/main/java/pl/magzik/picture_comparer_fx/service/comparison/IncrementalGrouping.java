@@ -0,0 +1,227 @@
+package pl.magzik.picture_comparer_fx.service.comparison;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Executor;
+
+/**
+ * Keeps the groups of duplicates of a scanned tree up to date while its files change.
+ * <p>
+ * Seeded with the {@link ScanResult} of a full scan, it applies every batch of {@link DirectoryWatcher.Changes}
+ * by regrouping only what the changes can affect. For exact duplicates, every group consists of files of the same size,
+ * so only the size buckets a changed or deleted file belonged to, or belongs to now, are grouped again
+ * by the {@link ComparisonPipeline}, and the groups of every other bucket are kept as they are.
+ * For near-duplicates, a single change can merge or split any group, so every file is grouped again,
+ * but since the perceptual hashes of unchanged files are kept in memory, no unchanged file is read again.
+ * </p>
+ * <p>
+ * Files reported as changed, but whose size and modification time did not change, are ignored.
+ * If an update fails, the affected buckets are kept pending and grouped again on the next update.
+ * </p>
+ * <p>
+ * This class is not thread-safe, it's meant to be confined to the thread of a {@link DirectoryWatcher}.
+ * The thread must not belong to the given executor.
+ * </p>
+ */
+public class IncrementalGrouping {
+
+    private static final Logger log = LoggerFactory.getLogger(IncrementalGrouping.class);
+
+    private final ComparisonPipeline pipeline;
+
+    private final Executor executor;
+
+    private final Map<File, Fingerprint> fingerprints = new LinkedHashMap<>();
+
+    private final Map<Long, Set<File>> filesBySize = new HashMap<>();
+
+    private final Map<Long, Map<File, Set<File>>> groupsBySize = new LinkedHashMap<>();
+
+    private final Set<Long> pendingSizes = new HashSet<>();
+
+    /**
+     * Constructs an {@link IncrementalGrouping} seeded with the result of a full scan.
+     * <p>
+     * Every scanned file is stat-ed again, so files deleted since the scan are dropped right away.
+     * </p>
+     *
+     * @param pipeline the {@link ComparisonPipeline} used for the scan
+     * @param executor the executor running the pixel-by-pixel refinement
+     * @param result the {@link ScanResult} of the full scan
+     */
+    public IncrementalGrouping(@NotNull ComparisonPipeline pipeline, @NotNull Executor executor, @NotNull ScanResult result) {
+        this.pipeline = pipeline;
+        this.executor = executor;
+
+        for (File file : result.files()) {
+            try {
+                track(file, pipeline.stat(file));
+            } catch (IOException e) {
+                log.debug("Dropping file deleted since the scan: {}", file);
+            }
+        }
+
+        result.groups().forEach((first, group) -> {
+            Fingerprint fingerprint = fingerprints.get(first);
+            if (fingerprint == null || !fingerprints.keySet().containsAll(group)) {
+                group.stream().map(fingerprints::get).filter(Objects::nonNull).forEach(f -> pendingSizes.add(f.size()));
+                return;
+            }
+            groupsBySize.computeIfAbsent(bucket(fingerprint), k -> new LinkedHashMap<>()).put(first, group);
+        });
+    }
+
+    /**
+     * Applies a batch of changes and returns the updated state.
+     *
+     * @param changes the changes reported by a {@link DirectoryWatcher}
+     * @return the {@link ScanResult} describing every tracked file and the updated groups of duplicates
+     * @throws IOException if an error occurs while reading or decoding the affected files
+     */
+    public @NotNull ScanResult update(@NotNull DirectoryWatcher.Changes changes) throws IOException {
+        Set<Long> affected = new HashSet<>(pendingSizes);
+
+        Set<File> deleted = new HashSet<>(changes.deleted());
+        if (changes.fullListing()) {
+            fingerprints.keySet().stream().filter(f -> !changes.changed().contains(f)).forEach(deleted::add);
+        }
+
+        int applied = 0;
+        for (File path : deleted) {
+            for (File file : expand(path)) {
+                Fingerprint old = fingerprints.get(file);
+                if (isGrouped(file, old)) affected.add(old.size());
+                untrack(file);
+                applied++;
+            }
+        }
+
+        for (File file : changes.changed()) {
+            Fingerprint current;
+            try {
+                current = pipeline.stat(file);
+            } catch (IOException e) {
+                Fingerprint old = fingerprints.get(file);
+                if (isGrouped(file, old)) affected.add(old.size());
+                if (untrack(file) != null) applied++;
+                continue;
+            }
+
+            Fingerprint old = fingerprints.get(file);
+            if (old != null && old.size() == current.size() && old.lastModified() == current.lastModified()) continue;
+
+            if (isGrouped(file, old)) affected.add(old.size());
+            untrack(file);
+            track(file, current);
+            affected.add(current.size());
+            applied++;
+        }
+
+        regroup(affected);
+        log.info("Incremental update done. Applied {} changes, regrouped {} size buckets.", applied, affected.size());
+
+        return new ScanResult(List.copyOf(fingerprints.keySet()), groups());
+    }
+
+    /**
+     * Groups the files of the given size buckets again, or every file when searching for near-duplicates.
+     *
+     * @param sizes the sizes of the affected buckets
+     * @throws IOException if an error occurs while reading or decoding the files
+     */
+    private void regroup(@NotNull Set<Long> sizes) throws IOException {
+        if (sizes.isEmpty()) return;
+        pendingSizes.addAll(sizes);
+
+        List<File> files = pipeline.isNearDuplicateSearch()
+            ? new ArrayList<>(fingerprints.keySet())
+            : sizes.stream()
+                .map(size -> filesBySize.getOrDefault(size, Set.of()))
+                .flatMap(Set::stream)
+                .toList();
+
+        Map<File, Set<File>> groups = pipeline.group(files, fingerprints, executor);
+
+        if (pipeline.isNearDuplicateSearch()) groupsBySize.clear();
+        else sizes.forEach(groupsBySize::remove);
+
+        groups.forEach((first, group) ->
+            groupsBySize.computeIfAbsent(bucket(fingerprints.get(first)), k -> new LinkedHashMap<>()).put(first, group)
+        );
+        pendingSizes.clear();
+    }
+
+    /**
+     * Returns the key of the bucket holding the groups the given file may belong to.
+     * When searching for near-duplicates, groups aren't bound to sizes, so all of them share a single bucket.
+     *
+     * @param fingerprint the fingerprint of the first file of a group
+     * @return the key of the bucket
+     */
+    private long bucket(@NotNull Fingerprint fingerprint) {
+        return pipeline.isNearDuplicateSearch() ? 0 : fingerprint.size();
+    }
+
+    /**
+     * Returns the current groups of duplicates.
+     *
+     * @return a map where the key is the first file of a group, and the value is the set of all files in that group
+     */
+    private @NotNull Map<File, Set<File>> groups() {
+        Map<File, Set<File>> result = new LinkedHashMap<>();
+        groupsBySize.values().forEach(result::putAll);
+        return result;
+    }
+
+    /**
+     * Returns the tracked files the given deleted path stands for:
+     * the file itself, or every tracked file below it if it was a directory.
+     *
+     * @param path the deleted path
+     * @return the tracked files deleted along with the path
+     */
+    private @NotNull List<File> expand(@NotNull File path) {
+        if (fingerprints.containsKey(path)) return List.of(path);
+
+        Path dir = path.toPath();
+        return fingerprints.keySet().stream()
+            .filter(file -> file.toPath().startsWith(dir))
+            .toList();
+    }
+
+    /**
+     * Checks whether the given file currently belongs to any group of duplicates.
+     *
+     * @param file the file
+     * @param fingerprint the last known fingerprint of the file, or {@code null} if it wasn't tracked
+     * @return {@code true} if the file belongs to a group, {@code false} otherwise
+     */
+    private boolean isGrouped(@NotNull File file, Fingerprint fingerprint) {
+        if (fingerprint == null) return false;
+        if (pipeline.isNearDuplicateSearch()) return true;
+
+        Map<File, Set<File>> groups = groupsBySize.get(bucket(fingerprint));
+        return groups != null && groups.values().stream().anyMatch(group -> group.contains(file));
+    }
+
+    private void track(@NotNull File file, @NotNull Fingerprint fingerprint) {
+        fingerprints.put(file, fingerprint);
+        filesBySize.computeIfAbsent(fingerprint.size(), k -> new LinkedHashSet<>()).add(file);
+    }
+
+    private Fingerprint untrack(@NotNull File file) {
+        Fingerprint fingerprint = fingerprints.remove(file);
+        if (fingerprint == null) return null;
+
+        Set<File> bucket = filesBySize.get(fingerprint.size());
+        bucket.remove(file);
+        if (bucket.isEmpty()) filesBySize.remove(fingerprint.size());
+        return fingerprint;
+    }
+}
@@ -0,0 +1,82 @@
+package pl.magzik.picture_comparer_fx.service.comparison;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A byte-weighted budget for memory-hungry work, such as holding decoded rasters.
+ * <p>
+ * Before allocating, a task {@link #acquire(long) acquires} a lease for the estimated number of bytes,
+ * and waits while the leases already granted would not leave room for it. Once the work is done, the lease is closed
+ * and its bytes return to the budget. A single request larger than the whole budget is still admitted,
+ * but only once no other lease is held, so it never runs alongside other work.
+ * </p>
+ * <p>
+ * The budget is tracked in units of {@value #UNIT} bytes, and is fair, so large requests don't starve.
+ * This class is thread-safe.
+ * </p>
+ */
+public class MemoryBudget {
+
+    private static final int UNIT = 1024;
+
+    private final Semaphore units;
+
+    private final int capacity;
+
+    /**
+     * Constructs a {@link MemoryBudget} of the given size.
+     *
+     * @param bytes the size of the budget in bytes
+     * @throws IllegalArgumentException if the size is not positive
+     */
+    public MemoryBudget(long bytes) {
+        if (bytes <= 0) throw new IllegalArgumentException("Memory budget must be positive.");
+
+        this.capacity = (int) Math.min(Integer.MAX_VALUE, Math.max(1, bytes / UNIT));
+        this.units = new Semaphore(capacity, true);
+    }
+
+    /**
+     * Acquires a lease for the given number of bytes, waiting until they fit in the budget.
+     *
+     * @param bytes the estimated number of bytes the work will hold
+     * @return the {@link Lease}, which must be closed once the memory is released
+     * @throws InterruptedIOException if the current thread was interrupted while waiting
+     */
+    public @NotNull Lease acquire(long bytes) throws InterruptedIOException {
+        int requested = (int) Math.min(capacity, Math.max(1, (bytes + UNIT - 1) / UNIT));
+        try {
+            units.acquire(requested);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for memory budget.");
+        }
+        return new Lease(requested);
+    }
+
+    /**
+     * A granted part of the budget, returned to it on {@link #close()}.
+     */
+    public final class Lease implements AutoCloseable {
+        private final int leased;
+
+        private boolean closed;
+
+        private Lease(int leased) {
+            this.leased = leased;
+        }
+
+        /**
+         * Returns the leased bytes to the budget. Closing an already closed lease has no effect.
+         */
+        @Override
+        public synchronized void close() {
+            if (closed) return;
+            closed = true;
+            units.release(leased);
+        }
+    }
+}
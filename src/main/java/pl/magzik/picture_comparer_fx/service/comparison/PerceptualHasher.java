@@ -0,0 +1,157 @@
+package pl.magzik.picture_comparer_fx.service.comparison;
+
+import org.jetbrains.annotations.NotNull;
+import pl.magzik.picture_comparer_fx.base.metrics.MetricsRegistry;
+import pl.magzik.picture_comparer_fx.base.metrics.Timer;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Computes 64-bit perceptual hashes (pHash) of images.
+ * <p>
+ * The image is reduced to a small grayscale thumbnail, transformed with a discrete cosine transform,
+ * and the lowest 8x8 frequencies are compared against their mean value, giving one bit each.
+ * Visually similar images produce hashes with a small Hamming distance, identical images produce equal hashes.
+ * </p>
+ * <p>
+ * Since the thumbnail is tiny, image files are decoded subsampled, to no less than {@value #DECODE_SIZE} pixels
+ * on the shorter side, instead of at full resolution.
+ * </p>
+ * <p>
+ * This class is stateless and thread-safe.
+ * </p>
+ */
+public class PerceptualHasher {
+
+    /**
+     * The version of the hashing procedure. Hashes computed by different versions are not comparable,
+     * so it must be incremented whenever a change to this class alters the resulting hashes.
+     */
+    public static final int VERSION = 2;
+
+    private static final int SAMPLE_SIZE = 32;
+
+    private static final int DECODE_SIZE = 4 * SAMPLE_SIZE;
+
+    private static final int HASH_SIZE = 8;
+
+    private static final Timer HASH_TIMER = MetricsRegistry.getInstance().timer("hash.perceptual");
+
+    private static final double[][] COSINES = computeCosines();
+
+    private final ImageDecoder decoder;
+
+    /**
+     * Constructs a {@link PerceptualHasher} decoding image files with the given decoder.
+     *
+     * @param decoder the {@link ImageDecoder} used to decode image files
+     */
+    public PerceptualHasher(@NotNull ImageDecoder decoder) {
+        this.decoder = decoder;
+    }
+
+    /**
+     * Computes the perceptual hash of the given image file.
+     *
+     * @param file the image file to hash
+     * @return the 64-bit perceptual hash
+     * @throws IOException if the file cannot be read or is not a supported image
+     */
+    public long hash(@NotNull File file) throws IOException {
+        try (Timer.Context ignored = HASH_TIMER.start()) {
+            return hash(decoder.readSubsampled(file, DECODE_SIZE));
+        }
+    }
+
+    /**
+     * Computes the perceptual hash of the given image.
+     *
+     * @param image the image to hash
+     * @return the 64-bit perceptual hash
+     */
+    public long hash(@NotNull BufferedImage image) {
+        double[][] frequencies = transform(sample(image));
+
+        double mean = 0;
+        for (int v = 0; v < HASH_SIZE; v++)
+            for (int u = 0; u < HASH_SIZE; u++)
+                if (u != 0 || v != 0) mean += frequencies[v][u];
+        mean /= HASH_SIZE * HASH_SIZE - 1;
+
+        long hash = 0;
+        for (int v = 0; v < HASH_SIZE; v++)
+            for (int u = 0; u < HASH_SIZE; u++)
+                hash = (hash << 1) | (frequencies[v][u] > mean ? 1 : 0);
+
+        return hash;
+    }
+
+    /**
+     * Scales the image down to a {@value #SAMPLE_SIZE}x{@value #SAMPLE_SIZE} grayscale sample.
+     *
+     * @param image the image to sample
+     * @return the grayscale luminance values, indexed by row and column
+     */
+    private double @NotNull [] @NotNull [] sample(@NotNull BufferedImage image) {
+        BufferedImage sample = new BufferedImage(SAMPLE_SIZE, SAMPLE_SIZE, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D graphics = sample.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, SAMPLE_SIZE, SAMPLE_SIZE, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        Raster raster = sample.getRaster();
+        double[][] values = new double[SAMPLE_SIZE][SAMPLE_SIZE];
+        for (int y = 0; y < SAMPLE_SIZE; y++)
+            for (int x = 0; x < SAMPLE_SIZE; x++)
+                values[y][x] = raster.getSample(x, y, 0);
+
+        return values;
+    }
+
+    /**
+     * Computes the lowest {@value #HASH_SIZE}x{@value #HASH_SIZE} coefficients of the two-dimensional DCT-II
+     * of the given sample, using the separable row-column approach.
+     *
+     * @param values the grayscale sample
+     * @return the low frequency coefficients, indexed by vertical and horizontal frequency
+     */
+    private double @NotNull [] @NotNull [] transform(double @NotNull [] @NotNull [] values) {
+        double[][] rows = new double[SAMPLE_SIZE][HASH_SIZE];
+        for (int y = 0; y < SAMPLE_SIZE; y++)
+            for (int u = 0; u < HASH_SIZE; u++) {
+                double sum = 0;
+                for (int x = 0; x < SAMPLE_SIZE; x++) sum += values[y][x] * COSINES[u][x];
+                rows[y][u] = sum;
+            }
+
+        double[][] frequencies = new double[HASH_SIZE][HASH_SIZE];
+        for (int v = 0; v < HASH_SIZE; v++)
+            for (int u = 0; u < HASH_SIZE; u++) {
+                double sum = 0;
+                for (int y = 0; y < SAMPLE_SIZE; y++) sum += rows[y][u] * COSINES[v][y];
+                frequencies[v][u] = sum;
+            }
+
+        return frequencies;
+    }
+
+    /**
+     * Precomputes the DCT-II basis used by {@link #transform(double[][])}.
+     *
+     * @return the cosine table, indexed by frequency and sample position
+     */
+    private static double @NotNull [] @NotNull [] computeCosines() {
+        double[][] cosines = new double[HASH_SIZE][SAMPLE_SIZE];
+        for (int u = 0; u < HASH_SIZE; u++)
+            for (int x = 0; x < SAMPLE_SIZE; x++)
+                cosines[u][x] = Math.cos((2 * x + 1) * u * Math.PI / (2 * SAMPLE_SIZE));
+        return cosines;
+    }
+}
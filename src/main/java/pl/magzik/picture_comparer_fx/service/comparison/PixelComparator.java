@@ -0,0 +1,109 @@
+package pl.magzik.picture_comparer_fx.service.comparison;
+
+import org.jetbrains.annotations.NotNull;
+import pl.magzik.picture_comparer_fx.base.metrics.MetricsRegistry;
+import pl.magzik.picture_comparer_fx.base.metrics.Timer;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compares two images pixel by pixel.
+ * <p>
+ * Both images are decoded at full resolution and considered equal only if they have the same dimensions
+ * and every pixel has the same ARGB value. The comparison is done row by row to avoid copying whole rasters.
+ * </p>
+ * <p>
+ * Since two full-resolution rasters are held at once, every comparison first leases their estimated size
+ * from a {@link MemoryBudget}, so running many comparisons in parallel never decodes more than the budget allows.
+ * The dimensions are read from the image headers beforehand, so images of different sizes are never decoded at all.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ */
+public class PixelComparator {
+
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private static final Timer COMPARE_TIMER = MetricsRegistry.getInstance().timer("compare.pixels");
+
+    private final ImageDecoder decoder;
+
+    private final MemoryBudget budget;
+
+    private final LongAdder imagesDecoded = new LongAdder();
+
+    /**
+     * Constructs a {@link PixelComparator} decoding images with the given decoder, within the given budget.
+     *
+     * @param decoder the {@link ImageDecoder} used to decode image files
+     * @param budget the {@link MemoryBudget} limiting the total size of decoded rasters
+     */
+    public PixelComparator(@NotNull ImageDecoder decoder, @NotNull MemoryBudget budget) {
+        this.decoder = decoder;
+        this.budget = budget;
+    }
+
+    /**
+     * Checks whether the two image files contain exactly the same pixels.
+     *
+     * @param first the first image file
+     * @param second the second image file
+     * @return {@code true} if the images are pixel-identical, {@code false} otherwise
+     * @throws IOException if any of the files cannot be read or is not a supported image
+     */
+    public boolean equal(@NotNull File first, @NotNull File second) throws IOException {
+        try (Timer.Context ignored = COMPARE_TIMER.start()) {
+            return compare(first, second);
+        }
+    }
+
+    private boolean compare(@NotNull File first, @NotNull File second) throws IOException {
+        Dimension size = decoder.dimensions(first);
+        if (!size.equals(decoder.dimensions(second))) return false;
+
+        long rasterBytes = (long) size.width * size.height * BYTES_PER_PIXEL;
+        try (MemoryBudget.Lease ignored = budget.acquire(2 * rasterBytes)) {
+            BufferedImage a = decoder.read(first);
+            BufferedImage b = decoder.read(second);
+            imagesDecoded.add(2);
+            return equal(a, b);
+        }
+    }
+
+    /**
+     * Returns the total number of images decoded by the comparisons so far.
+     *
+     * @return the number of decoded images
+     */
+    public long imagesDecoded() {
+        return imagesDecoded.sum();
+    }
+
+    /**
+     * Checks whether the two decoded images contain exactly the same pixels.
+     *
+     * @param a the first image
+     * @param b the second image
+     * @return {@code true} if the images are pixel-identical, {@code false} otherwise
+     */
+    private boolean equal(@NotNull BufferedImage a, @NotNull BufferedImage b) {
+        if (a.getWidth() != b.getWidth() || a.getHeight() != b.getHeight()) return false;
+
+        int width = a.getWidth();
+        int[] rowA = new int[width];
+        int[] rowB = new int[width];
+        for (int y = 0; y < a.getHeight(); y++) {
+            a.getRGB(0, y, width, 1, rowA, 0, width);
+            b.getRGB(0, y, width, 1, rowB, 0, width);
+            if (!Arrays.equals(rowA, rowB)) return false;
+        }
+
+        return true;
+    }
+}
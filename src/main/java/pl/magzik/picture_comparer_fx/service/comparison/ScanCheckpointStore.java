@@ -0,0 +1,386 @@
+package pl.magzik.picture_comparer_fx.service.comparison;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.magzik.picture_comparer_fx.base.PathResolver;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent store of scan checkpoints, letting an interrupted scan of a directory tree resume its walk.
+ * <p>
+ * While a scan walks its tree, every directory it has walked completely is appended to a checkpoint,
+ * one per scanned root, inside the {@value #DIRECTORY_NAME} folder of the {@link PathResolver#getDataDirectory() data directory}.
+ * A directory is recorded with the images directly inside it, and its modification time read before it was listed.
+ * The fingerprints computed by the scan are checkpointed separately, by periodically saving the {@link FingerprintStore}.
+ * A restarted scan of the same root with the same depth then takes the images of every recorded directory whose
+ * modification time is still the same from the checkpoint, and only lists the remaining ones,
+ * so a directory gaining or losing an image since is always listed again.
+ * The checkpoint is deleted once the scan succeeds, so closing the application or cancelling the scan keeps it.
+ * </p>
+ * <p>
+ * Every record carries its length and checksum, so a record torn by a crash in the middle of a write
+ * is detected when the checkpoint is loaded, and the checkpoint is cut back to the last complete record.
+ * </p>
+ * <p>
+ * The store is a lazily initialized, thread-safe singleton.
+ * </p>
+ */
+public class ScanCheckpointStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ScanCheckpointStore.class);
+
+    private static final String DIRECTORY_NAME = "checkpoints";
+
+    private static final String FILE_SUFFIX = ".ckpt";
+
+    private static final int MAGIC = 0x50464350; // "PFCP"
+    private static final int VERSION = 3;
+
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int MAX_RECORD_SIZE = 64 << 20;
+
+    private static class InstanceHolder {
+        private static final ScanCheckpointStore INSTANCE = new ScanCheckpointStore(
+            PathResolver.getInstance().getDataDirectory().resolve(DIRECTORY_NAME)
+        );
+    }
+
+    /**
+     * Returns the singleton instance of the {@link ScanCheckpointStore} class.
+     *
+     * @return the singleton {@link ScanCheckpointStore} instance
+     */
+    public static ScanCheckpointStore getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    private final Path directory;
+
+    /**
+     * Constructs a {@link ScanCheckpointStore} keeping its checkpoints in the given directory.
+     *
+     * @param directory the directory of the checkpoint files, created on the first save
+     */
+    private ScanCheckpointStore(@NotNull Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the directories walked by an interrupted scan of the given root, if it was checkpointed.
+     * <p>
+     * A checkpoint written for a different depth or in another format is deleted, and so is an unreadable one.
+     * A damaged record at the end of the checkpoint is cut off.
+     * </p>
+     *
+     * @param root the scanned root
+     * @param maxDepth the maximum number of directory levels visited by the scan
+     * @return the {@link Checkpoint}, or {@code null} if there is no usable checkpoint
+     */
+    public synchronized @Nullable Checkpoint load(@NotNull File root, int maxDepth) {
+        Path checkpoint = checkpointFile(root);
+        if (Files.notExists(checkpoint)) return null;
+
+        Map<Path, Directory> directories = new HashMap<>();
+        try (FileChannel channel = FileChannel.open(checkpoint, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long position = readHeader(channel, root, maxDepth);
+            if (position < 0) {
+                log.info("Discarding checkpoint of {} written for a different scan, or in another format.", root);
+                channel.close();
+                delete(root);
+                return null;
+            }
+
+            long valid = readRecords(channel, position, directories);
+            if (valid < channel.size()) {
+                log.warn("Checkpoint of {} ends with a damaged record, discarding {} bytes.", root, channel.size() - valid);
+                channel.truncate(valid);
+            }
+        } catch (IOException e) {
+            log.warn("Couldn't load checkpoint of: {}, discarding it.", root, e);
+            delete(root);
+            return null;
+        }
+
+        log.info("Checkpoint of {} loaded. Found directories: {}", root, directories.size());
+        return directories.isEmpty() ? null : new Checkpoint(directories);
+    }
+
+    /**
+     * Appends the given walked directories to the checkpoint of the given root, creating it if needed.
+     * A checkpoint written for a different depth or in another format is replaced.
+     * <p>
+     * A directory holding so many images that its record would exceed {@link #MAX_RECORD_SIZE} is skipped,
+     * and simply listed again by a resumed scan.
+     * </p>
+     *
+     * @param root the scanned root
+     * @param maxDepth the maximum number of directory levels visited by the scan
+     * @param directories the directories walked since the last append
+     * @throws IOException if an error occurs while writing the checkpoint
+     */
+    public synchronized void append(@NotNull File root, int maxDepth, @NotNull Collection<Directory> directories) throws IOException {
+        if (directories.isEmpty()) return;
+        Files.createDirectories(directory);
+
+        try (FileChannel channel = FileChannel.open(
+                checkpointFile(root), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() == 0 || readHeader(channel, root, maxDepth) < 0) {
+                channel.truncate(0);
+                writeFully(channel, header(root, maxDepth), 0);
+            }
+
+            long position = channel.size();
+            try {
+                for (Directory walked : directories) {
+                    ByteBuffer record = record(walked);
+                    if (record == null) {
+                        log.debug("Directory {} is too large to checkpoint.", walked.path());
+                        continue;
+                    }
+                    writeFully(channel, record, position);
+                    position += record.limit();
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                // Cuts a partially written record, so later records aren't appended behind garbage.
+                channel.truncate(position);
+                throw e;
+            }
+        }
+
+        log.debug("Checkpoint of {} extended. Appended directories: {}", root, directories.size());
+    }
+
+    /**
+     * Deletes the checkpoint of the given root, if present.
+     *
+     * @param root the scanned root
+     */
+    public synchronized void delete(@NotNull File root) {
+        try {
+            if (Files.deleteIfExists(checkpointFile(root))) log.info("Checkpoint of {} deleted.", root);
+        } catch (IOException e) {
+            log.warn("Couldn't delete checkpoint of: {}", root, e);
+        }
+    }
+
+    /**
+     * Returns the header of the checkpoint of the given root.
+     *
+     * @param root the scanned root
+     * @param maxDepth the maximum number of directory levels visited by the scan
+     * @return the header, flipped for writing
+     */
+    private @NotNull ByteBuffer header(@NotNull File root, int maxDepth) {
+        byte[] path = root.getAbsolutePath().getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(4 * Integer.BYTES + path.length)
+            .putInt(MAGIC)
+            .putInt(VERSION)
+            .putInt(maxDepth)
+            .putInt(path.length)
+            .put(path)
+            .flip();
+    }
+
+    /**
+     * Checks whether the checkpoint starts with the header of the given root and depth, in the current format.
+     *
+     * @param channel the checkpoint
+     * @param root the scanned root
+     * @param maxDepth the maximum number of directory levels visited by the scan
+     * @return the position right after the header, or {@code -1} if the header doesn't match
+     * @throws IOException if an error occurs while reading the checkpoint
+     */
+    private long readHeader(@NotNull FileChannel channel, @NotNull File root, int maxDepth) throws IOException {
+        ByteBuffer expected = header(root, maxDepth);
+        ByteBuffer actual = ByteBuffer.allocate(expected.limit());
+        if (!readFully(channel, actual, 0)) return -1;
+
+        return actual.equals(expected) ? expected.limit() : -1;
+    }
+
+    /**
+     * Reads every complete record of the checkpoint. A directory recorded more than once keeps its last record.
+     *
+     * @param channel the checkpoint
+     * @param position the position of the first record
+     * @param directories the map receiving the recorded directories, by path
+     * @return the position right after the last complete record
+     * @throws IOException if an error occurs while reading the checkpoint
+     */
+    private long readRecords(@NotNull FileChannel channel, long position, @NotNull Map<Path, Directory> directories) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+
+        while (readFully(channel, header.clear(), position)) {
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length < 0 || length > MAX_RECORD_SIZE) break;
+
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            if (!readFully(channel, payload, position + RECORD_HEADER_SIZE)) break;
+
+            CRC32 crc = new CRC32();
+            crc.update(payload.array());
+            if ((int) crc.getValue() != checksum) break;
+
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload.array()))) {
+                Path path = Path.of(in.readUTF());
+                long lastModified = in.readLong();
+                int count = in.readInt();
+                List<File> images = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) images.add(path.resolve(in.readUTF()).toFile());
+                directories.put(path, new Directory(path, lastModified, images));
+            }
+
+            position += RECORD_HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    /**
+     * Encodes the record of the given directory.
+     *
+     * @param walked the walked directory
+     * @return the record, flipped for writing, or {@code null} if it would exceed {@link #MAX_RECORD_SIZE}
+     * @throws IOException if the directory cannot be encoded
+     */
+    private @Nullable ByteBuffer record(@NotNull Directory walked) throws IOException {
+        String path = walked.path().toAbsolutePath().toString();
+
+        // Every character takes at most three bytes in the modified UTF-8 written by writeUTF.
+        long size = Short.BYTES + 3L * path.length() + Long.BYTES + Integer.BYTES;
+        for (File image : walked.images()) size += Short.BYTES + 3L * image.getName().length();
+        if (size > MAX_RECORD_SIZE) return null;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(path);
+            out.writeLong(walked.lastModified());
+            out.writeInt(walked.images().size());
+            for (File image : walked.images()) out.writeUTF(image.getName());
+        }
+        byte[] payload = bytes.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        return ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length)
+            .putInt(payload.length)
+            .putInt((int) crc.getValue())
+            .put(payload)
+            .flip();
+    }
+
+    /**
+     * Reads from the channel at the given position until the buffer is full, or the end of the channel is reached.
+     *
+     * @param channel the channel to read from
+     * @param buffer the buffer to fill, flipped for reading afterward
+     * @param position the position to start reading at
+     * @return {@code true} if the buffer has been filled, {@code false} if the channel ended first
+     * @throws IOException if an error occurs while reading
+     */
+    private boolean readFully(@NotNull FileChannel channel, @NotNull ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) return false;
+        }
+        buffer.flip();
+        return true;
+    }
+
+    /**
+     * Writes the whole buffer to the channel at the given position.
+     *
+     * @param channel the channel to write to
+     * @param buffer the buffer to write
+     * @param position the position to start writing at
+     * @throws IOException if an error occurs while writing
+     */
+    private void writeFully(@NotNull FileChannel channel, @NotNull ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    /**
+     * Returns the checkpoint file of the given root, named after a name-based {@link UUID} of its absolute path.
+     *
+     * @param root the scanned root
+     * @return the path of the checkpoint file
+     */
+    private @NotNull Path checkpointFile(@NotNull File root) {
+        UUID id = UUID.nameUUIDFromBytes(root.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+        return directory.resolve(id + FILE_SUFFIX);
+    }
+
+    /**
+     * A directory walked completely by a scan.
+     *
+     * @param path the absolute path of the directory
+     * @param lastModified the modification time of the directory read before listing it, in epoch milliseconds
+     * @param images the images directly inside the directory
+     */
+    public record Directory(@NotNull Path path, long lastModified, @NotNull List<File> images) {}
+
+    /**
+     * The directories walked by an interrupted scan.
+     */
+    public static final class Checkpoint {
+        private final Map<Path, Directory> directories;
+
+        private final Map<Path, List<Path>> children;
+
+        private Checkpoint(@NotNull Map<Path, Directory> directories) {
+            this.directories = directories;
+            this.children = new HashMap<>();
+            for (Path path : directories.keySet()) {
+                Path parent = path.getParent();
+                if (parent != null && directories.containsKey(parent))
+                    children.computeIfAbsent(parent, k -> new ArrayList<>()).add(path);
+            }
+        }
+
+        /**
+         * Returns the number of recorded directories.
+         *
+         * @return the number of directories
+         */
+        public int size() {
+            return directories.size();
+        }
+
+        /**
+         * Returns the record of the given directory, if it was walked completely.
+         *
+         * @param path the absolute path of the directory
+         * @return the {@link Directory}, or {@code null} if it wasn't recorded
+         */
+        public @Nullable Directory get(@NotNull Path path) {
+            return directories.get(path);
+        }
+
+        /**
+         * Returns the recorded subdirectories of the given directory.
+         * Since a directory is only recorded once its whole subtree was walked,
+         * these are all the subdirectories it had back then, within the depth of the scan.
+         *
+         * @param path the absolute path of the directory
+         * @return the paths of the recorded subdirectories
+         */
+        public @NotNull List<Path> children(@NotNull Path path) {
+            return children.getOrDefault(path, List.of());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package pl.magzik.picture_comparer_fx.service.comparison;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A snapshot of the progress of a running scan, reported by the {@link StreamingScanner}.
+ * <p>
+ * Since files are fingerprinted while the directory tree is still being walked, the total number of files
+ * is not known up front. It stays unknown ({@code -1}) until the walk finishes,
+ * and meanwhile only the number of files discovered so far is known.
+ * </p>
+ *
+ * @param phase the current phase of the scan
+ * @param filesDiscovered the number of image files discovered so far
+ * @param filesExpected the total number of image files, or {@code -1} while the tree is still being walked
+ * @param filesFingerprinted the number of files that went through every fingerprinting stage they collided in
+ * @param bytesHashed the number of bytes read to compute partial hashes and checksums
+ * @param imagesDecoded the number of images decoded for perceptual hashing and pixel-by-pixel comparison
+ * @param groupsToRefine the number of candidate groups handed over to the pixel-by-pixel refinement
+ * @param groupsRefined the number of candidate groups already refined pixel by pixel
+ * @param groupsFormed the number of groups of duplicates, only known once the scan is {@link Phase#DONE done}
+ * @param elapsedNanos the time elapsed since the start of the scan, in nanoseconds
+ */
+public record ScanProgress(
+    @NotNull Phase phase,
+    long filesDiscovered,
+    long filesExpected,
+    long filesFingerprinted,
+    long bytesHashed,
+    long imagesDecoded,
+    long groupsToRefine,
+    long groupsRefined,
+    int groupsFormed,
+    long elapsedNanos
+) {
+
+    /**
+     * The phases of a scan, in the order they happen.
+     */
+    public enum Phase {
+        /**
+         * The directory tree is being walked, while the discovered files are fingerprinted.
+         */
+        DISCOVERING,
+        /**
+         * The walk has finished, and the last discovered files are being fingerprinted.
+         */
+        FINGERPRINTING,
+        /**
+         * The fingerprinted files are being grouped, and the groups refined pixel by pixel.
+         */
+        GROUPING,
+        /**
+         * The scan has finished.
+         */
+        DONE
+    }
+
+    /**
+     * Returns the completed fraction of the current phase.
+     * <p>
+     * While fingerprinting, it's the fraction of the expected files already fingerprinted.
+     * While grouping, it's the fraction of the candidate groups already refined pixel by pixel.
+     * </p>
+     *
+     * @return the completed fraction between {@code 0} and {@code 1}, or {@code -1} if it cannot be estimated yet
+     */
+    public double fraction() {
+        return switch (phase) {
+            case DISCOVERING, FINGERPRINTING -> filesExpected > 0 ? Math.min(1, (double) filesFingerprinted / filesExpected) : -1;
+            case GROUPING -> groupsToRefine > 0 ? (double) groupsRefined / groupsToRefine : -1;
+            case DONE -> 1;
+        };
+    }
+
+    /**
+     * Returns the average hashing throughput since the start of the scan.
+     *
+     * @return the number of hashed bytes per second
+     */
+    public double bytesPerSecond() {
+        return elapsedNanos > 0 ? bytesHashed * 1e9 / elapsedNanos : 0;
+    }
+
+    /**
+     * Returns the average fingerprinting throughput since the start of the scan.
+     *
+     * @return the number of fingerprinted files per second
+     */
+    public double filesPerSecond() {
+        return elapsedNanos > 0 ? filesFingerprinted * 1e9 / elapsedNanos : 0;
+    }
+}
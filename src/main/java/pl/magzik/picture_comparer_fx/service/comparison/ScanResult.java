@@ -0,0 +1,28 @@
+package pl.magzik.picture_comparer_fx.service.comparison;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The outcome of a single scan: every discovered image file and the groups of duplicates found among them.
+ *
+ * @param files the discovered image files, in discovery order
+ * @param groups a map where the key is the first file of a group, and the value is the set of all files in that group
+ */
+public record ScanResult(@NotNull List<File> files, @NotNull Map<File, Set<File>> groups) {
+
+    /**
+     * Returns every duplicate file found by the scan, excluding the first file of each group.
+     *
+     * @return a list of duplicate files
+     */
+    public @NotNull List<File> duplicates() {
+        return groups.entrySet().stream()
+            .flatMap(e -> e.getValue().stream().filter(f -> !f.equals(e.getKey())))
+            .toList();
+    }
+}
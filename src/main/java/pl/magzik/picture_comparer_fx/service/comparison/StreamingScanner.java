@@ -0,0 +1,683 @@
+package pl.magzik.picture_comparer_fx.service.comparison;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Finds duplicates among image files, overlapping file discovery with fingerprinting.
+ * <p>
+ * The scan runs as a pipeline of stages:
+ * <ol>
+ *     <li>the discovery stage, which runs in the calling thread and either walks a directory tree
+ *     with an {@link ImageFileWalker} or iterates over a given list of files,</li>
+ *     <li>the stat stage, which reads the size of every discovered file on the hash executor,</li>
+ *     <li>the partial hash stage, which reads the head and tail of a file only once another file of the same size
+ *     shows up,</li>
+ *     <li>the checksum stage, which reads the whole content of a file only once another file shares its partial hash,</li>
+ *     <li>the hash stage, which computes perceptual hashes as soon as two files share a checksum,
+ *     or of every file when searching for near-duplicates.</li>
+ * </ol>
+ * Every stage after the stat stage is a {@link CollisionStage}: a file enters it only once another file shares
+ * its key from the previous stage, so the bulk of the files, which have a unique size, are never read at all.
+ * At most {@value #MAX_IN_FLIGHT} files are in flight between the stages at any time, so the work queued for the hash
+ * executor stays bounded no matter how far the discovery gets ahead of the hashing. The discovered files,
+ * their fingerprints and the keys held by the collision stages still grow with the number of scanned files.
+ * Once every stage finishes, the collected fingerprints are grouped by the {@link ComparisonPipeline}.
+ * </p>
+ * <p>
+ * The calling thread blocks until the scan finishes, so it must not belong to the hash executor.
+ * If any stage fails, the remaining work is skipped and the first failure is reported.
+ * </p>
+ * <p>
+ * A scan is cancelled by interrupting the calling thread. The walk stops at the next directory or file,
+ * the files still waiting for the hash executor are dropped, and the threads already reading or decoding
+ * a file are interrupted too, so the scan releases its threads and buffers promptly,
+ * and fails with an {@link InterruptedIOException}.
+ * </p>
+ * <p>
+ * While running, the scanner saves the fingerprints computed so far every {@value #CHECKPOINT_INTERVAL_SECONDS} seconds,
+ * and once more when the run ends, whether it succeeded or not. If given a {@link ScanCheckpointStore},
+ * it also checkpoints every directory the walk completed, along with its images, at the same interval,
+ * so a scan of the same root restarted after a crash, a cancellation or closing the application only lists
+ * the directories that weren't walked yet or changed since, and only computes the fingerprints that weren't saved yet.
+ * The checkpoint is only deleted once a run succeeds.
+ * </p>
+ * <p>
+ * The progress of a scan can be followed with a listener receiving {@link ScanProgress} snapshots.
+ * A snapshot is reported every time a file is discovered or fingerprinted, a candidate group is refined,
+ * and the phase changes, from whichever thread did the work, so listeners must be cheap and thread-safe.
+ * The tree is walked only once, so the total number of files stays unknown until the walk finishes,
+ * and only the number of files discovered so far is reported meanwhile.
+ * </p>
+ */
+public class StreamingScanner {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamingScanner.class);
+
+    private static final int MAX_IN_FLIGHT = 1024;
+
+    private static final long CHECKPOINT_INTERVAL_SECONDS = 30;
+
+    private final ImageFileWalker walker;
+
+    private final ComparisonPipeline pipeline;
+
+    private final Executor hashExecutor;
+
+    private final ScanCheckpointStore checkpoints;
+
+    /**
+     * Constructs a {@link StreamingScanner} with the given stages, without checkpointing discovered files.
+     *
+     * @param walker the {@link ImageFileWalker} used by the discovery stage
+     * @param pipeline the {@link ComparisonPipeline} used by the checksum and hash stages, and for the final grouping
+     * @param hashExecutor the executor running the checksum and hash stages
+     */
+    public StreamingScanner(@NotNull ImageFileWalker walker, @NotNull ComparisonPipeline pipeline, @NotNull Executor hashExecutor) {
+        this(walker, pipeline, hashExecutor, null);
+    }
+
+    /**
+     * Constructs a {@link StreamingScanner} with the given stages, checkpointing discovered files in the given store.
+     *
+     * @param walker the {@link ImageFileWalker} used by the discovery stage
+     * @param pipeline the {@link ComparisonPipeline} used by the checksum and hash stages, and for the final grouping
+     * @param hashExecutor the executor running the checksum and hash stages
+     * @param checkpoints the {@link ScanCheckpointStore} used to resume interrupted scans, or {@code null} to always walk
+     */
+    public StreamingScanner(
+        @NotNull ImageFileWalker walker,
+        @NotNull ComparisonPipeline pipeline,
+        @NotNull Executor hashExecutor,
+        @Nullable ScanCheckpointStore checkpoints
+    ) {
+        this.walker = walker;
+        this.pipeline = pipeline;
+        this.hashExecutor = hashExecutor;
+        this.checkpoints = checkpoints;
+    }
+
+    /**
+     * Walks the given root and finds duplicates among the discovered image files.
+     *
+     * @param root the directory or file to scan
+     * @return the {@link ScanResult} containing the discovered files and the groups of duplicates
+     * @throws IOException if an error occurs while walking, reading or decoding the files
+     * @throws InterruptedIOException if the calling thread has been interrupted
+     */
+    public @NotNull ScanResult scan(@NotNull File root) throws IOException {
+        return scanRoot(root, null);
+    }
+
+    /**
+     * Walks the given root and finds duplicates among the discovered image files, reporting the progress.
+     *
+     * @param root the directory or file to scan
+     * @param listener the listener receiving the {@link ScanProgress} snapshots
+     * @return the {@link ScanResult} containing the discovered files and the groups of duplicates
+     * @throws IOException if an error occurs while walking, reading or decoding the files
+     * @throws InterruptedIOException if the calling thread has been interrupted
+     */
+    public @NotNull ScanResult scan(@NotNull File root, @NotNull Consumer<ScanProgress> listener) throws IOException {
+        return scanRoot(root, new Progress(listener));
+    }
+
+    /**
+     * Scans the given root, resuming from its checkpoint if there is one.
+     *
+     * @param root the directory or file to scan
+     * @param progress the progress of the scan, or {@code null} if it isn't reported
+     * @return the {@link ScanResult} containing the discovered files and the groups of duplicates
+     * @throws IOException if an error occurs while walking, reading or decoding the files
+     */
+    private @NotNull ScanResult scanRoot(@NotNull File root, @Nullable Progress progress) throws IOException {
+        if (checkpoints == null) {
+            ScanResult result = run(consumer -> walker.walk(root, consumer), progress, () -> {});
+            log.info("Scan of {} done. Discovered {} files.", root, result.files().size());
+            return result;
+        }
+
+        ScanCheckpointStore.Checkpoint checkpoint = checkpoints.load(root.getAbsoluteFile(), walker.getMaxDepth());
+        if (checkpoint != null) log.info("Resuming scan of {} from a checkpoint of {} directories.", root, checkpoint.size());
+
+        CheckpointWriter writer = new CheckpointWriter(root.getAbsoluteFile());
+        ScanResult result = run(consumer -> resume(root.getAbsoluteFile(), checkpoint, consumer, writer), progress, writer::flush);
+
+        // A failed, cancelled or interrupted run keeps its checkpoint, as closing the application interrupts it too.
+        writer.complete();
+        log.info("Scan of {} done. Discovered {} files.", root, result.files().size());
+        return result;
+    }
+
+    /**
+     * Walks the given root, taking the images of every checkpointed directory that didn't change from the checkpoint,
+     * and listing only the remaining directories.
+     * <p>
+     * A checkpointed directory whose modification time is still the same neither gained nor lost an image,
+     * so its recorded images are replayed, once checked to still be files, without listing it.
+     * Its recorded subdirectories are then walked the same way, each on its own, as a change deeper in the tree
+     * doesn't change the modification time of the directory. Every other directory is listed,
+     * and recorded by the given writer once walked completely.
+     * </p>
+     *
+     * @param root the absolute directory or file to walk
+     * @param checkpoint the checkpoint of an earlier scan of the root, or {@code null} to walk the whole tree
+     * @param consumer the consumer receiving discovered image files
+     * @param writer the writer recording the listed directories
+     * @throws IOException if the root cannot be walked
+     */
+    private void resume(
+        @NotNull File root,
+        @Nullable ScanCheckpointStore.Checkpoint checkpoint,
+        @NotNull Consumer<File> consumer,
+        @NotNull CheckpointWriter writer
+    ) throws IOException {
+        Path rootPath = root.toPath();
+        Deque<Path> starts = new ArrayDeque<>(List.of(rootPath));
+
+        while (!starts.isEmpty()) {
+            Path start = starts.pop();
+            int depth = start.equals(rootPath) ? 0 : rootPath.relativize(start).getNameCount();
+
+            walker.walk(start.toFile(), consumer, walker.getMaxDepth() - depth, (dir, attrs) -> {
+                ScanCheckpointStore.Directory walked = checkpoint != null ? checkpoint.get(dir) : null;
+                if (walked == null || walked.lastModified() != attrs.lastModifiedTime().toMillis()) return true;
+
+                walked.images().stream().filter(File::isFile).forEach(consumer);
+                starts.addAll(checkpoint.children(dir));
+                return false;
+            }, writer::walked);
+        }
+    }
+
+    /**
+     * Finds duplicates among the given, already discovered files.
+     *
+     * @param files the files to compare
+     * @return a map where the key is the first file of a group, and the value is the set of all files in that group
+     * @throws IOException if an error occurs while reading or decoding the files
+     */
+    public @NotNull Map<File, Set<File>> compare(@NotNull List<File> files) throws IOException {
+        return run(files::forEach, null, () -> {}).groups();
+    }
+
+    /**
+     * Runs the pipeline over the files emitted by the given source.
+     *
+     * @param source the discovery stage
+     * @param progress the progress of the run, or {@code null} if it isn't reported
+     * @param onCheckpoint the callback checkpointing the discovery stage, called along with every fingerprint checkpoint
+     * @return the {@link ScanResult} containing the discovered files and the groups of duplicates
+     * @throws IOException if any stage fails
+     */
+    private @NotNull ScanResult run(
+        @NotNull FileSource source,
+        @Nullable Progress progress,
+        @NotNull Runnable onCheckpoint
+    ) throws IOException {
+        CountDownLatch finished = new CountDownLatch(1);
+        Thread.ofPlatform()
+            .name("scan-checkpoint")
+            .daemon()
+            .start(() -> checkpoint(finished, onCheckpoint));
+
+        try {
+            return run(source, progress, finished);
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    /**
+     * Runs the pipeline over the files emitted by the given source, while the fingerprints are being checkpointed.
+     *
+     * @param source the discovery stage
+     * @param progress the progress of the run, or {@code null} if it isn't reported
+     * @param finished the latch released once the run ends
+     * @return the {@link ScanResult} containing the discovered files and the groups of duplicates
+     * @throws IOException if any stage fails
+     */
+    private @NotNull ScanResult run(
+        @NotNull FileSource source,
+        @Nullable Progress progress,
+        @NotNull CountDownLatch finished
+    ) throws IOException {
+        Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Set<Future<?>> tasks = ConcurrentHashMap.newKeySet();
+
+        List<File> files = new ArrayList<>();
+        Scan scan = new Scan();
+
+        try {
+            source.emit(file -> {
+                if (failure.get() != null) throw new CancellationException("Scan aborted.");
+                if (Thread.currentThread().isInterrupted()) throw new CancellationException("Scan interrupted.");
+                files.add(file);
+                if (progress != null) progress.discovered();
+
+                acquire(inFlight);
+                FutureTask<Void> task = new FutureTask<>(() -> scan.fingerprint(file, failure), null) {
+                    @Override
+                    protected void done() {
+                        tasks.remove(this);
+                        if (!isCancelled()) {
+                            try {
+                                get();
+                            } catch (ExecutionException e) {
+                                failure.compareAndSet(null, e.getCause());
+                            } catch (InterruptedException ignored) {
+                                // Unreachable, the task is already done.
+                            }
+                        }
+                        inFlight.release();
+                        if (progress != null) progress.fingerprinted();
+                    }
+                };
+                tasks.add(task);
+                hashExecutor.execute(task);
+            });
+            if (progress != null) progress.walked();
+        } catch (IOException | RuntimeException e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            drain(inFlight, tasks, failure);
+        }
+
+        rethrow(failure.get());
+        log.info(
+            "Fingerprinting done. Partially hashed {} candidates, checksummed {} candidates, hashed {} candidates.",
+            scan.partiallyHashed(), scan.checksummed(), scan.hashed()
+        );
+
+        if (progress == null) return new ScanResult(List.copyOf(files), pipeline.group(files, scan.fingerprints, hashExecutor));
+
+        progress.enter(ScanProgress.Phase.GROUPING);
+        Map<File, Set<File>> groups = pipeline.group(files, scan.fingerprints, hashExecutor, progress::report);
+        progress.done(groups.size());
+        return new ScanResult(List.copyOf(files), groups);
+    }
+
+    /**
+     * Saves the fingerprints computed so far, and checkpoints the discovery stage, every {@value #CHECKPOINT_INTERVAL_SECONDS}
+     * seconds until the run ends, and once more right after. Runs on its own thread, so the final save isn't aborted
+     * by the interruption of a cancelled run.
+     *
+     * @param finished the latch released once the run ends
+     * @param onCheckpoint the callback checkpointing the discovery stage
+     */
+    private void checkpoint(@NotNull CountDownLatch finished, @NotNull Runnable onCheckpoint) {
+        try {
+            while (!finished.await(CHECKPOINT_INTERVAL_SECONDS, TimeUnit.SECONDS)) {
+                pipeline.flush();
+                onCheckpoint.run();
+            }
+            pipeline.flush();
+            onCheckpoint.run();
+        } catch (IOException e) {
+            log.warn("Couldn't checkpoint fingerprints: {}", e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Acquires a permit, translating an interruption into a cancellation.
+     *
+     * @param semaphore the semaphore
+     * @throws CancellationException if the current thread was interrupted while waiting
+     */
+    private static void acquire(@NotNull Semaphore semaphore) {
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Scan interrupted.");
+        }
+    }
+
+    /**
+     * Waits until no file is in flight anymore.
+     * <p>
+     * If the scan has failed, or the calling thread is interrupted while waiting, the tasks still in flight
+     * are cancelled instead of being waited for: the queued ones are dropped, and the running ones interrupted.
+     * </p>
+     *
+     * @param inFlight the semaphore counting the files in flight
+     * @param tasks the tasks still in flight
+     * @param failure the holder of the first failure, set to a {@link CancellationException} on interruption
+     */
+    private static void drain(
+        @NotNull Semaphore inFlight,
+        @NotNull Set<Future<?>> tasks,
+        @NotNull AtomicReference<Throwable> failure
+    ) {
+        if (failure.get() != null) tasks.forEach(task -> task.cancel(true));
+
+        try {
+            inFlight.acquire(MAX_IN_FLIGHT);
+        } catch (InterruptedException e) {
+            failure.compareAndSet(null, new CancellationException("Scan interrupted."));
+            tasks.forEach(task -> task.cancel(true));
+            inFlight.acquireUninterruptibly(MAX_IN_FLIGHT);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Rethrows the first failure of the scan, if any, as an {@link IOException}.
+     *
+     * @param failure the first failure, or {@code null} if the scan succeeded
+     * @throws IOException if the scan failed
+     */
+    private static void rethrow(Throwable failure) throws IOException {
+        if (failure == null) return;
+
+        if (failure instanceof UncheckedIOException e) failure = e.getCause();
+        if (failure instanceof IOException e) throw e;
+        if (failure instanceof CancellationException) throw new InterruptedIOException("Scan interrupted.");
+        throw new IOException("Scan failed.", failure);
+    }
+
+    /**
+     * The state of a single run, holding the fingerprints collected so far and the collision stages.
+     */
+    private final class Scan {
+        private final Map<File, Fingerprint> fingerprints = new ConcurrentHashMap<>();
+
+        private final CollisionStage<Long> sizeStage = new CollisionStage<>(this::partialHash);
+
+        private final CollisionStage<ContentKey> partialHashStage = new CollisionStage<>(this::checksum);
+
+        private final CollisionStage<ContentKey> checksumStage = new CollisionStage<>(this::perceptualHash);
+
+        /**
+         * Runs the stat stage for a single file, and every following stage its fingerprint collides in.
+         *
+         * @param file the file to fingerprint
+         * @param failure the holder of the first failure
+         */
+        private void fingerprint(@NotNull File file, @NotNull AtomicReference<Throwable> failure) {
+            if (failure.get() != null) return;
+
+            try {
+                Fingerprint fingerprint = pipeline.stat(file);
+                fingerprints.put(file, fingerprint);
+
+                if (pipeline.isNearDuplicateSearch()) checksumStage.enter(file);
+                else sizeStage.offer(fingerprint.size(), file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Runs the partial hash stage for a file sharing its size with another file.
+         *
+         * @param file the file to hash
+         * @throws IOException if the file cannot be read
+         */
+        private void partialHash(@NotNull File file) throws IOException {
+            Fingerprint fingerprint = pipeline.partialHash(file, fingerprints.get(file));
+            fingerprints.put(file, fingerprint);
+
+            partialHashStage.offer(new ContentKey(fingerprint.size(), fingerprint.partialHash()), file);
+        }
+
+        /**
+         * Runs the checksum stage for a file sharing its size and partial hash with another file.
+         *
+         * @param file the file to checksum
+         * @throws IOException if the file cannot be read
+         */
+        private void checksum(@NotNull File file) throws IOException {
+            Fingerprint fingerprint = pipeline.checksum(file, fingerprints.get(file));
+            fingerprints.put(file, fingerprint);
+
+            if (pipeline.isPerceptualHash())
+                checksumStage.offer(new ContentKey(fingerprint.size(), fingerprint.checksum()), file);
+        }
+
+        /**
+         * Runs the hash stage for a file sharing its content key with another file.
+         * <p>
+         * When searching for near-duplicates, every image is hashed, so an image that cannot be decoded
+         * is only logged, and left for the grouping to skip, instead of failing the whole scan.
+         * </p>
+         *
+         * @param file the file to hash
+         * @throws IOException if the file cannot be decoded during an exact search
+         */
+        private void perceptualHash(@NotNull File file) throws IOException {
+            try {
+                fingerprints.put(file, pipeline.perceptualHash(file, fingerprints.get(file)));
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                if (!pipeline.isNearDuplicateSearch()) throw e;
+                log.warn("Couldn't hash: {}, because: {}", file, e.getMessage());
+            }
+        }
+
+        private int partiallyHashed() {
+            return sizeStage.size();
+        }
+
+        private int checksummed() {
+            return partialHashStage.size();
+        }
+
+        private int hashed() {
+            return checksumStage.size();
+        }
+    }
+
+    /**
+     * Records the directories walked by a run in the checkpoint of its root.
+     * <p>
+     * Directories are queued as the walk completes them, and appended to the checkpoint by {@link #flush()},
+     * called periodically from the checkpoint thread. Once the run succeeds, {@link #complete()} deletes the checkpoint,
+     * and every later flush is ignored, so a final flush racing with the completion never recreates it.
+     * </p>
+     */
+    private final class CheckpointWriter {
+        private final File root;
+
+        private final Queue<ScanCheckpointStore.Directory> pending = new ConcurrentLinkedQueue<>();
+
+        private boolean completed;
+
+        private CheckpointWriter(@NotNull File root) {
+            this.root = root;
+        }
+
+        private void walked(@NotNull Path dir, long lastModified, @NotNull List<File> images) {
+            pending.add(new ScanCheckpointStore.Directory(dir, lastModified, images));
+        }
+
+        /**
+         * Appends the directories walked since the last flush to the checkpoint.
+         * A failure is only logged, and the directories kept for the next flush,
+         * as the scan itself can go on without the checkpoint.
+         */
+        private synchronized void flush() {
+            if (completed || checkpoints == null || pending.isEmpty()) return;
+
+            List<ScanCheckpointStore.Directory> directories = new ArrayList<>(pending);
+            try {
+                checkpoints.append(root, walker.getMaxDepth(), directories);
+                pending.removeAll(directories);
+            } catch (IOException e) {
+                log.warn("Couldn't save checkpoint of: {}", root, e);
+            }
+        }
+
+        /**
+         * Deletes the checkpoint of a run that succeeded.
+         */
+        private synchronized void complete() {
+            completed = true;
+            if (checkpoints != null) checkpoints.delete(root);
+        }
+    }
+
+    /**
+     * The progress of a single run, turned into {@link ScanProgress} snapshots for the listener.
+     */
+    private final class Progress {
+        private final Consumer<ScanProgress> listener;
+
+        private final ComparisonPipeline.Counters baseline = pipeline.counters();
+
+        private final long start = System.nanoTime();
+
+        private final LongAdder discovered = new LongAdder();
+
+        private final LongAdder fingerprinted = new LongAdder();
+
+        private volatile long expected = -1;
+
+        private volatile ScanProgress.Phase phase = ScanProgress.Phase.DISCOVERING;
+
+        private volatile int groups;
+
+        private Progress(@NotNull Consumer<ScanProgress> listener) {
+            this.listener = listener;
+        }
+
+        /**
+         * Marks the end of the walk, which makes every discovered file the total to expect.
+         */
+        private void walked() {
+            expected = discovered.sum();
+            enter(ScanProgress.Phase.FINGERPRINTING);
+        }
+
+        private void discovered() {
+            discovered.increment();
+            report();
+        }
+
+        private void fingerprinted() {
+            fingerprinted.increment();
+            report();
+        }
+
+        private void enter(@NotNull ScanProgress.Phase phase) {
+            this.phase = phase;
+            report();
+        }
+
+        private void done(int groups) {
+            this.groups = groups;
+            enter(ScanProgress.Phase.DONE);
+        }
+
+        /**
+         * Passes the current snapshot to the listener.
+         */
+        private void report() {
+            ComparisonPipeline.Counters counters = pipeline.counters().minus(baseline);
+            listener.accept(new ScanProgress(
+                phase,
+                discovered.sum(),
+                expected,
+                fingerprinted.sum(),
+                counters.bytesHashed(),
+                counters.imagesDecoded(),
+                counters.groupsToRefine(),
+                counters.groupsRefined(),
+                groups,
+                System.nanoTime() - start
+            ));
+        }
+    }
+
+    /**
+     * A stage entered only by files whose key collides with the key of another file.
+     * <p>
+     * The first file offered with a given key is only remembered. Once a second file with the same key is offered,
+     * both files enter the stage, and every later file with that key enters it immediately.
+     * Every file enters the stage at most once.
+     * </p>
+     *
+     * @param <K> the type of the key
+     */
+    private static final class CollisionStage<K> {
+        private final Map<K, File> firstByKey = new ConcurrentHashMap<>();
+
+        private final Set<File> entered = ConcurrentHashMap.newKeySet();
+
+        private final FileAction action;
+
+        private CollisionStage(@NotNull FileAction action) {
+            this.action = action;
+        }
+
+        /**
+         * Offers a file with the given key to the stage.
+         *
+         * @param key the key of the file from the previous stage
+         * @param file the file
+         * @throws IOException if the stage fails for any of the colliding files
+         */
+        private void offer(@NotNull K key, @NotNull File file) throws IOException {
+            File first = firstByKey.putIfAbsent(key, file);
+            if (first == null) return;
+
+            enter(first);
+            enter(file);
+        }
+
+        /**
+         * Makes the given file enter the stage unconditionally, unless it already did.
+         *
+         * @param file the file
+         * @throws IOException if the stage fails for the file
+         */
+        private void enter(@NotNull File file) throws IOException {
+            if (entered.add(file)) action.run(file);
+        }
+
+        private int size() {
+            return entered.size();
+        }
+    }
+
+    /**
+     * The key of a file's content, identifying candidates for being byte-identical.
+     *
+     * @param size the size of the file in bytes
+     * @param hash the partial hash or the checksum of the file content
+     */
+    private record ContentKey(long size, long hash) {}
+
+    /**
+     * An action performed on a single file by a {@link CollisionStage}.
+     */
+    @FunctionalInterface
+    private interface FileAction {
+        void run(@NotNull File file) throws IOException;
+    }
+
+    /**
+     * The discovery stage of the scan, emitting files to the given consumer.
+     */
+    @FunctionalInterface
+    private interface FileSource {
+        void emit(@NotNull Consumer<File> consumer) throws IOException;
+    }
+}
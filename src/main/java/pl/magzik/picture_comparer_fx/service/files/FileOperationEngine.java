@@ -0,0 +1,459 @@
+package pl.magzik.picture_comparer_fx.service.files;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.magzik.picture_comparer_fx.service.files.FileOperationReport.Operation;
+import pl.magzik.picture_comparer_fx.service.files.FileOperationReport.Outcome;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Moves, deletes and hard-links large numbers of files concurrently, reporting the outcome of every file separately.
+ * <p>
+ * The files of an operation are claimed in batches of {@value #BATCH_SIZE} by up to {@code parallelism} workers:
+ * the calling thread and helpers running on the given executor. Since the calling thread works through the batches too,
+ * an operation always makes progress, even if every thread of the executor is busy,
+ * so it's safe to run it from a thread of the same executor.
+ * </p>
+ * <p>
+ * A failing file doesn't abort the operation. Its error is recorded in the {@link FileOperationReport},
+ * and the remaining files are processed as usual. Interrupting the calling thread stops the operation
+ * after the files already being processed, and the remaining files are reported as failed.
+ * </p>
+ * <p>
+ * Files moved within the same file store are simply renamed. Files moved to another file store are copied
+ * to a temporary file in the destination, which is renamed once complete, and only then deleted,
+ * so an interrupted move never leaves a truncated file behind. A file whose name is taken in the destination
+ * gets a numbered name instead, e.g. {@code image (1).png}, so existing files are never overwritten.
+ * </p>
+ * <p>
+ * Linking replaces a duplicate with a hard link to its original, so both paths stay valid while the content
+ * is stored once. It's done with metadata operations only: a link to the original is created next to the duplicate,
+ * and then atomically renamed over it, so the duplicate path never goes missing. A duplicate is only linked
+ * if it's on the same file store as its original, and byte-identical to it.
+ * </p>
+ */
+public class FileOperationEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(FileOperationEngine.class);
+
+    /**
+     * The default number of files processed at once.
+     * File operations mostly wait for the file system, so it's not bound to the number of processors.
+     */
+    public static final int DEFAULT_PARALLELISM = 16;
+
+    private static final int BATCH_SIZE = 64;
+
+    private static final String TEMP_PREFIX = ".pcfx-";
+
+    private static final String TEMP_SUFFIX = ".part";
+
+    private static final String LINK_SUFFIX = ".link";
+
+    private static final int COMPARE_BUFFER_SIZE = 64 * 1024;
+
+    private final Executor executor;
+
+    private final int parallelism;
+
+    /**
+     * Constructs a {@link FileOperationEngine} processing up to {@value #DEFAULT_PARALLELISM} files at once.
+     *
+     * @param executor the executor running the helper workers, meant for blocking I/O
+     */
+    public FileOperationEngine(@NotNull Executor executor) {
+        this(executor, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Constructs a {@link FileOperationEngine} processing up to the given number of files at once.
+     *
+     * @param executor the executor running the helper workers, meant for blocking I/O
+     * @param parallelism the maximal number of files processed at once, including the calling thread
+     * @throws IllegalArgumentException if the parallelism is not positive
+     */
+    public FileOperationEngine(@NotNull Executor executor, int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Moves the given files to the destination directory.
+     *
+     * @param destination the existing destination directory
+     * @param files the files to move
+     * @return the {@link FileOperationReport} with the outcome of every file
+     * @throws IOException if the file store of the destination cannot be determined
+     */
+    public @NotNull FileOperationReport move(@NotNull File destination, @NotNull List<File> files) throws IOException {
+        Path directory = destination.toPath().toAbsolutePath();
+        Mover mover = new Mover(directory, Files.getFileStore(directory));
+        return run(Operation.MOVE, files, mover::move);
+    }
+
+    /**
+     * Deletes the given files.
+     *
+     * @param files the files to delete
+     * @return the {@link FileOperationReport} with the outcome of every file
+     */
+    public @NotNull FileOperationReport delete(@NotNull List<File> files) {
+        return run(Operation.DELETE, files, file -> {
+            Files.delete(file.toPath());
+            return null;
+        });
+    }
+
+    /**
+     * Replaces every given duplicate with a hard link to its original.
+     * A duplicate already linked to its original succeeds without changes.
+     *
+     * @param originals a map where the key is a duplicate, and the value is the original kept in its place
+     * @return the {@link FileOperationReport} with the outcome of every duplicate
+     */
+    public @NotNull FileOperationReport link(@NotNull Map<File, File> originals) {
+        Linker linker = new Linker();
+        return run(Operation.LINK, List.copyOf(originals.keySet()), file -> linker.link(file, originals.get(file)));
+    }
+
+    /**
+     * An operation run on a single file.
+     */
+    @FunctionalInterface
+    private interface FileAction {
+        /**
+         * Runs the operation on the given file.
+         *
+         * @param file the file
+         * @return the new location of the file, or {@code null} if it has none
+         * @throws IOException if the operation fails
+         */
+        @Nullable File apply(@NotNull File file) throws IOException;
+    }
+
+    /**
+     * Runs the action on every file, on the calling thread and on as many helpers as the batches and the parallelism allow.
+     *
+     * @param operation the kind of the operation, for the report
+     * @param files the files
+     * @param action the action run on every file
+     * @return the {@link FileOperationReport} with the outcome of every file
+     */
+    private @NotNull FileOperationReport run(@NotNull Operation operation, @NotNull List<File> files, @NotNull FileAction action) {
+        long start = System.nanoTime();
+        Batches batches = new Batches(List.copyOf(files), action);
+
+        int batchCount = (batches.files.size() + BATCH_SIZE - 1) / BATCH_SIZE;
+        AtomicBoolean[] claims = new AtomicBoolean[Math.max(0, Math.min(parallelism, batchCount) - 1)];
+        CountDownLatch helpersDone = new CountDownLatch(claims.length);
+        for (int i = 0; i < claims.length; i++) {
+            AtomicBoolean claim = claims[i] = new AtomicBoolean();
+            try {
+                executor.execute(() -> {
+                    if (!claim.compareAndSet(false, true)) return;
+                    try {
+                        batches.drain();
+                    } finally {
+                        helpersDone.countDown();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                log.warn("Couldn't start a helper, continuing with fewer workers.", e);
+            }
+        }
+
+        batches.drain();
+
+        // Helpers that haven't started yet won't find any work left, so they're released instead of awaited.
+        for (AtomicBoolean claim : claims) {
+            if (claim.compareAndSet(false, true)) helpersDone.countDown();
+        }
+        await(helpersDone, batches);
+
+        Outcome[] outcomes = batches.outcomes;
+        for (int i = 0; i < outcomes.length; i++) {
+            if (outcomes[i] == null) {
+                outcomes[i] = new Outcome(batches.files.get(i), null, new InterruptedIOException("The operation was interrupted."));
+            }
+        }
+
+        FileOperationReport report = new FileOperationReport(operation, List.of(outcomes), System.nanoTime() - start);
+        log.info("{} of {} files finished in {} ms, failed: {}",
+            operation, outcomes.length, TimeUnit.NANOSECONDS.toMillis(report.elapsedNanos()), report.failures().size());
+        return report;
+    }
+
+    /**
+     * Waits for the helpers to finish. If the calling thread is interrupted meanwhile, the remaining batches are abandoned,
+     * but the helpers are still awaited, so no file is being processed once the operation returns.
+     *
+     * @param helpersDone the latch counted down by every helper
+     * @param batches the batches of the operation
+     */
+    private static void await(@NotNull CountDownLatch helpersDone, @NotNull Batches batches) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                helpersDone.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+                batches.abort();
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Deletes a leftover of a failed operation, recording a failure to delete it in the original error.
+     *
+     * @param path the leftover file
+     * @param cause the error of the operation
+     */
+    private static void deleteQuietly(@NotNull Path path, @NotNull IOException cause) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    /**
+     * The files of an operation, claimed batch by batch by the workers, and the outcomes recorded for them.
+     */
+    private static final class Batches {
+        private final List<File> files;
+
+        private final FileAction action;
+
+        private final Outcome[] outcomes;
+
+        private final AtomicInteger next = new AtomicInteger();
+
+        private volatile boolean aborted;
+
+        private Batches(@NotNull List<File> files, @NotNull FileAction action) {
+            this.files = files;
+            this.action = action;
+            this.outcomes = new Outcome[files.size()];
+        }
+
+        /**
+         * Claims and processes batches until there are none left, or the operation is aborted.
+         * Interrupting the worker aborts the operation.
+         */
+        private void drain() {
+            while (!aborted) {
+                if (Thread.currentThread().isInterrupted()) {
+                    abort();
+                    return;
+                }
+
+                int from = next.getAndAdd(BATCH_SIZE);
+                if (from >= files.size()) return;
+
+                int to = Math.min(from + BATCH_SIZE, files.size());
+                for (int i = from; i < to && !aborted; i++) {
+                    outcomes[i] = apply(files.get(i));
+                }
+            }
+        }
+
+        private @NotNull Outcome apply(@NotNull File file) {
+            try {
+                return new Outcome(file, action.apply(file), null);
+            } catch (IOException e) {
+                log.warn("Operation failed on: {}: {}", file, e.toString());
+                return new Outcome(file, null, e);
+            }
+        }
+
+        private void abort() {
+            aborted = true;
+        }
+    }
+
+    /**
+     * Moves files into a single destination directory, keeping track of the names taken by the move.
+     */
+    private static final class Mover {
+        private final Path directory;
+
+        private final FileStore store;
+
+        private final Map<Path, Boolean> sameStore = new ConcurrentHashMap<>();
+
+        private final Set<Path> reserved = ConcurrentHashMap.newKeySet();
+
+        private Mover(@NotNull Path directory, @NotNull FileStore store) {
+            this.directory = directory;
+            this.store = store;
+        }
+
+        /**
+         * Moves the given file into the destination directory, renaming it if it's on the same file store.
+         *
+         * @param file the file to move
+         * @return the new location of the file
+         * @throws IOException if the file cannot be moved
+         */
+        private @NotNull File move(@NotNull File file) throws IOException {
+            Path source = file.toPath().toAbsolutePath();
+            Path parent = source.getParent();
+            if (directory.equals(parent)) return file;
+
+            return isSameStore(parent) ? rename(source, source.getFileName().toString()).toFile() : copy(source).toFile();
+        }
+
+        /**
+         * Moves the file within the file store of the destination, under the given or a numbered name.
+         * Without any options, {@link Files#move(Path, Path, CopyOption...)} is a single rename,
+         * which fails rather than overwriting the target.
+         */
+        private @NotNull Path rename(@NotNull Path source, @NotNull String name) throws IOException {
+            while (true) {
+                Path target = reserve(name);
+                try {
+                    return Files.move(source, target);
+                } catch (FileAlreadyExistsException e) {
+                    log.debug("{} was taken meanwhile, trying the next name.", target);
+                }
+            }
+        }
+
+        /**
+         * Moves the file to the destination on another file store, through a temporary copy.
+         */
+        private @NotNull Path copy(@NotNull Path source) throws IOException {
+            Path temp = Files.createTempFile(directory, TEMP_PREFIX, TEMP_SUFFIX);
+            Path target;
+            try {
+                Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                target = rename(temp, source.getFileName().toString());
+            } catch (IOException e) {
+                deleteQuietly(temp, e);
+                throw e;
+            }
+
+            try {
+                Files.delete(source);
+            } catch (IOException e) {
+                // The source stays in place, so the copy is dropped, leaving the file where it was.
+                deleteQuietly(target, e);
+                throw e;
+            }
+            return target;
+        }
+
+        /**
+         * Reserves a free name in the destination directory, numbering the given name if it's already taken.
+         *
+         * @param name the name of the moved file
+         * @return the reserved path
+         */
+        private @NotNull Path reserve(@NotNull String name) {
+            int dot = name.lastIndexOf('.');
+            String base = dot > 0 ? name.substring(0, dot) : name;
+            String extension = dot > 0 ? name.substring(dot) : "";
+
+            for (int i = 0; ; i++) {
+                Path candidate = directory.resolve(i == 0 ? name : base + " (" + i + ")" + extension);
+                if (reserved.add(candidate) && Files.notExists(candidate, LinkOption.NOFOLLOW_LINKS)) return candidate;
+            }
+        }
+
+        /**
+         * Returns whether the given source directory is on the file store of the destination.
+         * If its file store cannot be determined, the file is moved as if it was on another one.
+         */
+        private boolean isSameStore(@NotNull Path parent) {
+            return sameStore.computeIfAbsent(parent, dir -> {
+                try {
+                    return Files.getFileStore(dir).equals(store);
+                } catch (IOException e) {
+                    return false;
+                }
+            });
+        }
+    }
+
+    /**
+     * Replaces duplicates with hard links to their originals, remembering the file store of every visited directory.
+     */
+    private static final class Linker {
+        private final Map<Path, FileStore> stores = new ConcurrentHashMap<>();
+
+        /**
+         * Replaces the duplicate with a hard link to the original.
+         *
+         * @param file the duplicate
+         * @param original the original
+         * @return the original
+         * @throws IOException if the files are on different file stores, differ in content, or the link cannot be created
+         */
+        private @NotNull File link(@NotNull File file, @NotNull File original) throws IOException {
+            Path duplicate = file.toPath().toAbsolutePath();
+            Path source = original.toPath().toAbsolutePath();
+
+            if (Files.isSameFile(duplicate, source)) return original;
+            if (!store(duplicate.getParent()).equals(store(source.getParent())))
+                throw new FileSystemException(duplicate.toString(), source.toString(), "Not on the same file system as the original.");
+            if (!isIdentical(duplicate, source))
+                throw new FileSystemException(duplicate.toString(), source.toString(), "Not byte-identical to the original.");
+
+            Path temp = duplicate.resolveSibling(TEMP_PREFIX + UUID.randomUUID() + LINK_SUFFIX);
+            try {
+                Files.createLink(temp, source);
+                Files.move(temp, duplicate, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (UnsupportedOperationException e) {
+                throw new FileSystemException(duplicate.toString(), source.toString(), "Hard links are not supported.");
+            } catch (IOException e) {
+                deleteQuietly(temp, e);
+                throw e;
+            }
+            return original;
+        }
+
+        private @NotNull FileStore store(@NotNull Path directory) throws IOException {
+            FileStore store = stores.get(directory);
+            if (store == null) {
+                store = Files.getFileStore(directory);
+                stores.put(directory, store);
+            }
+            return store;
+        }
+
+        /**
+         * Compares the content of both files, byte by byte.
+         */
+        private static boolean isIdentical(@NotNull Path first, @NotNull Path second) throws IOException {
+            if (Files.size(first) != Files.size(second)) return false;
+
+            try (InputStream a = Files.newInputStream(first); InputStream b = Files.newInputStream(second)) {
+                byte[] bufferA = new byte[COMPARE_BUFFER_SIZE], bufferB = new byte[COMPARE_BUFFER_SIZE];
+                while (true) {
+                    int read = a.readNBytes(bufferA, 0, bufferA.length);
+                    if (read != b.readNBytes(bufferB, 0, bufferB.length)) return false;
+                    if (read == 0) return true;
+                    if (Arrays.mismatch(bufferA, 0, read, bufferB, 0, read) != -1) return false;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package pl.magzik.picture_comparer_fx.service.files;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The outcome of a batch of file operations run by the {@link FileOperationEngine}, reported file by file.
+ * <p>
+ * A failing file doesn't abort the batch, so the report lists every file of the batch, in the order they were given,
+ * together with the error that made the operation fail, if any.
+ * </p>
+ *
+ * @param operation the kind of the operation
+ * @param outcomes the outcome of every file of the batch, in the order the files were given
+ * @param elapsedNanos the time the whole batch took, in nanoseconds
+ */
+public record FileOperationReport(@NotNull Operation operation, @NotNull List<Outcome> outcomes, long elapsedNanos) {
+
+    /**
+     * The kinds of operations run by the {@link FileOperationEngine}.
+     */
+    public enum Operation {
+        MOVE,
+        DELETE,
+        LINK
+    }
+
+    /**
+     * The outcome of the operation on a single file.
+     *
+     * @param source the file the operation was run on
+     * @param target the new location of a moved file, or the original a linked file now shares its content with,
+     *               or {@code null} if the file was deleted or the operation failed
+     * @param error the error that made the operation fail, or {@code null} if it succeeded
+     */
+    public record Outcome(@NotNull File source, @Nullable File target, @Nullable IOException error) {
+
+        /**
+         * Returns whether the operation succeeded.
+         *
+         * @return {@code true} if the operation succeeded, {@code false} otherwise
+         */
+        public boolean succeeded() {
+            return error == null;
+        }
+    }
+
+    /**
+     * Returns the files the operation succeeded on.
+     *
+     * @return the succeeded files, in the order they were given
+     */
+    public @NotNull List<File> succeeded() {
+        return outcomes.stream()
+            .filter(Outcome::succeeded)
+            .map(Outcome::source)
+            .toList();
+    }
+
+    /**
+     * Returns the outcomes of the files the operation failed on.
+     *
+     * @return the failed outcomes, in the order the files were given
+     */
+    public @NotNull List<Outcome> failures() {
+        return outcomes.stream()
+            .filter(o -> !o.succeeded())
+            .toList();
+    }
+
+    /**
+     * Returns whether the operation succeeded on every file of the batch.
+     *
+     * @return {@code true} if no file failed, {@code false} otherwise
+     */
+    public boolean isComplete() {
+        return outcomes.stream().allMatch(Outcome::succeeded);
+    }
+}
@@ -0,0 +1,505 @@
+package pl.magzik.picture_comparer_fx.service.gallery;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.magzik.picture_comparer_fx.base.PathResolver;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A persistent store of the files kept in the gallery.
+ * <p>
+ * The gallery is kept in two files inside the {@link PathResolver#getDataDirectory() data directory}:
+ * a binary snapshot of the whole gallery, and an append-only journal of the changes made since the snapshot was taken.
+ * Adding or removing images appends a record to the journal, so the cost of saving a change is proportional
+ * to the change, not to the size of the gallery. A change too large for a single record is split into several ones,
+ * each of them self-contained.
+ * Once the journal grows larger than the snapshot, both are compacted into a new snapshot.
+ * </p>
+ * <p>
+ * Every journal record carries its length and checksum. A record torn by a crash in the middle of a write
+ * is detected when the journal is replayed, and the journal is cut back to the last complete record.
+ * The snapshot and the journal share a generation number, so a journal left behind by a compaction
+ * interrupted after the new snapshot has been written is recognized as stale and never replayed twice.
+ * </p>
+ * <p>
+ * A gallery saved in the legacy text format, with one path per line, is migrated on the first {@link #load()}.
+ * </p>
+ * <p>
+ * The store is a lazily initialized, thread-safe singleton, shared by every {@code GalleryService}.
+ * </p>
+ */
+public class GalleryStore {
+
+    private static final Logger log = LoggerFactory.getLogger(GalleryStore.class);
+
+    private static final String SNAPSHOT_FILE_NAME = "gallery.snapshot";
+    private static final String JOURNAL_FILE_NAME = "gallery.journal";
+    private static final String LEGACY_FILE_NAME = "gallery.pfx";
+
+    private static final int SNAPSHOT_MAGIC = 0x50465853; // "PFXS"
+    private static final int JOURNAL_MAGIC = 0x5046584A; // "PFXJ"
+    private static final int VERSION = 1;
+
+    private static final int JOURNAL_HEADER_SIZE = 2 * Integer.BYTES + Long.BYTES;
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int MAX_RECORD_SIZE = 64 << 20;
+
+    private static final long MIN_COMPACTION_SIZE = 1 << 20;
+
+    private static final byte ADD = 1, REMOVE = 2;
+
+    private static class InstanceHolder {
+        private static final GalleryStore INSTANCE = new GalleryStore(PathResolver.getInstance().getDataDirectory());
+    }
+
+    /**
+     * Returns the singleton instance of the {@link GalleryStore} class.
+     *
+     * @return the singleton {@link GalleryStore} instance
+     */
+    public static GalleryStore getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    private final Path snapshotFile;
+
+    private final Path journalFile;
+
+    private final Path legacyFile;
+
+    private final Set<String> paths;
+
+    private long generation;
+
+    private long snapshotSize;
+
+    private FileChannel journal;
+
+    private boolean loaded;
+
+    /**
+     * Constructs a {@link GalleryStore} keeping its files in the given directory.
+     * Nothing is read until the first {@link #load()}.
+     *
+     * @param directory the directory holding the snapshot and the journal
+     */
+    GalleryStore(@NotNull Path directory) {
+        this.snapshotFile = directory.resolve(SNAPSHOT_FILE_NAME);
+        this.journalFile = directory.resolve(JOURNAL_FILE_NAME);
+        this.legacyFile = directory.resolve(LEGACY_FILE_NAME);
+        this.paths = new LinkedHashSet<>();
+        this.generation = 0;
+        this.snapshotSize = 0;
+        this.journal = null;
+        this.loaded = false;
+    }
+
+    /**
+     * Loads the gallery, replaying the journal on top of the snapshot.
+     * <p>
+     * If there is no snapshot yet, the gallery is migrated from the legacy data file, if one exists.
+     * Subsequent calls return the files held in memory.
+     * </p>
+     *
+     * @return the files of the gallery, in the order they were added
+     * @throws IOException if the snapshot is unreadable, or an error occurs while opening the journal
+     */
+    public synchronized @NotNull List<File> load() throws IOException {
+        if (!loaded) {
+            if (Files.exists(snapshotFile)) {
+                readSnapshot();
+                replayJournal();
+            } else {
+                migrate();
+            }
+            loaded = true;
+            log.info("Gallery store loaded. Found: {}", paths.size());
+        }
+
+        return paths.stream()
+            .map(File::new)
+            .toList();
+    }
+
+    /**
+     * Adds the given files to the gallery. Files already present are skipped.
+     *
+     * @param files the files to add
+     * @throws IOException if an error occurs while writing the journal
+     */
+    public synchronized void add(@NotNull Collection<File> files) throws IOException {
+        ensureLoaded();
+
+        List<String> added = new ArrayList<>(files.size());
+        for (File file : files) {
+            String path = file.getAbsolutePath();
+            if (!paths.contains(path)) added.add(path);
+        }
+
+        append(ADD, added);
+    }
+
+    /**
+     * Removes the given files from the gallery. Files not present are skipped.
+     *
+     * @param files the files to remove
+     * @throws IOException if an error occurs while writing the journal
+     */
+    public synchronized void remove(@NotNull Collection<File> files) throws IOException {
+        ensureLoaded();
+
+        List<String> removed = new ArrayList<>(files.size());
+        for (File file : files) {
+            String path = file.getAbsolutePath();
+            if (paths.contains(path)) removed.add(path);
+        }
+
+        append(REMOVE, removed);
+    }
+
+    /**
+     * Writes the whole gallery to a new snapshot, and starts an empty journal.
+     * <p>
+     * Both files are first written to temporary files, which then atomically replace the current ones.
+     * The snapshot is replaced first, so a crash in between leaves a stale journal, which is ignored on the next load.
+     * </p>
+     *
+     * @throws IOException if an error occurs while writing the snapshot or the journal
+     */
+    public synchronized void compact() throws IOException {
+        ensureLoaded();
+
+        long next = generation + 1;
+        writeSnapshot(next);
+        generation = next;
+        resetJournal();
+
+        log.info("Gallery store compacted. Stored: {}", paths.size());
+    }
+
+    /**
+     * Appends the records of an operation to the journal and applies it to the gallery held in memory.
+     * The paths are split into as many records as needed to keep each of them within {@link #MAX_RECORD_SIZE},
+     * the largest record a replay accepts.
+     * The journal is compacted afterward, if it has grown larger than the snapshot.
+     *
+     * @param operation the operation of the records
+     * @param changed the paths the operation changes, without the ones it would leave untouched
+     * @throws IOException if an error occurs while writing the journal
+     */
+    private void append(byte operation, @NotNull List<String> changed) throws IOException {
+        if (changed.isEmpty()) return;
+
+        long position = journal.size();
+        try {
+            int from = 0;
+            while (from < changed.size()) {
+                // Every character takes at most three bytes in the modified UTF-8 written by writeUTF.
+                int to = from, size = Byte.BYTES + Integer.BYTES;
+                while (to < changed.size() && size + Short.BYTES + 3 * changed.get(to).length() <= MAX_RECORD_SIZE) {
+                    size += Short.BYTES + 3 * changed.get(to).length();
+                    to++;
+                }
+                writeRecord(operation, changed.subList(from, to));
+                from = to;
+            }
+            journal.force(false);
+        } catch (IOException e) {
+            // Cuts the records of a partially written change, so later records aren't appended behind garbage.
+            journal.truncate(position);
+            throw e;
+        }
+
+        apply(operation, changed);
+
+        if (journal.size() > Math.max(MIN_COMPACTION_SIZE, snapshotSize)) compact();
+    }
+
+    /**
+     * Writes a single record at the end of the journal, without forcing it to the storage device.
+     *
+     * @param operation the operation of the record
+     * @param changed the paths the operation changes, small enough to fit in a single record
+     * @throws IOException if an error occurs while writing the journal
+     */
+    private void writeRecord(byte operation, @NotNull List<String> changed) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(operation);
+            out.writeInt(changed.size());
+            for (String path : changed) out.writeUTF(path);
+        }
+        byte[] payload = bytes.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length)
+            .putInt(payload.length)
+            .putInt((int) crc.getValue())
+            .put(payload)
+            .flip();
+        while (record.hasRemaining()) journal.write(record);
+    }
+
+    /**
+     * Applies a single operation to the gallery held in memory.
+     *
+     * @param operation the operation
+     * @param changed the paths the operation is applied to
+     */
+    private void apply(byte operation, @NotNull List<String> changed) {
+        if (operation == ADD) paths.addAll(changed);
+        else paths.removeAll(changed);
+    }
+
+    /**
+     * Reads the snapshot into the gallery held in memory.
+     *
+     * @throws IOException if the snapshot is unreadable, damaged or has an unknown format
+     */
+    private void readSnapshot() throws IOException {
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(
+                new CheckedInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)), crc))) {
+            if (in.readInt() != SNAPSHOT_MAGIC)
+                throw new IOException("Unsupported gallery snapshot format.");
+            int version = in.readInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported gallery snapshot version: " + version);
+
+            long snapshotGeneration = in.readLong();
+            int count = in.readInt();
+            List<String> read = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) read.add(in.readUTF());
+
+            long expected = crc.getValue();
+            if (in.readInt() != (int) expected)
+                throw new IOException("Gallery snapshot is damaged: " + snapshotFile);
+
+            paths.clear();
+            paths.addAll(read);
+            generation = snapshotGeneration;
+        }
+
+        snapshotSize = Files.size(snapshotFile);
+    }
+
+    /**
+     * Writes the gallery held in memory to the snapshot, atomically replacing the previous one.
+     *
+     * @param snapshotGeneration the generation of the new snapshot
+     * @throws IOException if an error occurs while writing the snapshot
+     */
+    private void writeSnapshot(long snapshotGeneration) throws IOException {
+        Path tempFile = snapshotFile.resolveSibling(SNAPSHOT_FILE_NAME + ".tmp");
+
+        CRC32 crc = new CRC32();
+        try (FileOutputStream file = new FileOutputStream(tempFile.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(file, crc)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(snapshotGeneration);
+            out.writeInt(paths.size());
+            for (String path : paths) out.writeUTF(path);
+            out.flush();
+
+            out.writeInt((int) crc.getValue());
+            out.flush();
+            file.getFD().sync();
+        }
+
+        Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        snapshotSize = Files.size(snapshotFile);
+    }
+
+    /**
+     * Replays the journal on top of the snapshot, then opens it for appending.
+     * <p>
+     * Replaying stops at the first incomplete or damaged record, and the journal is cut back to the last complete one.
+     * A journal of another generation than the snapshot, or one without a valid header, is replaced by an empty one.
+     * </p>
+     *
+     * @throws IOException if an error occurs while reading or opening the journal
+     */
+    private void replayJournal() throws IOException {
+        if (Files.notExists(journalFile)) {
+            resetJournal();
+            return;
+        }
+
+        FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (!hasJournalHeader(channel)) {
+                log.warn("Gallery journal: {} doesn't belong to the current snapshot, discarding it.", journalFile);
+                channel.close();
+                resetJournal();
+                return;
+            }
+
+            long valid = replayRecords(channel);
+            if (valid < channel.size()) {
+                log.warn("Gallery journal: {} ends with a damaged record, discarding {} bytes.", journalFile, channel.size() - valid);
+                channel.truncate(valid);
+                channel.force(false);
+            }
+            channel.position(valid);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        journal = channel;
+    }
+
+    /**
+     * Checks whether the journal starts with a valid header of the current generation.
+     *
+     * @param channel the journal
+     * @return {@code true} if the header is valid, {@code false} otherwise
+     * @throws IOException if an error occurs while reading the journal
+     */
+    private boolean hasJournalHeader(@NotNull FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(JOURNAL_HEADER_SIZE);
+        if (!readFully(channel, header, 0)) return false;
+
+        return header.getInt() == JOURNAL_MAGIC
+            && header.getInt() == VERSION
+            && header.getLong() == generation;
+    }
+
+    /**
+     * Applies every complete record of the journal to the gallery held in memory.
+     *
+     * @param channel the journal
+     * @return the position right after the last complete record
+     * @throws IOException if an error occurs while reading the journal
+     */
+    private long replayRecords(@NotNull FileChannel channel) throws IOException {
+        long position = JOURNAL_HEADER_SIZE;
+        int records = 0;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+
+        while (readFully(channel, header.clear(), position)) {
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length < 0 || length > MAX_RECORD_SIZE) break;
+
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            if (!readFully(channel, payload, position + RECORD_HEADER_SIZE)) break;
+
+            CRC32 crc = new CRC32();
+            crc.update(payload.array());
+            if ((int) crc.getValue() != checksum) break;
+
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload.array()))) {
+                byte operation = in.readByte();
+                if (operation != ADD && operation != REMOVE) break;
+
+                int count = in.readInt();
+                List<String> changed = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) changed.add(in.readUTF());
+                apply(operation, changed);
+            }
+
+            position += RECORD_HEADER_SIZE + length;
+            records++;
+        }
+
+        log.debug("Replayed {} gallery journal records.", records);
+        return position;
+    }
+
+    /**
+     * Reads from the channel at the given position until the buffer is full, or the end of the channel is reached.
+     *
+     * @param channel the channel to read from
+     * @param buffer the buffer to fill, flipped for reading afterward
+     * @param position the position to start reading at
+     * @return {@code true} if the buffer has been filled, {@code false} if the channel ended first
+     * @throws IOException if an error occurs while reading
+     */
+    private boolean readFully(@NotNull FileChannel channel, @NotNull ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) return false;
+        }
+        buffer.flip();
+        return true;
+    }
+
+    /**
+     * Replaces the journal by an empty one of the current generation, and opens it for appending.
+     *
+     * @throws IOException if an error occurs while writing the journal
+     */
+    private void resetJournal() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+
+        Path tempFile = journalFile.resolveSibling(JOURNAL_FILE_NAME + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(JOURNAL_HEADER_SIZE)
+                .putInt(JOURNAL_MAGIC)
+                .putInt(VERSION)
+                .putLong(generation)
+                .flip();
+            while (header.hasRemaining()) channel.write(header);
+            channel.force(false);
+        }
+        Files.move(tempFile, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        journal = FileChannel.open(journalFile, StandardOpenOption.WRITE);
+        journal.position(journal.size());
+    }
+
+    /**
+     * Creates the first snapshot, from the legacy data file if one exists, or empty otherwise.
+     * The legacy data file is renamed afterward, so it is never migrated again.
+     *
+     * @throws IOException if the legacy data file is unreadable, or an error occurs while writing the snapshot
+     */
+    private void migrate() throws IOException {
+        paths.clear();
+        generation = 0;
+
+        boolean legacy = Files.exists(legacyFile);
+        if (legacy) {
+            for (String line : Files.readAllLines(legacyFile)) {
+                if (!line.isBlank()) paths.add(line);
+            }
+        }
+
+        writeSnapshot(generation);
+        resetJournal();
+
+        if (legacy) {
+            Files.move(legacyFile, legacyFile.resolveSibling(LEGACY_FILE_NAME + ".bak"), StandardCopyOption.REPLACE_EXISTING);
+            log.info("Gallery migrated from: {}. Found: {}", legacyFile, paths.size());
+        }
+    }
+
+    /**
+     * Makes sure the store has been loaded, so changes are never written on top of an unread journal.
+     *
+     * @throws IOException if an error occurs while loading the store
+     */
+    private void ensureLoaded() throws IOException {
+        if (!loaded) load();
+    }
+}
@@ -0,0 +1,336 @@
+package pl.magzik.picture_comparer_fx.service.gallery;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.magzik.picture_comparer_fx.base.PathResolver;
+import pl.magzik.picture_comparer_fx.base.metrics.Counter;
+import pl.magzik.picture_comparer_fx.base.metrics.MetricsRegistry;
+import pl.magzik.picture_comparer_fx.base.metrics.Timer;
+import pl.magzik.picture_comparer_fx.service.comparison.*;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * A two-tier cache of the thumbnails of gallery images.
+ * <p>
+ * Thumbnails are generated in the background, from the thumbnail embedded in the image file or a subsampled decoding,
+ * so an image is never decoded at full resolution. Generated thumbnails are kept as PNG files
+ * inside the {@value #DIRECTORY_NAME} folder of the {@link PathResolver#getDataDirectory() data directory},
+ * addressed by the size and the checksum of the image content. Renamed or moved images keep their thumbnails,
+ * and identical images share one. The checksum is computed by the algorithm currently chosen in the settings,
+ * the same one the comparer uses, and is cached by the {@link FingerprintStore} along with its algorithm,
+ * so finding the thumbnail of an unchanged image only reads its attributes. Thumbnails addressed by different
+ * algorithms are kept in separate folders.
+ * </p>
+ * <p>
+ * The most recently used thumbnails are also held in memory, up to a fixed number of entries,
+ * so scrolling back and forth through the gallery doesn't read them again.
+ * The memory tier can be queried without blocking, see {@link #getIfCached(File)}.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ */
+public class ThumbnailCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ThumbnailCache.class);
+
+    /**
+     * The maximal width and height of a thumbnail, in pixels.
+     */
+    public static final int THUMBNAIL_SIZE = 48;
+
+    private static final String DIRECTORY_NAME = "thumbnails";
+
+    private static final String FORMAT = "png";
+
+    private static final Timer GENERATE_TIMER = MetricsRegistry.getInstance().timer("thumbnail.generate");
+
+    private static final Counter MEMORY_HITS = MetricsRegistry.getInstance().counter("thumbnail.hits.memory");
+
+    private static final Counter DISK_HITS = MetricsRegistry.getInstance().counter("thumbnail.hits.disk");
+
+    private final Path directory;
+
+    private final ImageDecoder decoder;
+
+    private final Supplier<ChecksumAlgorithm> algorithm;
+
+    private final Executor executor;
+
+    private final Map<File, Image> memory;
+
+    private final Map<File, PendingLoad> pending;
+
+    private final Map<ChecksumAlgorithm, FingerprintCalculator> calculators;
+
+    /**
+     * Constructs a {@link ThumbnailCache} keeping its thumbnails in the {@value #DIRECTORY_NAME} folder of the given directory.
+     *
+     * @param dataDirectory the directory holding the thumbnails folder
+     * @param decoder the {@link ImageDecoder} used to read images
+     * @param algorithm the supplier of the current {@link ChecksumAlgorithm}, used to address thumbnails
+     *                  by the content of their images, called from the executor threads
+     * @param executor the executor generating and reading thumbnails
+     * @param memoryCapacity the maximal number of thumbnails held in memory
+     */
+    public ThumbnailCache(
+        @NotNull Path dataDirectory,
+        @NotNull ImageDecoder decoder,
+        @NotNull Supplier<ChecksumAlgorithm> algorithm,
+        @NotNull Executor executor,
+        int memoryCapacity
+    ) {
+        this.directory = dataDirectory.resolve(DIRECTORY_NAME);
+        this.decoder = decoder;
+        this.algorithm = algorithm;
+        this.executor = executor;
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<File, Image> eldest) {
+                return size() > memoryCapacity;
+            }
+        };
+        this.pending = new ConcurrentHashMap<>();
+        this.calculators = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the thumbnail of the given image, if it is held in memory. Never blocks.
+     *
+     * @param file the image file
+     * @return the thumbnail, or {@code null} if it's not held in memory
+     */
+    public @Nullable Image getIfCached(@NotNull File file) {
+        Image image;
+        synchronized (memory) {
+            image = memory.get(file);
+        }
+
+        if (image != null) MEMORY_HITS.increment();
+        return image;
+    }
+
+    /**
+     * Returns the thumbnail of the given image, reading or generating it in the background if it's not held in memory.
+     * <p>
+     * Concurrent requests for the same image share a single load, but every request gets its own future,
+     * so cancelling one never affects the others. Once every request of a load is cancelled before the work starts,
+     * reading the image is skipped altogether, so requests of rows scrolled out of view can be dropped cheaply.
+     * </p>
+     *
+     * @param file the image file
+     * @return a {@link CompletableFuture} resolving to the thumbnail, or completing exceptionally
+     *         if the image couldn't be read
+     */
+    public @NotNull CompletableFuture<Image> load(@NotNull File file) {
+        Image cached = getIfCached(file);
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+
+        PendingLoad created = new PendingLoad();
+        PendingLoad load = pending.compute(file, (f, existing) -> {
+            PendingLoad joined = existing != null && !existing.future.isDone() ? existing : created;
+            joined.requests++;
+            return joined;
+        });
+
+        CompletableFuture<Image> request = load.future.copy();
+        request.whenComplete((image, t) -> {
+            if (request.isCancelled()) release(file, load);
+        });
+        if (load != created) return request;
+
+        created.future.whenComplete((image, t) -> pending.remove(file, created));
+        executor.execute(() -> {
+            if (created.future.isDone()) return;
+
+            try {
+                Image image = read(file);
+                synchronized (memory) {
+                    memory.put(file, image);
+                }
+                created.future.complete(image);
+            } catch (IOException | RuntimeException e) {
+                log.debug("Couldn't load thumbnail of: {}, because: {}", file, e.getMessage());
+                created.future.completeExceptionally(e);
+            }
+        });
+        return request;
+    }
+
+    /**
+     * Releases a cancelled request of the given load, cancelling the load itself once no request is left.
+     *
+     * @param file the image file
+     * @param load the load the request belongs to
+     */
+    private void release(@NotNull File file, @NotNull PendingLoad load) {
+        boolean[] abandoned = { false };
+        pending.computeIfPresent(file, (f, existing) -> {
+            if (existing != load || --load.requests > 0) return existing;
+
+            abandoned[0] = true;
+            return null;
+        });
+
+        // Cancelled outside the computation, as completing the load removes it from the pending map.
+        if (abandoned[0]) load.future.cancel(false);
+    }
+
+    /**
+     * Drops the thumbnails of the given images from memory. Thumbnails on disk are kept,
+     * as they are addressed by content and stay valid for any image with the same content.
+     *
+     * @param files the image files
+     */
+    public void invalidate(@NotNull Collection<File> files) {
+        synchronized (memory) {
+            files.forEach(memory::remove);
+        }
+    }
+
+    /**
+     * Reads the thumbnail of the given image from disk, generating and storing it first if it doesn't exist.
+     *
+     * @param file the image file
+     * @return the thumbnail
+     * @throws IOException if the image or its thumbnail cannot be read
+     */
+    private @NotNull Image read(@NotNull File file) throws IOException {
+        ChecksumAlgorithm algorithm = this.algorithm.get();
+        FingerprintCalculator calculator = calculator(algorithm);
+        Fingerprint fingerprint = calculator.withChecksum(file, calculator.stat(file));
+        Path thumbnail = resolve(algorithm, fingerprint);
+
+        if (Files.exists(thumbnail)) {
+            try (InputStream in = Files.newInputStream(thumbnail)) {
+                Image image = new Image(in);
+                if (!image.isError()) {
+                    DISK_HITS.increment();
+                    return image;
+                }
+            }
+            log.warn("Thumbnail: {} is damaged, generating it again.", thumbnail);
+        }
+
+        BufferedImage image;
+        try (Timer.Context ignored = GENERATE_TIMER.start()) {
+            image = scale(decoder.readThumbnail(file, THUMBNAIL_SIZE));
+        }
+        write(thumbnail, image);
+        return toImage(image);
+    }
+
+    /**
+     * Returns the location of the thumbnail of the image with the given fingerprint.
+     * Thumbnails are kept in a folder named after the checksum algorithm,
+     * and spread over subfolders named after the first two digits of their names.
+     *
+     * @param algorithm the algorithm the checksum was computed by
+     * @param fingerprint the fingerprint of the image, with the checksum present
+     * @return the path of the thumbnail
+     */
+    private @NotNull Path resolve(@NotNull ChecksumAlgorithm algorithm, @NotNull Fingerprint fingerprint) {
+        String name = String.format("%016x%016x", Objects.requireNonNull(fingerprint.checksum()), fingerprint.size());
+        return directory.resolve(algorithm.getName()).resolve(name.substring(0, 2)).resolve(name + "." + FORMAT);
+    }
+
+    /**
+     * Writes the given thumbnail to disk. The thumbnail is first written to a temporary file,
+     * which is then atomically moved into place, so a partially written thumbnail is never read.
+     *
+     * @param thumbnail the path of the thumbnail
+     * @param image the thumbnail
+     * @throws IOException if an error occurs while writing the thumbnail
+     */
+    private void write(@NotNull Path thumbnail, @NotNull BufferedImage image) throws IOException {
+        Files.createDirectories(thumbnail.getParent());
+
+        Path tempFile = Files.createTempFile(thumbnail.getParent(), ".pcfx-", ".tmp");
+        try {
+            if (!ImageIO.write(image, FORMAT, tempFile.toFile()))
+                throw new IOException("No writer for the thumbnail format: " + FORMAT);
+            Files.move(tempFile, thumbnail, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Scales the given image down to fit within {@value #THUMBNAIL_SIZE} pixels, keeping its aspect ratio.
+     *
+     * @param source the image
+     * @return the scaled image, with an alpha channel
+     */
+    private @NotNull BufferedImage scale(@NotNull BufferedImage source) {
+        double ratio = Math.min(1.0, (double) THUMBNAIL_SIZE / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return scaled;
+    }
+
+    /**
+     * Copies the pixels of the given image into a JavaFX {@link Image}.
+     *
+     * @param image the image, with an alpha channel
+     * @return the JavaFX image
+     */
+    private @NotNull Image toImage(@NotNull BufferedImage image) {
+        int width = image.getWidth(), height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+
+        WritableImage result = new WritableImage(width, height);
+        result.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+        return result;
+    }
+
+    /**
+     * Returns the calculator of the checksums addressing the thumbnails with the given algorithm, creating it on first use.
+     * It's created lazily, in the background, as it loads the {@link FingerprintStore}.
+     *
+     * @param algorithm the checksum algorithm
+     * @return the {@link FingerprintCalculator}
+     */
+    private @NotNull FingerprintCalculator calculator(@NotNull ChecksumAlgorithm algorithm) {
+        return calculators.computeIfAbsent(algorithm, key ->
+            new FingerprintCalculator(FingerprintStore.getInstance(), new PerceptualHasher(decoder), key)
+        );
+    }
+
+    /**
+     * A thumbnail being loaded, along with the number of requests still waiting for it.
+     * The number of requests is only accessed while the load is being computed in the pending map.
+     */
+    private static final class PendingLoad {
+        private final CompletableFuture<Image> future = new CompletableFuture<>();
+
+        private int requests;
+    }
+}
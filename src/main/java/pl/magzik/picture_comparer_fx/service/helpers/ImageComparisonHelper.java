@@ -2,89 +2,143 @@ package pl.magzik.picture_comparer_fx.service.helpers;
 
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import pl.magzik.Processor;
-import pl.magzik.algorithms.Algorithm;
-import pl.magzik.algorithms.PerceptualHash;
-import pl.magzik.algorithms.PixelByPixel;
-import pl.magzik.grouping.CRC32Grouper;
-import pl.magzik.grouping.Grouper;
-import pl.magzik.io.FileOperator;
-import pl.magzik.predicates.ImageFilePredicate;
+import pl.magzik.picture_comparer_fx.base.async.ExecutorServiceManager;
+import pl.magzik.picture_comparer_fx.base.metrics.Counter;
+import pl.magzik.picture_comparer_fx.base.metrics.MetricsRegistry;
+import pl.magzik.picture_comparer_fx.base.metrics.Timer;
+import pl.magzik.picture_comparer_fx.service.comparison.*;
+import pl.magzik.picture_comparer_fx.service.files.FileOperationEngine;
+import pl.magzik.picture_comparer_fx.service.files.FileOperationReport;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 /**
  * A helper class that facilitates the comparison of image files.
  * It integrates file loading, image comparison algorithms, and file management operations.
  * <p>
- * This class provides various methods to validate, compare, flatten, move, and delete image files.
+ * This class provides various methods to validate, compare, flatten, move, delete, and hard-link image files.
  * It allows configuring the comparison behavior using perceptual hash and pixel-by-pixel comparison algorithms.
  * </p>
  *
- * @see FileOperator
- * @see Processor
+ * @see ImageFileWalker
+ * @see FileOperationEngine
+ * @see ComparisonPipeline
  */
 public class ImageComparisonHelper {
 
     private static final Logger log = LoggerFactory.getLogger(ImageComparisonHelper.class);
 
-    private final FileOperator fileOperator;
+    private static final Timer MOVE_TIMER = MetricsRegistry.getInstance().timer("move");
 
-    private final Processor processor;
+    private static final Counter MOVED_FILES = MetricsRegistry.getInstance().counter("move.files");
+
+    private static final Timer DELETE_TIMER = MetricsRegistry.getInstance().timer("delete");
+
+    private static final Counter DELETED_FILES = MetricsRegistry.getInstance().counter("delete.files");
+
+    private static final Timer LINK_TIMER = MetricsRegistry.getInstance().timer("link");
+
+    private static final Counter LINKED_FILES = MetricsRegistry.getInstance().counter("link.files");
+
+    private final FileOperationEngine fileOperationEngine;
+
+    private final ImageFileWalker walker;
+
+    private final ComparisonPipeline pipeline;
+
+    private final Executor hashExecutor;
+
+    private final StreamingScanner scanner;
 
     /**
-     * Constructs an {@link ImageComparisonHelper} instance with specified file operator and processor.
+     * Constructs an {@link ImageComparisonHelper} instance with specified file operation engine, file walker and comparison pipeline.
+     * <p>
+     * Comparisons block the calling thread while the checksum and hash stages run on the given executor,
+     * so they must not be called from a thread of that executor.
+     * </p>
      *
-     * @param fileOperator the {@link FileOperator} used for managing files
-     * @param processor the {@link Processor} used for processing image comparison
+     * @param fileOperationEngine the {@link FileOperationEngine} used for moving and deleting files
+     * @param walker the {@link ImageFileWalker} used for discovering files
+     * @param pipeline the {@link ComparisonPipeline} used for processing image comparison
+     * @param hashExecutor the executor running the CPU-bound checksum and hash stages
      */
-    public ImageComparisonHelper(@NotNull FileOperator fileOperator, @NotNull Processor processor) {
-        this.fileOperator = fileOperator;
-        this.processor = processor;
+    public ImageComparisonHelper(
+        @NotNull FileOperationEngine fileOperationEngine,
+        @NotNull ImageFileWalker walker,
+        @NotNull ComparisonPipeline pipeline,
+        @NotNull Executor hashExecutor
+    ) {
+        this.fileOperationEngine = fileOperationEngine;
+        this.walker = walker;
+        this.pipeline = pipeline;
+        this.hashExecutor = hashExecutor;
+        this.scanner = new StreamingScanner(walker, pipeline, hashExecutor, ScanCheckpointStore.getInstance());
     }
 
     /**
-     * Builds a {@link Processor} that is capable of comparing images using the specified algorithms.
+     * Builds a {@link ComparisonPipeline} that is capable of comparing images using the specified algorithms.
+     * <p>
+     * The pipeline caches fingerprints of compared files in the shared {@link FingerprintStore},
+     * so unchanged files are neither read nor decoded again on subsequent comparisons.
+     * </p>
      *
      * @param perceptualHash whether to use perceptual hashing for comparison
      * @param pixelByPixel whether to use pixel-by-pixel comparison
-     * @return a configured {@link Processor} instance
+     * @param hashDistance the maximum Hamming distance between perceptual hashes of near-duplicates,
+     *                     or {@code 0} to search for exact duplicates only
+     * @param checksumAlgorithm the name of the {@link ChecksumAlgorithm} used to checksum file content
+     * @param pixelMemoryBudget the maximal size of images decoded at once for pixel-by-pixel comparison, in MiB
+     * @return a configured {@link ComparisonPipeline} instance
      */
-    @Contract("_,_ -> new")
-    public static @NotNull Processor buildProcessor(boolean perceptualHash, boolean pixelByPixel) {
-        Grouper grouper = new CRC32Grouper();
-
-        List<Algorithm<?>> algorithms = new ArrayList<>();
-
-        if (perceptualHash) algorithms.add(new PerceptualHash());
-        if (pixelByPixel) algorithms.add(new PixelByPixel());
+    @Contract("_,_,_,_,_ -> new")
+    public static @NotNull ComparisonPipeline buildPipeline(
+        boolean perceptualHash,
+        boolean pixelByPixel,
+        int hashDistance,
+        @NotNull String checksumAlgorithm,
+        int pixelMemoryBudget
+    ) {
+        ImageDecoder decoder = new ImageDecoder();
+        FingerprintCalculator calculator = new FingerprintCalculator(
+            FingerprintStore.getInstance(),
+            new PerceptualHasher(decoder),
+            ChecksumAlgorithm.fromName(checksumAlgorithm)
+        );
+        PixelComparator pixelComparator = new PixelComparator(decoder, new MemoryBudget(pixelMemoryBudget * 1024L * 1024L));
 
-        return new Processor(grouper, algorithms);
+        return new ComparisonPipeline(calculator, pixelComparator, perceptualHash, pixelByPixel, hashDistance);
     }
 
     /**
-     * Builds a {@link FileOperator} for loading files, with an option for recursive file loading.
+     * Builds an {@link ImageFileWalker} for discovering files, with an option for recursive walking.
+     * Parallel walks run on the shared walk pool of the {@link ExecutorServiceManager}.
      *
-     * @param recursiveMode whether to enable recursive mode for loading files
-     * @return a configured {@link FileOperator} instance
+     * @param recursiveMode whether to enable recursive mode for walking directories
+     * @return a configured {@link ImageFileWalker} instance
      */
     @Contract("_ -> new")
-    public static @NotNull FileOperator buildFileOperator(boolean recursiveMode) {
-        return new FileOperator(
-            new ImageFilePredicate(),
-            recursiveMode ? Integer.MAX_VALUE : 1
+    public static @NotNull ImageFileWalker buildFileWalker(boolean recursiveMode) {
+        return new ImageFileWalker(
+            recursiveMode ? Integer.MAX_VALUE : 1,
+            ExecutorServiceManager.getInstance().getWalkPool()
         );
     }
 
     /**
      * Validates a collection of image files by loading them.
      * If the collection is empty, a warning is logged.
+     * <p>
+     * Directories are walked in parallel by the {@link ImageFileWalker}, see {@link ImageFileWalker#collect(Collection)}.
+     * </p>
      *
-     * @param files the collection of image files to validate
+     * @param files the collection of image files and directories to validate
      * @return a list of validated image files
      * @throws IOException if an error occurs while loading files
      */
@@ -95,7 +149,7 @@ public class ImageComparisonHelper {
         }
 
         try {
-            return fileOperator.load(files);
+            return walker.collect(files);
         } catch (IOException e) {
             log.error("Failed to validate {} files.", files.size());
             throw e;
@@ -103,7 +157,7 @@ public class ImageComparisonHelper {
     }
 
     /**
-     * Compares a list of validated image files using the configured {@link Processor}.
+     * Compares a list of validated image files using the configured {@link ComparisonPipeline}.
      * If the list is empty, a warning is logged.
      *
      * @param files the list of validated image files to compare
@@ -116,7 +170,75 @@ public class ImageComparisonHelper {
             return Collections.emptyMap();
         }
 
-        return processor.process(files);
+        return scanner.compare(files);
+    }
+
+    /**
+     * Scans the given root for duplicates, hashing files while the directory tree is still being walked.
+     * <p>
+     * If an earlier scan of the root was interrupted, the scan resumes from its checkpoint,
+     * only listing the directories that weren't walked yet or changed since, see {@link ScanCheckpointStore}.
+     * </p>
+     *
+     * @param root the directory or file to scan
+     * @return the {@link ScanResult} containing the discovered files and the groups of duplicates
+     * @throws IOException if an error occurs while walking or comparing files
+     */
+    public @NotNull ScanResult scan(@NotNull File root) throws IOException {
+        return scan(root, null);
+    }
+
+    /**
+     * Scans the given root for duplicates, hashing files while the directory tree is still being walked,
+     * and reports the progress of the scan to the given listener.
+     *
+     * @param root the directory or file to scan
+     * @param listener the listener receiving {@link ScanProgress} snapshots from the scanning threads,
+     *                 or {@code null} if the progress isn't needed
+     * @return the {@link ScanResult} containing the discovered files and the groups of duplicates
+     * @throws IOException if an error occurs while walking or comparing files
+     */
+    public @NotNull ScanResult scan(@NotNull File root, @Nullable Consumer<ScanProgress> listener) throws IOException {
+        try {
+            ScanResult result = listener != null ? scanner.scan(root, listener) : scanner.scan(root);
+            if (result.files().isEmpty()) log.warn("No files found in: {}", root);
+            return result;
+        } catch (IOException e) {
+            log.error("Failed to scan: {}", root);
+            throw e;
+        }
+    }
+
+    /**
+     * Starts watching the given, already scanned root, and keeps the result of its scan up to date.
+     * <p>
+     * Every batch of changes under the root is applied to an {@link IncrementalGrouping} seeded with the scan result,
+     * and the updated result is passed to the listener on the watcher thread.
+     * A failed update is logged and retried with the next batch.
+     * </p>
+     *
+     * @param root the scanned directory
+     * @param result the {@link ScanResult} of the scan
+     * @param listener the listener receiving the updated results
+     * @return the started {@link DirectoryWatcher}, which must be closed to stop watching
+     * @throws IOException if the directory tree cannot be registered for watching
+     */
+    public @NotNull DirectoryWatcher watch(
+        @NotNull File root,
+        @NotNull ScanResult result,
+        @NotNull Consumer<ScanResult> listener
+    ) throws IOException {
+        IncrementalGrouping grouping = new IncrementalGrouping(pipeline, hashExecutor, result);
+        DirectoryWatcher watcher = new DirectoryWatcher(root, walker, changes -> {
+            try {
+                listener.accept(grouping.update(changes));
+            } catch (IOException e) {
+                log.error("Failed to update duplicates of {}: {}", root, e.getMessage(), e);
+            }
+        });
+
+        watcher.start();
+        return watcher;
     }
 
     /**
@@ -134,15 +256,20 @@ public class ImageComparisonHelper {
     /**
      * Moves a list of image files to a specified destination folder.
      * If the list is empty or the destination is invalid, a warning or error is logged.
+     * <p>
+     * The files are moved concurrently by the {@link FileOperationEngine}, and a file that cannot be moved
+     * doesn't stop the others. Every failure is recorded in the returned report.
+     * </p>
      *
      * @param destination the destination folder to move the files to
      * @param data the list of image files to move
-     * @throws IOException if an error occurs while moving the files
+     * @return the {@link FileOperationReport} with the outcome of every file
+     * @throws IOException if the destination folder cannot be used
      */
-    public void move(@NotNull File destination, @NotNull List<File> data) throws IOException {
+    public @NotNull FileOperationReport move(@NotNull File destination, @NotNull List<File> data) throws IOException {
         if (data.isEmpty()) {
             log.warn("No files to move to {}", destination.getPath());
-            return;
+            return emptyReport(FileOperationReport.Operation.MOVE);
         }
 
         if (!destination.exists() || !destination.isDirectory()) {
@@ -150,9 +277,13 @@ public class ImageComparisonHelper {
             throw new IllegalArgumentException("Invalid destination folder.");
         }
 
-        try {
-            fileOperator.move(destination, data);
-            log.info("Successfully moved {} files to {}", data.size(), destination.getPath());
+        try (Timer.Context ignored = MOVE_TIMER.start()) {
+            FileOperationReport report = fileOperationEngine.move(destination, data);
+            int moved = data.size() - report.failures().size();
+            MOVED_FILES.add(moved);
+            if (report.isComplete()) log.info("Successfully moved {} files to {}", moved, destination.getPath());
+            else log.error("Moved {} files to {}, failed to move {} files.", moved, destination.getPath(), report.failures().size());
+            return report;
         } catch (IOException e) {
             log.error("Failed to move files to {} : {}", destination.getPath(), e.getMessage());
             throw e;
@@ -161,23 +292,60 @@ public class ImageComparisonHelper {
 
     /**
      * Deletes a list of image files.
-     * If the list is empty, a warning is logged. If an error occurs during deletion, it is logged and thrown.
+     * If the list is empty, a warning is logged.
+     * <p>
+     * The files are deleted concurrently by the {@link FileOperationEngine}, and a file that cannot be deleted
+     * doesn't stop the others. Every failure is recorded in the returned report.
+     * </p>
      *
      * @param data the list of image files to delete
-     * @throws IOException if an error occurs while deleting the files
+     * @return the {@link FileOperationReport} with the outcome of every file
      */
-    public void delete(@NotNull List<File> data) throws IOException {
+    public @NotNull FileOperationReport delete(@NotNull List<File> data) {
         if (data.isEmpty()) {
             log.warn("No files to delete.");
-            return;
+            return emptyReport(FileOperationReport.Operation.DELETE);
         }
 
-        try {
-            fileOperator.delete(data);
-            log.info("Successfully deleted {} files.", data.size());
-        } catch (IOException e) {
-            log.error("Failed to delete files: {}", e.getMessage());
-            throw e;
+        try (Timer.Context ignored = DELETE_TIMER.start()) {
+            FileOperationReport report = fileOperationEngine.delete(data);
+            int deleted = data.size() - report.failures().size();
+            DELETED_FILES.add(deleted);
+            if (report.isComplete()) log.info("Successfully deleted {} files.", deleted);
+            else log.error("Deleted {} files, failed to delete {} files.", deleted, report.failures().size());
+            return report;
+        }
+    }
+
+    /**
+     * Replaces duplicate image files with hard links to their originals.
+     * If the map is empty, a warning is logged.
+     * <p>
+     * Only duplicates on the same file system as their original, and byte-identical to it, are linked.
+     * The others are left untouched, and recorded as failures in the returned report.
+     * </p>
+     *
+     * @param originals a map where the key is a duplicate, and the value is the original kept in its place
+     * @return the {@link FileOperationReport} with the outcome of every duplicate
+     */
+    public @NotNull FileOperationReport link(@NotNull Map<File, File> originals) {
+        if (originals.isEmpty()) {
+            log.warn("No files to link.");
+            return emptyReport(FileOperationReport.Operation.LINK);
+        }
+
+        try (Timer.Context ignored = LINK_TIMER.start()) {
+            FileOperationReport report = fileOperationEngine.link(originals);
+            int linked = originals.size() - report.failures().size();
+            LINKED_FILES.add(linked);
+            if (report.isComplete()) log.info("Successfully linked {} files.", linked);
+            else log.error("Linked {} files, failed to link {} files.", linked, report.failures().size());
+            return report;
         }
     }
+
+    @Contract("_ -> new")
+    private static @NotNull FileOperationReport emptyReport(@NotNull FileOperationReport.Operation operation) {
+        return new FileOperationReport(operation, List.of(), 0);
+    }
 }
@@ -23,7 +23,7 @@ public class ComparerLoadCompletedState extends ComparerPostProcessState {
         super.enter(context);
 
         if (duplicates > 0) {
-            context.setButtonsState(false, context.getMoveButton(), context.getRemoveButton());
+            context.setButtonsState(false, context.getMoveButton(), context.getRemoveButton(), context.getLinkButton());
         }
 
         context.getOriginalSlice().setPieValue(originals);
@@ -26,6 +26,7 @@ public class ComparerProcessingState implements State<ComparerController> {
                 context.getLoadButton(),
                 context.getMoveButton(),
                 context.getRemoveButton(),
+                context.getLinkButton(),
                 context.getResetButton()
         );
         context.getTaskProgressBar().setProgress(-1);
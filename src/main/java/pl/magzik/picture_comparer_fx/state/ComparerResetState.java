@@ -1,5 +1,6 @@
 package pl.magzik.picture_comparer_fx.state;
 
+import javafx.scene.Cursor;
 import org.jetbrains.annotations.NotNull;
 import pl.magzik.picture_comparer_fx.controller.ComparerController;
 import pl.magzik.picture_comparer_fx.state.base.State;
@@ -19,6 +20,7 @@ public class ComparerResetState implements State<ComparerController> {
         context.setButtonsState(true,
             context.getMoveButton(),
             context.getRemoveButton(),
+            context.getLinkButton(),
             context.getResetButton(),
             context.getLoadButton()
         );
@@ -39,5 +41,7 @@ public class ComparerResetState implements State<ComparerController> {
         context.getDuplicateSlice().setPieValue(DEFAULT_PIE_VALUE);
 
         context.getPathTextField().clear();
+
+        context.getStage().getScene().setCursor(Cursor.DEFAULT);
     }
 }
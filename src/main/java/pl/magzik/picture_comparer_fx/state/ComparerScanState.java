@@ -0,0 +1,25 @@
+package pl.magzik.picture_comparer_fx.state;
+
+import org.jetbrains.annotations.NotNull;
+import pl.magzik.picture_comparer_fx.controller.ComparerController;
+
+/**
+ * Represents the state while the selected directory is being scanned.
+ * Unlike the other processing phases, a scan can be aborted, so the back and reset buttons stay enabled.
+ */
+public class ComparerScanState extends ComparerProcessingState {
+
+    public ComparerScanState() {
+        super(ComparerController.StatePhase.PREPARE);
+    }
+
+    @Override
+    public void enter(@NotNull ComparerController context) {
+        super.enter(context);
+
+        context.setButtonsState(false,
+            context.getBackButton(),
+            context.getResetButton()
+        );
+    }
+}
@@ -0,0 +1,33 @@
+package pl.magzik.picture_comparer_fx.state;
+
+import org.jetbrains.annotations.NotNull;
+import pl.magzik.picture_comparer_fx.controller.ComparerController;
+
+/**
+ * Represents the state in which the scanned directory is watched for changes.
+ * Entered after every incremental update, it refreshes the number of loaded and duplicate files,
+ * and enables the move and remove buttons only while any duplicates are left.
+ */
+public class ComparerWatchState extends ComparerLoadCompletedState {
+
+    private final int total;
+    private final int duplicates;
+
+    public ComparerWatchState(int total, int duplicates) {
+        super(total - duplicates, duplicates);
+        this.total = total;
+        this.duplicates = duplicates;
+    }
+
+    @Override
+    public void enter(@NotNull ComparerController context) {
+        super.enter(context);
+
+        context.setButtonsState(duplicates == 0, context.getMoveButton(), context.getRemoveButton(), context.getLinkButton());
+
+        context.getOriginalTrayTextField().setText(String.valueOf(total));
+        context.getDuplicateTrayTextField().setText(String.valueOf(duplicates));
+
+        context.getStateText().setText(context.translate(ComparerController.StatePhase.WATCH.toString()));
+    }
+}